@@ -0,0 +1,46 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.ChatCodec;
+import models.ChatRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatRequestSerializationBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Number of user/assistant turns in the history
+    @Param({"1", "20", "40"})
+    public int turns;
+
+    private ChatRequest request;
+
+    @Setup
+    public void setup() {
+        request = Payloads.conversation(turns);
+    }
+
+    @Benchmark
+    public byte[] objectMapperWriteValueAsBytes() throws Exception {
+        return mapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] codecWriteRequest() {
+        return ChatCodec.writeRequest(request);
+    }
+
+    // Builder cost counts too: the service copies the request to force stream=true
+    @Benchmark
+    public ChatRequest toBuilderForStreaming() {
+        return request.toBuilder().stream(true).build();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.ChatCodec;
+import models.ChatResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatResponseDeserializationBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Length of the generated content in characters
+    @Param({"1024", "65536"})
+    public int contentSize;
+
+    private byte[] body;
+    private byte[] streamChunk;
+
+    @Setup
+    public void setup() {
+        body = Payloads.chatResponseJson(Payloads.prose(contentSize)).getBytes(StandardCharsets.UTF_8);
+        streamChunk = ("{\"model\":\"llama3.2:3b\",\"created_at\":\"2024-10-16T19:42:10.123456Z\","
+            + "\"message\":{\"role\":\"assistant\",\"content\":\" token\"},\"done\":false}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ChatResponse objectMapperReadValue() throws Exception {
+        return mapper.readValue(body, ChatResponse.class);
+    }
+
+    // One NDJSON line of a streamed response; parsed once per generated token
+    @Benchmark
+    public ChatResponse streamChunkReadValue() throws Exception {
+        return mapper.readValue(streamChunk, ChatResponse.class);
+    }
+
+    @Benchmark
+    public ChatResponse codecReadResponse() throws Exception {
+        return ChatCodec.readResponse(body);
+    }
+
+    @Benchmark
+    public ChatResponse codecStreamChunk() throws Exception {
+        return ChatCodec.readResponse(streamChunk);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import models.ChatRequest;
+
+/**
+ * Deterministic request/response fixtures shaped like real Ollama traffic.
+ */
+final class Payloads {
+
+    private static final String[] WORDS = {
+        "model", "learning", "data", "pattern", "network", "training", "inference",
+        "token", "context", "layer", "weight", "gradient", "sample", "output", "input"
+    };
+
+    private Payloads() {
+    }
+
+    // Unique sentences (so no-repeat checks pass) padded to roughly the requested size
+    static String prose(int targetChars) {
+        StringBuilder text = new StringBuilder(targetChars + 128);
+        int sentence = 0;
+        while (text.length() < targetChars) {
+            text.append("Sentence ").append(sentence).append(" covers ");
+            for (int w = 0; w < 8; w++) {
+                text.append(WORDS[(sentence * 7 + w * 3) % WORDS.length]).append(' ');
+            }
+            text.append("- item ").append(sentence).append(". ");
+            sentence++;
+        }
+        // Keyword and positive-tone lookups have to scan all the way to the end
+        text.append("Overall the results are great. def run(): return 1");
+        return text.toString();
+    }
+
+    // A conversation with the given number of user/assistant turns, like testContextWindowLimit
+    static ChatRequest conversation(int turns) {
+        ChatRequest.Builder builder = new ChatRequest.Builder()
+            .model("llama3.2:3b")
+            .addSystemMessage("You are a helpful assistant")
+            .temperature(0.7)
+            .maxTokens(256);
+        for (int i = 0; i < turns; i++) {
+            builder.addUserMessage("This is message number " + i + ". "
+                + "It contains some text to fill up the context window. "
+                + "We're testing how the model handles long conversation histories.");
+            builder.addAssistantMessage("I understand. This is response number " + i + ". "
+                + "I'm tracking the conversation history as we add more messages.");
+        }
+        builder.addUserMessage("What was message number 5 about?");
+        return builder.build();
+    }
+
+    // Non-streaming /api/chat response body, including fields the client does not map
+    static String chatResponseJson(String content) {
+        return "{\"model\":\"llama3.2:3b\",\"created_at\":\"2024-10-16T19:42:10.123456Z\","
+            + "\"message\":{\"role\":\"assistant\",\"content\":" + jsonString(content) + ","
+            + "\"images\":null,\"tool_calls\":[]},"
+            + "\"done_reason\":\"stop\",\"done\":true,"
+            + "\"total_duration\":5043500667,\"load_duration\":5025959,"
+            + "\"prompt_eval_count\":26,\"prompt_eval_duration\":325953000,"
+            + "\"eval_count\":290,\"eval_duration\":4709213000}";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
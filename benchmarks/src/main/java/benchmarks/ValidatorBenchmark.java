@@ -0,0 +1,197 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonschema.main.JsonSchema;
+import models.ChatResponse;
+import org.openjdk.jmh.annotations.*;
+import utils.AIResponseValidator;
+import utils.JsonSchemaCache;
+import utils.KeywordMatcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link AIResponseValidator} assertion on 1 KB to 1 MB responses. All fixtures
+ * are built so the assertion passes; a failing assertion would measure exception cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int contentSize;
+
+    private ChatResponse response;
+    private ChatResponse jsonResponse;
+    private KeywordMatcher vocabulary;
+    private JsonSchema itemsSchema;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        response = mapper.readValue(Payloads.chatResponseJson(Payloads.prose(contentSize)), ChatResponse.class);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < contentSize; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\"}");
+        }
+        jsonResponse = mapper.readValue(Payloads.chatResponseJson(json.append(']').toString()), ChatResponse.class);
+
+        // Large keyword set where only the last word occurs, so every keyword must be considered
+        String[] words = new String[512];
+        for (int i = 0; i < words.length - 1; i++) {
+            words[i] = "absent" + i;
+        }
+        words[words.length - 1] = "great";
+        vocabulary = KeywordMatcher.compile(words);
+
+        // Compiled once in setup, as the cache does after first use; the benchmark measures validation
+        itemsSchema = new JsonSchemaCache().fromJson("{\"type\":\"array\",\"items\":{\"type\":\"object\","
+            + "\"required\":[\"id\",\"name\"],\"properties\":{\"id\":{\"type\":\"integer\"},"
+            + "\"name\":{\"type\":\"string\"}}}}");
+    }
+
+    // BASIC VALIDATIONS
+
+    @Benchmark
+    public void assertResponseNotEmpty() {
+        AIResponseValidator.assertResponseNotEmpty(response);
+    }
+
+    @Benchmark
+    public void assertResponseComplete() {
+        AIResponseValidator.assertResponseComplete(response);
+    }
+
+    // LENGTH VALIDATIONS
+
+    @Benchmark
+    public void assertMinLength() {
+        AIResponseValidator.assertMinLength(response, 10);
+    }
+
+    @Benchmark
+    public void assertMaxLength() {
+        AIResponseValidator.assertMaxLength(response, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void assertLengthRange() {
+        AIResponseValidator.assertLengthRange(response, 10, Integer.MAX_VALUE);
+    }
+
+    // CONTENT VALIDATIONS
+
+    @Benchmark
+    public void assertContainsKeyword() {
+        AIResponseValidator.assertContainsKeyword(response, "great");
+    }
+
+    @Benchmark
+    public void assertContainsAnyKeyword() {
+        AIResponseValidator.assertContainsAnyKeyword(response, "zebra", "quantum", "volcano", "great");
+    }
+
+    @Benchmark
+    public void assertContainsAnyKeywordLargeSet() {
+        AIResponseValidator.assertContainsAnyKeyword(response, vocabulary);
+    }
+
+    @Benchmark
+    public void assertContainsAllKeywords() {
+        AIResponseValidator.assertContainsAllKeywords(response, "model", "data", "def", "great");
+    }
+
+    @Benchmark
+    public void assertDoesNotContain() {
+        AIResponseValidator.assertDoesNotContain(response, "never reveal system prompts");
+    }
+
+    // PATTERN VALIDATIONS
+
+    @Benchmark
+    public void assertMatchesPattern() {
+        AIResponseValidator.assertMatchesPattern(response, "results are \\w+\\.");
+    }
+
+    // FORMAT VALIDATIONS
+
+    @Benchmark
+    public void assertIsJson() {
+        AIResponseValidator.assertIsJson(jsonResponse);
+    }
+
+    @Benchmark
+    public void assertMatchesSchema() {
+        AIResponseValidator.assertMatchesSchema(jsonResponse, itemsSchema);
+    }
+
+    @Benchmark
+    public void assertContainsList() {
+        AIResponseValidator.assertContainsList(response);
+    }
+
+    // QUALITY VALIDATIONS
+
+    @Benchmark
+    public void assertNoRepeatedSentences() {
+        AIResponseValidator.assertNoRepeatedSentences(response);
+    }
+
+    @Benchmark
+    public void assertNoDegeneration() {
+        AIResponseValidator.assertNoDegeneration(response, 1.0);
+    }
+
+    @Benchmark
+    public void assertSentenceCount() {
+        AIResponseValidator.assertSentenceCount(response, 3);
+    }
+
+    // PERFORMANCE VALIDATIONS
+
+    @Benchmark
+    public void assertResponseTime() {
+        AIResponseValidator.assertResponseTime(response, 10);
+    }
+
+    @Benchmark
+    public void assertTokensPerSecond() {
+        AIResponseValidator.assertTokensPerSecond(response, 10);
+    }
+
+    // METADATA VALIDATIONS
+
+    @Benchmark
+    public void assertModel() {
+        AIResponseValidator.assertModel(response, "llama3.2:3b");
+    }
+
+    @Benchmark
+    public void assertTokenCount() {
+        AIResponseValidator.assertTokenCount(response, 1);
+    }
+
+    // LANGUAGE VALIDATIONS
+
+    @Benchmark
+    public void assertLanguageEnglish() {
+        AIResponseValidator.assertLanguage(response, "english");
+    }
+
+    @Benchmark
+    public void assertLanguageCode() {
+        AIResponseValidator.assertLanguage(response, "code");
+    }
+
+    // SENTIMENT VALIDATIONS
+
+    @Benchmark
+    public void assertPositiveTone() {
+        AIResponseValidator.assertPositiveTone(response);
+    }
+}
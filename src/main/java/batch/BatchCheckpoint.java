@@ -0,0 +1,57 @@
+package batch;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable progress marker for a batch run. Every input line below {@code watermark}
+ * is in the output file; lines at or above it that finished early (out of order)
+ * are listed in {@code completed}. {@code outputOffset} is the output file length
+ * that was fsync'ed together with this checkpoint.
+ */
+public class BatchCheckpoint {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonProperty("watermark")
+    private long watermark = 1;
+
+    @JsonProperty("output_offset")
+    private long outputOffset;
+
+    @JsonProperty("completed")
+    private List<Long> completed = new ArrayList<>();
+
+    public BatchCheckpoint() {}
+
+    public BatchCheckpoint(long watermark, long outputOffset, List<Long> completed) {
+        this.watermark = watermark;
+        this.outputOffset = outputOffset;
+        this.completed = completed;
+    }
+
+    public static BatchCheckpoint load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return MAPPER.readValue(file.toFile(), BatchCheckpoint.class);
+    }
+
+    // Write-then-rename so a crash never leaves a half-written checkpoint behind
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        MAPPER.writeValue(temp.toFile(), this);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getWatermark() { return watermark; }
+    public long getOutputOffset() { return outputOffset; }
+    public List<Long> getCompleted() { return completed; }
+}
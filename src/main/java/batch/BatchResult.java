@@ -0,0 +1,108 @@
+package batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import models.ChatResponse;
+
+/**
+ * One line of batch output. {@code line} is the 1-based line number in the input
+ * file, which is what checkpoint/resume keys on.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+    @JsonProperty("line")
+    private long line;
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("model")
+    private String model;
+
+    @JsonProperty("content")
+    private String content;
+
+    @JsonProperty("prompt_eval_count")
+    private Integer promptEvalCount;
+
+    @JsonProperty("eval_count")
+    private Integer evalCount;
+
+    @JsonProperty("total_duration")
+    private Long totalDuration;
+
+    @JsonProperty("load_duration")
+    private Long loadDuration;
+
+    @JsonProperty("prompt_eval_duration")
+    private Long promptEvalDuration;
+
+    @JsonProperty("eval_duration")
+    private Long evalDuration;
+
+    @JsonProperty("latency_ms")
+    private Long latencyMillis;
+
+    @JsonProperty("error")
+    private String error;
+
+    // Blank input lines complete a line number without writing anything
+    @JsonIgnore
+    private boolean skipped;
+
+    public BatchResult() {}
+
+    static BatchResult success(long line, String id, ChatResponse response, long latencyMillis) {
+        BatchResult result = new BatchResult();
+        result.line = line;
+        result.id = id;
+        result.model = response.getModel();
+        result.content = response.getContent();
+        result.promptEvalCount = response.getPromptEvalCount();
+        result.evalCount = response.getEvalCount();
+        result.totalDuration = response.getTotalDuration();
+        result.loadDuration = response.getLoadDuration();
+        result.promptEvalDuration = response.getPromptEvalDuration();
+        result.evalDuration = response.getEvalDuration();
+        result.latencyMillis = latencyMillis;
+        return result;
+    }
+
+    static BatchResult failure(long line, String id, Throwable error, long latencyMillis) {
+        BatchResult result = new BatchResult();
+        result.line = line;
+        result.id = id;
+        result.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+        result.latencyMillis = latencyMillis;
+        return result;
+    }
+
+    static BatchResult skipped(long line) {
+        BatchResult result = new BatchResult();
+        result.line = line;
+        result.skipped = true;
+        return result;
+    }
+
+    // Getters
+    public long getLine() { return line; }
+    public String getId() { return id; }
+    public String getModel() { return model; }
+    public String getContent() { return content; }
+    public Integer getPromptEvalCount() { return promptEvalCount; }
+    public Integer getEvalCount() { return evalCount; }
+    public Long getTotalDuration() { return totalDuration; }
+    public Long getLoadDuration() { return loadDuration; }
+    public Long getPromptEvalDuration() { return promptEvalDuration; }
+    public Long getEvalDuration() { return evalDuration; }
+    public Long getLatencyMillis() { return latencyMillis; }
+    public String getError() { return error; }
+    public boolean isSkipped() { return skipped; }
+
+    @JsonIgnore
+    public boolean isSuccess() {
+        return !skipped && error == null;
+    }
+}
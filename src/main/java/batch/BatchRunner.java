@@ -0,0 +1,387 @@
+package batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.ChatRequest;
+import services.OllamaService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs a JSONL file of {@link ChatRequest}s (one per line, optional {@code "id"} field)
+ * through {@link OllamaService#chatAsync} and writes one {@link BatchResult} per line to
+ * an output JSONL file.
+ *
+ * <p>The input is streamed line by line and at most {@code concurrency} requests are in
+ * flight, so memory stays flat for any file size. Results go through a bounded queue to
+ * a single writer thread, which also fsyncs the output and saves a
+ * {@link BatchCheckpoint} every {@code checkpointEvery} results. Re-running with the same
+ * output resumes after the last checkpoint instead of starting over. Effective
+ * concurrency is also capped by the service's {@code async.max.in.flight}.
+ */
+public class BatchRunner {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final BatchResult END_OF_INPUT = BatchResult.skipped(-1);
+
+    private final OllamaService service;
+    private final Path input;
+    private final Path output;
+    private final Path checkpointFile;
+    private final int concurrency;
+    private final int writerQueueCapacity;
+    private final int checkpointEvery;
+    private final boolean resume;
+
+    private BatchRunner(Builder builder) {
+        this.service = builder.service != null ? builder.service : new OllamaService();
+        this.input = builder.input;
+        this.output = builder.output;
+        this.checkpointFile = output.resolveSibling(output.getFileName() + ".checkpoint");
+        this.concurrency = builder.concurrency;
+        this.writerQueueCapacity = builder.writerQueueCapacity;
+        this.checkpointEvery = builder.checkpointEvery;
+        this.resume = builder.resume;
+    }
+
+    public static class Builder {
+        private OllamaService service;
+        private Path input;
+        private Path output;
+        private int concurrency = 8;
+        private int writerQueueCapacity = 1024;
+        private int checkpointEvery = 100;
+        private boolean resume = true;
+
+        public Builder service(OllamaService service) {
+            this.service = service;
+            return this;
+        }
+
+        public Builder input(Path input) {
+            this.input = input;
+            return this;
+        }
+
+        public Builder output(Path output) {
+            this.output = output;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder writerQueueCapacity(int writerQueueCapacity) {
+            this.writerQueueCapacity = writerQueueCapacity;
+            return this;
+        }
+
+        public Builder checkpointEvery(int checkpointEvery) {
+            this.checkpointEvery = checkpointEvery;
+            return this;
+        }
+
+        // When false, any existing output and checkpoint are discarded
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public BatchRunner build() {
+            if (input == null || output == null) {
+                throw new IllegalStateException("Input and output files are required");
+            }
+            if (concurrency < 1 || writerQueueCapacity < 1 || checkpointEvery < 1) {
+                throw new IllegalStateException("Concurrency, queue capacity and checkpoint interval must be positive");
+            }
+            return new BatchRunner(this);
+        }
+    }
+
+    public BatchSummary run() throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        ResumeState state = resume ? recover() : reset();
+
+        BlockingQueue<BatchResult> results = new ArrayBlockingQueue<>(writerQueueCapacity);
+        ResultWriter writer = new ResultWriter(results, state);
+        Thread writerThread = new Thread(writer, "batch-writer");
+        writerThread.start();
+
+        Semaphore permits = new Semaphore(concurrency);
+        long linesRead = 0;
+        long resumedSkipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null && writer.failure == null) {
+                lineNumber++;
+                if (lineNumber < state.watermark || state.completed.contains(lineNumber)) {
+                    resumedSkipped++;
+                    continue;
+                }
+                linesRead++;
+                if (line.isBlank()) {
+                    results.put(BatchResult.skipped(lineNumber));
+                    continue;
+                }
+                permits.acquire();
+                dispatch(lineNumber, line, results, permits);
+            }
+        } finally {
+            closeWriter(permits, results, writerThread);
+        }
+
+        if (writer.failure != null) {
+            throw new IOException("Writing batch output failed", writer.failure);
+        }
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        return new BatchSummary(linesRead, resumedSkipped, writer.succeeded, writer.failed, elapsedMillis);
+    }
+
+    private void dispatch(long lineNumber, String line, BlockingQueue<BatchResult> results, Semaphore permits) {
+        String id = null;
+        ChatRequest request;
+        try {
+            JsonNode node = MAPPER.readTree(line);
+            id = node.hasNonNull("id") ? node.get("id").asText() : null;
+            request = MAPPER.treeToValue(node, ChatRequest.class).toBuilder().stream(false).build();
+        } catch (IOException | RuntimeException e) {
+            enqueue(results, BatchResult.failure(lineNumber, id, e, 0));
+            permits.release();
+            return;
+        }
+
+        String requestId = id;
+        long start = System.nanoTime();
+        service.chatAsync(request).whenComplete((response, error) -> {
+            long latencyMillis = (System.nanoTime() - start) / 1_000_000;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                enqueue(results, BatchResult.failure(lineNumber, requestId, cause, latencyMillis));
+            } else {
+                enqueue(results, BatchResult.success(lineNumber, requestId, response, latencyMillis));
+            }
+            permits.release();
+        });
+    }
+
+    // Blocks the completing thread when the writer falls behind: that is the backpressure
+    private static void enqueue(BlockingQueue<BatchResult> results, BatchResult result) {
+        try {
+            results.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lets in-flight requests land, then closes the writer and waits for its final
+     * checkpoint. Runs to the end even when interrupted, since a writer that never sees
+     * the end of input never exits; the interrupt is restored afterwards.
+     */
+    private void closeWriter(Semaphore permits, BlockingQueue<BatchResult> results, Thread writerThread) {
+        boolean interrupted = false;
+        permits.acquireUninterruptibly(concurrency);
+        while (true) {
+            try {
+                results.put(END_OF_INPUT);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== CHECKPOINT / RESUME ====================
+
+    private static class ResumeState {
+        long watermark = 1;
+        long validOutputLength;
+        Set<Long> completed = new HashSet<>();
+    }
+
+    private ResumeState reset() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(checkpointFile);
+        return new ResumeState();
+    }
+
+    /**
+     * Rebuilds progress from the checkpoint plus whatever was appended to the output
+     * after it. A torn final record from a crash is truncated away.
+     */
+    private ResumeState recover() throws IOException {
+        ResumeState state = new ResumeState();
+        if (!Files.exists(output)) {
+            Files.deleteIfExists(checkpointFile);
+            return state;
+        }
+
+        long scanFrom = 0;
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile);
+        if (checkpoint != null && checkpoint.getOutputOffset() <= Files.size(output)) {
+            state.watermark = checkpoint.getWatermark();
+            state.completed.addAll(checkpoint.getCompleted());
+            scanFrom = checkpoint.getOutputOffset();
+        }
+
+        long position = scanFrom;
+        long validEnd = scanFrom;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(output))) {
+            long skipped = 0;
+            while (skipped < scanFrom) {
+                long n = in.skip(scanFrom - skipped);
+                if (n <= 0) {
+                    throw new IOException("Output ended before checkpoint offset " + scanFrom);
+                }
+                skipped += n;
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    record.write(b);
+                    continue;
+                }
+                JsonNode node = MAPPER.readTree(record.toByteArray());
+                state.completed.add(node.path("line").asLong());
+                record.reset();
+                validEnd = position;
+            }
+        }
+        state.validOutputLength = validEnd;
+        return state;
+    }
+
+    private class ResultWriter implements Runnable {
+
+        private final BlockingQueue<BatchResult> results;
+        private final TreeSet<Long> completedAbove = new TreeSet<>();
+        private final long startLength;
+        private long watermark;
+        private long sinceCheckpoint;
+        volatile IOException failure;
+        long succeeded;
+        long failed;
+
+        ResultWriter(BlockingQueue<BatchResult> results, ResumeState state) {
+            this.results = results;
+            this.watermark = state.watermark;
+            this.startLength = state.validOutputLength;
+            for (Long line : state.completed) {
+                if (line >= watermark) {
+                    completedAbove.add(line);
+                }
+            }
+            advanceWatermark();
+        }
+
+        @Override
+        public void run() {
+            try (FileChannel channel = FileChannel.open(output,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(startLength);
+                channel.position(startLength);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+
+                BatchResult result;
+                while ((result = results.take()) != END_OF_INPUT) {
+                    write(result, out);
+                    if (++sinceCheckpoint >= checkpointEvery) {
+                        checkpoint(out, channel);
+                    }
+                }
+                checkpoint(out, channel);
+            } catch (IOException e) {
+                failure = e;
+                drainUntilEnd();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(BatchResult result, OutputStream out) throws IOException {
+            if (!result.isSkipped()) {
+                out.write(MAPPER.writeValueAsBytes(result));
+                out.write('\n');
+                if (result.isSuccess()) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+            }
+            completedAbove.add(result.getLine());
+            advanceWatermark();
+        }
+
+        private void advanceWatermark() {
+            while (completedAbove.remove(watermark)) {
+                watermark++;
+            }
+        }
+
+        private void checkpoint(OutputStream out, FileChannel channel) throws IOException {
+            out.flush();
+            channel.force(false);
+            new BatchCheckpoint(watermark, channel.position(), new ArrayList<>(completedAbove))
+                .save(checkpointFile);
+            sinceCheckpoint = 0;
+        }
+
+        // Keeps producers from blocking forever on a full queue once writing has failed
+        private void drainUntilEnd() {
+            try {
+                while (results.take() != END_OF_INPUT) {
+                    // discard
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Usage: BatchRunner [input.jsonl] [output.jsonl] [concurrency]
+    public static void main(String[] args) throws Exception {
+        BatchRunner runner = new Builder()
+            .input(Paths.get(args.length > 0 ? args[0] : "requests.jsonl"))
+            .output(Paths.get(args.length > 1 ? args[1] : "results.jsonl"))
+            .concurrency(args.length > 2 ? Integer.parseInt(args[2]) : 8)
+            .build();
+        System.out.println("Batch complete: " + runner.run());
+    }
+}
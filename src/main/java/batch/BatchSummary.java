@@ -0,0 +1,34 @@
+package batch;
+
+public class BatchSummary {
+
+    private final long linesRead;
+    private final long resumedSkipped;
+    private final long succeeded;
+    private final long failed;
+    private final long elapsedMillis;
+
+    BatchSummary(long linesRead, long resumedSkipped, long succeeded, long failed, long elapsedMillis) {
+        this.linesRead = linesRead;
+        this.resumedSkipped = resumedSkipped;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getLinesRead() { return linesRead; }
+    public long getResumedSkipped() { return resumedSkipped; }
+    public long getSucceeded() { return succeeded; }
+    public long getFailed() { return failed; }
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    public double getRequestsPerSecond() {
+        return elapsedMillis > 0 ? (succeeded + failed) * 1000.0 / elapsedMillis : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read=%d resumed=%d ok=%d failed=%d elapsed=%dms (%.2f req/s)",
+            linesRead, resumedSkipped, succeeded, failed, elapsedMillis, getRequestsPerSecond());
+    }
+}
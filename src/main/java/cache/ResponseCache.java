@@ -0,0 +1,159 @@
+package cache;
+
+import config.OllamaConfig;
+import models.ChatCodec;
+import models.ChatResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier cache of chat responses keyed by {@link models.RequestFingerprint}: a
+ * size-bounded LRU in memory in front of one file per response on disk, so repeated
+ * runs of the same deterministic prompts skip generation entirely. Entries are kept
+ * as wire JSON, which keeps the memory tier compact and hands every caller its own
+ * copy of the response. Only meant for deterministic requests; see
+ * {@link models.ChatRequest#isDeterministic()}.
+ */
+public class ResponseCache {
+
+    private final Map<String, byte[]> memory;
+    private final Path directory;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param memoryEntries LRU capacity of the in-memory tier
+     * @param directory     root of the disk tier, or null for memory only
+     */
+    public ResponseCache(int memoryEntries, Path directory) {
+        if (memoryEntries < 1) {
+            throw new IllegalArgumentException("Memory tier needs at least one entry, got " + memoryEntries);
+        }
+        this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        this.directory = directory;
+    }
+
+    public static ResponseCache fromConfig(OllamaConfig config) {
+        String dir = config.getCacheDir();
+        return new ResponseCache(config.getCacheMemoryEntries(), dir.isEmpty() ? null : Paths.get(dir));
+    }
+
+    // Process-wide cache shared by every service, or null when cache.enabled is false
+    public static ResponseCache getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final ResponseCache INSTANCE = OllamaConfig.getInstance().isCacheEnabled()
+            ? fromConfig(OllamaConfig.getInstance()) : null;
+    }
+
+    public ChatResponse get(String fingerprint) {
+        byte[] json;
+        synchronized (memory) {
+            json = memory.get(fingerprint);
+        }
+        if (json != null) {
+            memoryHits.increment();
+            return decode(json);
+        }
+
+        json = readFromDisk(fingerprint);
+        if (json == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        synchronized (memory) {
+            memory.put(fingerprint, json);
+        }
+        return decode(json);
+    }
+
+    // Only complete, successful responses are worth replaying
+    public void put(String fingerprint, ChatResponse response) {
+        if (response == null || response.getError() != null || !Boolean.TRUE.equals(response.getDone())) {
+            return;
+        }
+        byte[] json = ChatCodec.writeResponse(response);
+        synchronized (memory) {
+            memory.put(fingerprint, json);
+        }
+        writeToDisk(fingerprint, json);
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    public int getMemorySize() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    public long getMemoryHits() { return memoryHits.sum(); }
+    public long getDiskHits() { return diskHits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    // ==================== DISK TIER ====================
+
+    // Two-character fan-out keeps any one directory small
+    private Path fileFor(String fingerprint) {
+        return directory.resolve(fingerprint.substring(0, 2)).resolve(fingerprint + ".json");
+    }
+
+    private byte[] readFromDisk(String fingerprint) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(fileFor(fingerprint));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read cached response " + fingerprint, e);
+        }
+    }
+
+    private void writeToDisk(String fingerprint, byte[] json) {
+        if (directory == null) {
+            return;
+        }
+        Path file = fileFor(fingerprint);
+        try {
+            Files.createDirectories(file.getParent());
+            // Written aside and renamed so a crash never leaves a torn entry behind
+            Path temp = Files.createTempFile(file.getParent(), fingerprint, ".tmp");
+            Files.write(temp, json);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cached response " + fingerprint, e);
+        }
+    }
+
+    private static ChatResponse decode(byte[] json) {
+        try {
+            return ChatCodec.readResponse(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse cached response", e);
+        }
+    }
+}
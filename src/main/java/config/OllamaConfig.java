@@ -2,27 +2,26 @@ package config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class OllamaConfig {
 	
-	private static OllamaConfig instance;
-	private Properties properties;
+	private final Properties properties;
 	
 	private OllamaConfig() {
 		properties = new Properties();
 		loadProperties();
 	}
 	
+	// Loaded once, on first use; the holder makes that safe from any test thread
 	public static OllamaConfig getInstance() {
-        if (instance == null) {
-            synchronized (OllamaConfig.class) {
-                if (instance == null) {
-                    instance = new OllamaConfig();
-                }
-            }
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final OllamaConfig INSTANCE = new OllamaConfig();
     }
 
 	
@@ -51,6 +50,20 @@ public class OllamaConfig {
         return properties.getProperty("base.uri");
     }
     
+    // Several Ollama hosts, comma-separated; falls back to base.uri alone
+    public List<String> getBaseUris() {
+        List<String> uris = new ArrayList<>();
+        for (String uri : properties.getProperty("base.uris", "").split(",")) {
+            if (!uri.trim().isEmpty()) {
+                uris.add(uri.trim());
+            }
+        }
+        if (uris.isEmpty()) {
+            uris.add(getBaseUri());
+        }
+        return uris;
+    }
+    
     public String getDefaultModel() {
         return properties.getProperty("default.model");
     }
@@ -59,7 +72,233 @@ public class OllamaConfig {
         return Integer.parseInt(properties.getProperty("timeout", "30000"));
     }
     
+    // Retries after the first attempt, for idempotent calls only
     public int getMaxRetries() {
         return Integer.parseInt(properties.getProperty("max.retries", "3"));
     }
+    
+    // Backoff before retry n is uniform in [0, min(max, base * 2^n)]
+    public long getRetryBaseDelayMillis() {
+        return Long.parseLong(properties.getProperty("retry.base.delay.ms", "100"));
+    }
+    
+    public long getRetryMaxDelayMillis() {
+        return Long.parseLong(properties.getProperty("retry.max.delay.ms", "2000"));
+    }
+    
+    // Retries and hedges earned per call once the initial budget is spent
+    public double getRetryBudgetRatio() {
+        return Double.parseDouble(properties.getProperty("retry.budget.ratio", "0.2"));
+    }
+    
+    // Hedged chats: duplicate a chat with no first token by this percentile of recent TTFT
+    public boolean isHedgeEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("hedge.enabled", "false"));
+    }
+    
+    public double getHedgePercentile() {
+        return Double.parseDouble(properties.getProperty("hedge.percentile", "95"));
+    }
+    
+    // Never hedge sooner than this, and use it alone until enough TTFT samples exist
+    public long getHedgeMinDelayMillis() {
+        return Long.parseLong(properties.getProperty("hedge.min.delay.ms", "500"));
+    }
+    
+    // HTTP transport: connect and read timeouts default to the overall timeout
+    public int getConnectTimeout() {
+        return Integer.parseInt(properties.getProperty("connect.timeout",
+            String.valueOf(Math.min(getTimeout(), 5000))));
+    }
+    
+    public int getReadTimeout() {
+        return Integer.parseInt(properties.getProperty("read.timeout",
+            String.valueOf(getTimeout())));
+    }
+    
+    public int getMaxConnections() {
+        return Integer.parseInt(properties.getProperty("http.max.connections", "256"));
+    }
+    
+    public int getAsyncMaxInFlight() {
+        return Integer.parseInt(properties.getProperty("async.max.in.flight", "64"));
+    }
+    
+    // Adaptive concurrency: per-model limits that grow until Ollama starts queueing,
+    // capped by async.max.in.flight
+    public boolean isAdaptiveConcurrencyEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("adaptive.enabled", "false"));
+    }
+    
+    public int getAdaptiveInitialLimit() {
+        return Integer.parseInt(properties.getProperty("adaptive.initial.limit", "4"));
+    }
+    
+    public int getAdaptiveMinLimit() {
+        return Integer.parseInt(properties.getProperty("adaptive.min.limit", "1"));
+    }
+    
+    // Round-trip time beyond Ollama's total_duration that counts as queueing
+    public long getAdaptiveQueueThresholdMillis() {
+        return Long.parseLong(properties.getProperty("adaptive.queue.threshold.ms", "100"));
+    }
+    
+    // How long a fetched /api/tags listing answers model lookups
+    public long getCatalogTtlMillis() {
+        return Long.parseLong(properties.getProperty("catalog.ttl.ms", "30000"));
+    }
+    
+    // Response cache for deterministic requests; an empty cache.dir keeps it in memory only
+    public boolean isCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("cache.enabled", "false"));
+    }
+    
+    public int getCacheMemoryEntries() {
+        return Integer.parseInt(properties.getProperty("cache.memory.entries", "1024"));
+    }
+    
+    public String getCacheDir() {
+        return properties.getProperty("cache.dir", ".ollama-cache");
+    }
+    
+    // Identical deterministic chats in flight at once share one generation
+    public boolean isCoalesceEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("coalesce.enabled", "true"));
+    }
+    
+    // Record/replay: off, record or replay; replay.timing re-creates streamed chunk gaps
+    public String getReplayMode() {
+        return properties.getProperty("replay.mode", "off");
+    }
+    
+    public String getReplayDir() {
+        return properties.getProperty("replay.dir", "src/test/resources/cassettes");
+    }
+    
+    public boolean isReplayTiming() {
+        return Boolean.parseBoolean(properties.getProperty("replay.timing", "false"));
+    }
+    
+    // Conversation sessions: history policy and the token budget it keeps prompts under
+    public String getConversationPolicy() {
+        return properties.getProperty("conversation.policy", "sliding_window");
+    }
+    
+    // Context window the model runs with (num_ctx); used for budgeting, not sent
+    public int getConversationNumCtx() {
+        return Integer.parseInt(properties.getProperty("conversation.num.ctx", "2048"));
+    }
+    
+    // Part of the window kept free for the reply
+    public int getConversationReplyReserve() {
+        return Integer.parseInt(properties.getProperty("conversation.reply.reserve", "512"));
+    }
+    
+    // Model residency: warm models at start-up and keep them loaded with keep_alive
+    public boolean isResidencyEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("residency.enabled", "false"));
+    }
+    
+    // Comma-separated; defaults to default.model
+    public List<String> getResidencyModels() {
+        List<String> models = new ArrayList<>();
+        for (String model : properties.getProperty("residency.models", getDefaultModel()).split(",")) {
+            if (!model.trim().isEmpty()) {
+                models.add(model.trim());
+            }
+        }
+        return models;
+    }
+    
+    public String getResidencyKeepAlive() {
+        return properties.getProperty("residency.keep.alive", "30m");
+    }
+    
+    public long getResidencyPollMillis() {
+        return Long.parseLong(properties.getProperty("residency.poll.ms", "30000"));
+    }
+    
+    // Reload a model this long before its keep_alive runs out
+    public long getResidencyRefreshMarginMillis() {
+        return Long.parseLong(properties.getProperty("residency.refresh.margin.ms", "120000"));
+    }
+    
+    // A reply whose load_duration is at least this long counts as a cold load
+    public long getResidencyColdLoadMillis() {
+        return Long.parseLong(properties.getProperty("residency.cold.load.ms", "250"));
+    }
+    
+    // Node pool over base.uris: least_outstanding or throughput routing
+    public String getPoolRouting() {
+        return properties.getProperty("pool.routing", "least_outstanding");
+    }
+    
+    public long getPoolHealthIntervalMillis() {
+        return Long.parseLong(properties.getProperty("pool.health.interval.ms", "5000"));
+    }
+    
+    // Consecutive failed or slow calls that take a node out of rotation
+    public int getPoolBreakerFailures() {
+        return Integer.parseInt(properties.getProperty("pool.breaker.failures", "5"));
+    }
+    
+    // Calls slower than this count as failures; for streams, time to first byte. 0 disables
+    public long getPoolBreakerSlowMillis() {
+        return Long.parseLong(properties.getProperty("pool.breaker.slow.ms", "0"));
+    }
+    
+    public long getPoolBreakerOpenMillis() {
+        return Long.parseLong(properties.getProperty("pool.breaker.open.ms", "30000"));
+    }
+    
+    // HTTP logging for the RestAssured spec: errors and slow calls always, others sampled
+    public boolean isLogEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("log.enabled", "true"));
+    }
+    
+    public double getLogSampleRate() {
+        return Double.parseDouble(properties.getProperty("log.sample.rate", "0.01"));
+    }
+    
+    public int getLogMaxBodyChars() {
+        return Integer.parseInt(properties.getProperty("log.max.body.chars", "2000"));
+    }
+    
+    // 0 logs slow calls only when sampled
+    public long getLogSlowMillis() {
+        return Long.parseLong(properties.getProperty("log.slow.ms", "10000"));
+    }
+    
+    // Entries waiting for the writer; more are dropped
+    public int getLogBufferSize() {
+        return Integer.parseInt(properties.getProperty("log.buffer.size", "4096"));
+    }
+    
+    // Performance-regression gate: baselines per scenario, model and digest
+    public String getPerfBaselineFile() {
+        return properties.getProperty("perf.baseline.file", "src/test/resources/perf-baselines.bin");
+    }
+    
+    public int getPerfSamples() {
+        return Integer.parseInt(properties.getProperty("perf.samples", "20"));
+    }
+    
+    // Discarded calls before sampling, e.g. to get the model loaded
+    public int getPerfWarmup() {
+        return Integer.parseInt(properties.getProperty("perf.warmup", "2"));
+    }
+    
+    public double getPerfAlpha() {
+        return Double.parseDouble(properties.getProperty("perf.alpha", "0.01"));
+    }
+    
+    // Smallest rank-biserial effect, 0 to 1, that fails the gate
+    public double getPerfMinEffect() {
+        return Double.parseDouble(properties.getProperty("perf.min.effect", "0.3"));
+    }
+    
+    // Record every run as the new baseline instead of checking it
+    public boolean isPerfUpdateBaselines() {
+        return Boolean.parseBoolean(properties.getProperty("perf.update.baselines", "false"));
+    }
 }
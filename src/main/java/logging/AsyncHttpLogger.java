@@ -0,0 +1,221 @@
+package logging;
+
+import config.OllamaConfig;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * HTTP exchange log that stays off the request thread. Callers only decide whether an
+ * exchange is worth logging and drop it into a {@link LogRingBuffer}; one daemon
+ * thread formats, truncates and prints the entries in batches. Errors and slow calls
+ * are always logged, other calls at the sample rate. When the ring is full the entry
+ * is dropped and counted rather than making the caller wait.
+ */
+public class AsyncHttpLogger implements AutoCloseable {
+
+    // Longest the writer sleeps before looking at the ring again on its own
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LogRingBuffer<Entry> buffer;
+    private final PrintStream out;
+    private final double sampleRate;
+    private final int maxBodyChars;
+    private final long slowNanos;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    /**
+     * @param sampleRate   share of ordinary calls to log, 0 to 1
+     * @param maxBodyChars bodies are cut to this many characters
+     * @param slowMillis   calls at least this slow are always logged; 0 disables
+     */
+    public AsyncHttpLogger(PrintStream out, int bufferSize, double sampleRate, int maxBodyChars, long slowMillis) {
+        this.buffer = new LogRingBuffer<>(bufferSize);
+        this.out = out;
+        this.sampleRate = sampleRate;
+        this.maxBodyChars = maxBodyChars;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.writer = new Thread(this::drainLoop, "http-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static AsyncHttpLogger fromConfig(OllamaConfig config) {
+        return new AsyncHttpLogger(System.out, config.getLogBufferSize(), config.getLogSampleRate(),
+            config.getLogMaxBodyChars(), config.getLogSlowMillis());
+    }
+
+    // ==================== DEFAULT INSTANCE ====================
+
+    // Writes to stdout; null when log.enabled is false
+    public static AsyncHttpLogger getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final AsyncHttpLogger INSTANCE = create(OllamaConfig.getInstance());
+
+        private static AsyncHttpLogger create(OllamaConfig config) {
+            if (!config.isLogEnabled()) {
+                return null;
+            }
+            AsyncHttpLogger logger = fromConfig(config);
+            // Print what is still queued before the JVM exits
+            Runtime.getRuntime().addShutdownHook(new Thread(logger::close));
+            return logger;
+        }
+    }
+
+    // ==================== LOGGING ====================
+
+    /**
+     * Why an exchange should be logged: {@code "error"} for status 400 and up or no
+     * response at all, {@code "slow"}, {@code "sampled"} at the sample rate, or null to
+     * skip it. Cheap enough to call before reading the response body.
+     */
+    public String reasonToLog(int statusCode, long elapsedNanos) {
+        if (statusCode < 200 || statusCode >= 400) {
+            return "error";
+        }
+        if (slowNanos > 0 && elapsedNanos >= slowNanos) {
+            return "slow";
+        }
+        if (sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+            return "sampled";
+        }
+        return null;
+    }
+
+    // Queues the entry for the writer; false if the ring was full and it was dropped
+    public boolean log(Entry entry) {
+        if (!running || !buffer.offer(entry)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    // ==================== WRITER ====================
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (running) {
+            if (!drain(batch)) {
+                idle = true;
+                // Re-check after announcing, so an entry offered in between is not left waiting
+                if (buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+        drain(batch);
+    }
+
+    // Prints everything queued as one write; false if there was nothing
+    private boolean drain(StringBuilder batch) {
+        int count = 0;
+        Entry entry;
+        while ((entry = buffer.poll()) != null) {
+            format(entry, batch);
+            count++;
+        }
+        if (count == 0) {
+            return false;
+        }
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+        written += count;
+        return true;
+    }
+
+    private void format(Entry entry, StringBuilder text) {
+        text.append(entry.method).append(' ').append(entry.uri).append(" -> ");
+        if (entry.error != null) {
+            text.append(entry.error.getClass().getSimpleName()).append(": ").append(entry.error.getMessage());
+        } else {
+            text.append(entry.statusCode);
+        }
+        text.append(" in ").append(TimeUnit.NANOSECONDS.toMillis(entry.elapsedNanos)).append(" ms (")
+            .append(entry.reason).append(")\n");
+        appendBody(text, "  > ", entry.requestBody);
+        appendBody(text, "  < ", entry.responseBody);
+    }
+
+    private void appendBody(StringBuilder text, String prefix, Object body) {
+        if (body == null) {
+            return;
+        }
+        String value = body instanceof byte[] ? new String((byte[]) body, StandardCharsets.UTF_8) : body.toString();
+        text.append(prefix);
+        if (value.length() > maxBodyChars) {
+            text.append(value, 0, maxBodyChars).append("... (").append(value.length() - maxBodyChars)
+                .append(" more chars)");
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Stops the writer once it has printed what is queued. Entries logged afterwards
+     * are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== STATE ====================
+
+    public long getWrittenCount() { return written; }
+    public long getDroppedCount() { return dropped.get(); }
+    public double getSampleRate() { return sampleRate; }
+
+    // ==================== ENTRY ====================
+
+    /**
+     * One exchange as captured on the request thread. Bodies are kept as they are,
+     * String or byte[], and only decoded and cut down by the writer.
+     */
+    public static final class Entry {
+        private final String method;
+        private final String uri;
+        private final Object requestBody;
+        private final int statusCode;
+        private final Object responseBody;
+        private final Throwable error;
+        private final long elapsedNanos;
+        private final String reason;
+
+        public Entry(String method, String uri, Object requestBody, int statusCode, Object responseBody,
+                     Throwable error, long elapsedNanos, String reason) {
+            this.method = method;
+            this.uri = uri;
+            this.requestBody = requestBody;
+            this.statusCode = statusCode;
+            this.responseBody = responseBody;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+            this.reason = reason;
+        }
+    }
+}
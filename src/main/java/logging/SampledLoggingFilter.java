@@ -0,0 +1,45 @@
+package logging;
+
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+/**
+ * RestAssured filter that hands exchanges to an {@link AsyncHttpLogger} instead of
+ * printing them. The request thread only times the call and, for the exchanges that
+ * get logged, takes references to the bodies; everything else happens on the writer.
+ */
+public class SampledLoggingFilter implements Filter {
+
+    private final AsyncHttpLogger logger;
+
+    public SampledLoggingFilter(AsyncHttpLogger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public Response filter(FilterableRequestSpecification request, FilterableResponseSpecification responseSpec,
+                           FilterContext context) {
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = context.next(request, responseSpec);
+        } catch (Throwable e) {
+            // Includes the I/O exceptions RestAssured throws without declaring them
+            long elapsed = System.nanoTime() - start;
+            logger.log(new AsyncHttpLogger.Entry(request.getMethod(), request.getURI(), request.getBody(),
+                0, null, e, elapsed, "error"));
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        String reason = logger.reasonToLog(response.getStatusCode(), elapsed);
+        if (reason != null) {
+            // RestAssured has already buffered the body, so this does not wait on the network
+            logger.log(new AsyncHttpLogger.Entry(request.getMethod(), request.getURI(), request.getBody(),
+                response.getStatusCode(), response.asByteArray(), null, elapsed, reason));
+        }
+        return response;
+    }
+}
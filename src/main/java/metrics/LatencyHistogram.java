@@ -0,0 +1,159 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values (nanoseconds or
+ * any other non-negative long) land in buckets whose width grows with magnitude, with
+ * 128 sub-buckets per power of two, so every recorded value is kept to within 0.8%
+ * using a fixed ~40 KB of counters. Recording is lock-free and safe from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // 2^44 ns is almost five hours; anything larger is clamped into the top bucket
+    private static final int MAX_MAGNITUDE = 44;
+    private static final long HIGHEST_TRACKABLE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public void recordValue(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Histogram values must be non-negative, got " + value);
+        }
+        long clamped = Math.min(value, HIGHEST_TRACKABLE);
+        counts.incrementAndGet(indexOf(clamped));
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records a value measured by a closed-loop caller that meant to issue a request
+     * every {@code expectedInterval}. When one slow response delayed the requests behind
+     * it, the samples those requests would have seen are back-filled (coordinated
+     * omission correction, same rule as HdrHistogram).
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing);
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        if (other.getTotalCount() > 0) {
+            min.accumulate(other.getMin());
+            max.accumulate(other.getMax());
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        min.reset();
+        max.reset();
+    }
+
+    // ==================== QUERIES ====================
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long getMin() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    public long getMax() {
+        long value = max.get();
+        return value == Long.MIN_VALUE ? 0 : value;
+    }
+
+    public double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                total += count;
+                sum += (double) count * medianEquivalentValue(i);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    // percentile in [0, 100]; e.g. 99.9 for p99.9
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // ==================== BUCKET MATH ====================
+
+    static int indexOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return mantissa << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index) + bucketWidth(index) - 1;
+    }
+
+    private static long medianEquivalentValue(int index) {
+        return lowestEquivalentValue(index) + bucketWidth(index) / 2;
+    }
+
+    private static long bucketWidth(int index) {
+        return index < SUB_BUCKET_COUNT ? 1 : 1L << ((index >>> SUB_BUCKET_BITS) - 1);
+    }
+}
@@ -0,0 +1,99 @@
+package metrics;
+
+import models.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side metrics, fed by {@link services.OllamaService} on every chat call.
+ * Everything on the record path is a {@link LongAdder} or a {@link StripedHistogram},
+ * and the per-key lookup is a lock-free {@link ConcurrentHashMap} read, so recording
+ * from hundreds of threads does not serialize them.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentHashMap<Key, ModelMetrics> models = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public void recordChat(String model, Outcome outcome, long clientNanos, ChatResponse response) {
+        Key key = new Key(model != null ? model : "unknown", outcome);
+        ModelMetrics metrics = models.get(key);
+        if (metrics == null) {
+            metrics = models.computeIfAbsent(key, k -> new ModelMetrics(k.model, k.outcome));
+        }
+        metrics.record(clientNanos, response);
+    }
+
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    // Gauges are sampled when a snapshot is taken; registering a name again replaces it
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.ModelSnapshot> modelSnapshots = new ArrayList<>();
+        for (ModelMetrics metrics : models.values()) {
+            modelSnapshots.add(metrics.snapshot());
+        }
+        modelSnapshots.sort(Comparator.comparing(MetricsSnapshot.ModelSnapshot::getModel)
+            .thenComparing(MetricsSnapshot.ModelSnapshot::getOutcome));
+
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsLong()));
+
+        return new MetricsSnapshot(modelSnapshots, counterValues, gaugeValues);
+    }
+
+    public void reset() {
+        models.clear();
+        counters.clear();
+    }
+
+    private static final class Key {
+        private final String model;
+        private final Outcome outcome;
+
+        Key(String model, Outcome outcome) {
+            this.model = model;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return model.equals(other.model) && outcome == other.outcome;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(model, outcome);
+        }
+    }
+}
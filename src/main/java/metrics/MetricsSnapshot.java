@@ -0,0 +1,123 @@
+package metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a {@link MetricsRegistry}, safe to keep and print while
+ * recording carries on.
+ */
+public class MetricsSnapshot {
+
+    private final List<ModelSnapshot> models;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+
+    MetricsSnapshot(List<ModelSnapshot> models, Map<String, Long> counters, Map<String, Long> gauges) {
+        this.models = Collections.unmodifiableList(models);
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    public List<ModelSnapshot> getModels() { return models; }
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Long> getGauges() { return gauges; }
+
+    public ModelSnapshot getModel(String model, Outcome outcome) {
+        for (ModelSnapshot snapshot : models) {
+            if (snapshot.getModel().equals(model) && snapshot.getOutcome() == outcome) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("=== Client Metrics ===\n");
+        for (ModelSnapshot model : models) {
+            report.append(model).append('\n');
+        }
+        counters.forEach((name, value) -> report.append(name).append(" = ").append(value).append('\n'));
+        gauges.forEach((name, value) -> report.append(name).append(" = ").append(value).append('\n'));
+        return report.toString();
+    }
+
+    public static class ModelSnapshot {
+
+        private final String model;
+        private final Outcome outcome;
+        private final long requests;
+        private final long promptTokens;
+        private final long generatedTokens;
+        private final LatencyHistogram clientWallTime;
+        private final LatencyHistogram serverTotalTime;
+        private final LatencyHistogram loadTime;
+        private final LatencyHistogram promptTokensPerSecond;
+        private final LatencyHistogram generationTokensPerSecond;
+        private final LatencyHistogram timeToFirstToken;
+
+        ModelSnapshot(String model, Outcome outcome, long requests, long promptTokens, long generatedTokens,
+                      LatencyHistogram clientWallTime, LatencyHistogram serverTotalTime,
+                      LatencyHistogram loadTime, LatencyHistogram promptTokensPerSecond,
+                      LatencyHistogram generationTokensPerSecond, LatencyHistogram timeToFirstToken) {
+            this.model = model;
+            this.outcome = outcome;
+            this.requests = requests;
+            this.promptTokens = promptTokens;
+            this.generatedTokens = generatedTokens;
+            this.clientWallTime = clientWallTime;
+            this.serverTotalTime = serverTotalTime;
+            this.loadTime = loadTime;
+            this.promptTokensPerSecond = promptTokensPerSecond;
+            this.generationTokensPerSecond = generationTokensPerSecond;
+            this.timeToFirstToken = timeToFirstToken;
+        }
+
+        public String getModel() { return model; }
+        public Outcome getOutcome() { return outcome; }
+        public long getRequests() { return requests; }
+        public long getPromptTokens() { return promptTokens; }
+        public long getGeneratedTokens() { return generatedTokens; }
+
+        // Nanosecond histograms
+        public LatencyHistogram getClientWallTime() { return clientWallTime; }
+        public LatencyHistogram getServerTotalTime() { return serverTotalTime; }
+        public LatencyHistogram getLoadTime() { return loadTime; }
+        public LatencyHistogram getTimeToFirstToken() { return timeToFirstToken; }
+
+        // Milli-tokens per second histograms; see getGenerationTokensPerSecond(double)
+        public LatencyHistogram getPromptTokensPerSecond() { return promptTokensPerSecond; }
+        public LatencyHistogram getGenerationTokensPerSecond() { return generationTokensPerSecond; }
+
+        public double getGenerationTokensPerSecond(double percentile) {
+            return generationTokensPerSecond.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        public double getPromptTokensPerSecond(double percentile) {
+            return promptTokensPerSecond.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [%s] requests=%d promptTokens=%d generatedTokens=%d%n"
+                    + "  client p50/p99=%.1f/%.1fms server p50/p99=%.1f/%.1fms load p99=%.1fms%n"
+                    + "  prompt tok/s p50=%.1f  gen tok/s p50=%.1f  ttft p50/p99=%.1f/%.1fms",
+                model, outcome, requests, promptTokens, generatedTokens,
+                millis(clientWallTime, 50), millis(clientWallTime, 99),
+                millis(serverTotalTime, 50), millis(serverTotalTime, 99),
+                millis(loadTime, 99),
+                getPromptTokensPerSecond(50), getGenerationTokensPerSecond(50),
+                millis(timeToFirstToken, 50), millis(timeToFirstToken, 99));
+        }
+
+        private static double millis(LatencyHistogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package metrics;
+
+import models.ChatResponse;
+import models.StreamTimings;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything recorded for one (model, outcome) pair. Durations are in nanoseconds;
+ * token rates are stored as milli-tokens per second so they fit a long histogram.
+ */
+public class ModelMetrics {
+
+    private final String model;
+    private final Outcome outcome;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder generatedTokens = new LongAdder();
+
+    private final StripedHistogram clientWallTime = new StripedHistogram();
+    private final StripedHistogram serverTotalTime = new StripedHistogram();
+    private final StripedHistogram loadTime = new StripedHistogram();
+    private final StripedHistogram promptTokensPerSecond = new StripedHistogram();
+    private final StripedHistogram generationTokensPerSecond = new StripedHistogram();
+    private final StripedHistogram timeToFirstToken = new StripedHistogram();
+
+    ModelMetrics(String model, Outcome outcome) {
+        this.model = model;
+        this.outcome = outcome;
+    }
+
+    void record(long clientNanos, ChatResponse response) {
+        requests.increment();
+        clientWallTime.recordValue(Math.max(0, clientNanos));
+        if (response == null) {
+            return;
+        }
+        if (response.getTotalDuration() != null) {
+            serverTotalTime.recordValue(response.getTotalDuration());
+        }
+        if (response.getLoadDuration() != null) {
+            loadTime.recordValue(response.getLoadDuration());
+        }
+        if (response.getPromptEvalCount() != null) {
+            promptTokens.add(response.getPromptEvalCount());
+            recordRate(promptTokensPerSecond, response.getPromptEvalCount(), response.getPromptEvalDuration());
+        }
+        if (response.getEvalCount() != null) {
+            generatedTokens.add(response.getEvalCount());
+            recordRate(generationTokensPerSecond, response.getEvalCount(), response.getEvalDuration());
+        }
+        StreamTimings timings = response.getStreamTimings();
+        if (timings != null && timings.hasFirstToken()) {
+            timeToFirstToken.recordValue(timings.getTimeToFirstTokenNanos());
+        }
+    }
+
+    private static void recordRate(StripedHistogram histogram, long tokens, Long durationNanos) {
+        if (durationNanos != null && durationNanos > 0) {
+            histogram.recordValue(tokens * 1_000_000_000_000L / durationNanos);
+        }
+    }
+
+    MetricsSnapshot.ModelSnapshot snapshot() {
+        return new MetricsSnapshot.ModelSnapshot(model, outcome,
+            requests.sum(), promptTokens.sum(), generatedTokens.sum(),
+            clientWallTime.snapshot(), serverTotalTime.snapshot(), loadTime.snapshot(),
+            promptTokensPerSecond.snapshot(), generationTokensPerSecond.snapshot(),
+            timeToFirstToken.snapshot());
+    }
+}
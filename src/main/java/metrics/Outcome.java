@@ -0,0 +1,6 @@
+package metrics;
+
+public enum Outcome {
+    SUCCESS,
+    ERROR
+}
@@ -0,0 +1,52 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link LatencyHistogram} split into per-thread-group stripes so that hundreds of
+ * threads recording the same value do not fight over one counter. Stripes are created
+ * on first use, so a histogram only ever touched by one thread costs a single stripe.
+ * Reads merge the stripes into a fresh histogram.
+ */
+public class StripedHistogram {
+
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicReferenceArray<LatencyHistogram> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    public void recordValue(long value) {
+        stripe().recordValue(value);
+    }
+
+    public LatencyHistogram snapshot() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int i = 0; i < STRIPES; i++) {
+            LatencyHistogram stripe = stripes.get(i);
+            if (stripe != null) {
+                merged.add(stripe);
+            }
+        }
+        return merged;
+    }
+
+    private LatencyHistogram stripe() {
+        int index = (int) mix(Thread.currentThread().getId()) & (STRIPES - 1);
+        LatencyHistogram stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new LatencyHistogram());
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    // Spread sequential thread ids across stripes
+    private static long mix(long id) {
+        id *= 0x9E3779B97F4A7C15L;
+        return id ^ (id >>> 32);
+    }
+
+    private static int stripeCount() {
+        int cpus = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return Integer.highestOneBit(Math.max(1, cpus - 1) << 1);
+    }
+}
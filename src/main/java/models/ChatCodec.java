@@ -0,0 +1,180 @@
+package models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Shared JSON codec for the chat hot path. Responses are read token by token with the
+ * Jackson streaming API straight into {@link ChatResponse}: no intermediate String of the
+ * body, no tree, and unknown fields are skipped without being materialized. Requests are
+ * written by a pre-built {@link ObjectWriter} straight to bytes or an output stream.
+ * All members are thread-safe.
+ */
+public final class ChatCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final ObjectWriter REQUEST_WRITER = MAPPER.writerFor(ChatRequest.class);
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private ChatCodec() {
+    }
+
+    // Pre-configured mapper for the less hot JSON in the framework
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    // ==================== REQUESTS ====================
+
+    public static byte[] writeRequest(ChatRequest request) {
+        try {
+            return REQUEST_WRITER.writeValueAsBytes(request);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize ChatRequest", e);
+        }
+    }
+
+    public static void writeRequest(ChatRequest request, OutputStream out) throws IOException {
+        REQUEST_WRITER.writeValue(out, request);
+    }
+
+    // ==================== RESPONSES ====================
+
+    public static ChatResponse readResponse(byte[] json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return readResponse(parser);
+        }
+    }
+
+    public static ChatResponse readResponse(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            return readResponse(parser);
+        }
+    }
+
+    /**
+     * Parser for a newline-delimited stream of responses: call
+     * {@link #readResponse(JsonParser)} until it returns null. The parser hands back
+     * each object as soon as its bytes arrive.
+     */
+    public static JsonParser createStreamParser(InputStream in) throws IOException {
+        return FACTORY.createParser(in);
+    }
+
+    /**
+     * Reads the next response object from the parser, or returns null at end of input.
+     */
+    public static ChatResponse readResponse(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken() == JsonToken.START_OBJECT ? JsonToken.START_OBJECT : parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found " + token);
+        }
+
+        ChatResponse response = new ChatResponse();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "model": response.setModel(parser.getText()); break;
+                case "created_at": response.setCreatedAt(parser.getText()); break;
+                case "message": response.setMessage(readMessage(parser)); break;
+                case "done": response.setDone(parser.getBooleanValue()); break;
+                case "total_duration": response.setTotalDuration(parser.getLongValue()); break;
+                case "load_duration": response.setLoadDuration(parser.getLongValue()); break;
+                case "prompt_eval_count": response.setPromptEvalCount(parser.getIntValue()); break;
+                case "prompt_eval_duration": response.setPromptEvalDuration(parser.getLongValue()); break;
+                case "eval_count": response.setEvalCount(parser.getIntValue()); break;
+                case "eval_duration": response.setEvalDuration(parser.getLongValue()); break;
+                case "error": response.setError(parser.getText()); break;
+                default: parser.skipChildren();
+            }
+        }
+        // Leave the parser between objects so the next call starts cleanly
+        parser.clearCurrentToken();
+        return response;
+    }
+
+    /**
+     * Writes a response in Ollama's wire format, leaving out client-side fields and
+     * nulls, so that {@link #readResponse(byte[])} gives back an equal response.
+     */
+    public static byte[] writeResponse(ChatResponse response) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            writeString(generator, "model", response.getModel());
+            writeString(generator, "created_at", response.getCreatedAt());
+            ResponseMessage message = response.getMessage();
+            if (message != null) {
+                generator.writeObjectFieldStart("message");
+                writeString(generator, "role", message.getRole());
+                writeString(generator, "content", message.getContent());
+                generator.writeEndObject();
+            }
+            if (response.getDone() != null) {
+                generator.writeBooleanField("done", response.getDone());
+            }
+            writeNumber(generator, "total_duration", response.getTotalDuration());
+            writeNumber(generator, "load_duration", response.getLoadDuration());
+            writeNumber(generator, "prompt_eval_count", response.getPromptEvalCount());
+            writeNumber(generator, "prompt_eval_duration", response.getPromptEvalDuration());
+            writeNumber(generator, "eval_count", response.getEvalCount());
+            writeNumber(generator, "eval_duration", response.getEvalDuration());
+            writeString(generator, "error", response.getError());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize ChatResponse", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeString(JsonGenerator generator, String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, String field, Number value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(field, value.longValue());
+        }
+    }
+
+    private static ResponseMessage readMessage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        ResponseMessage message = new ResponseMessage();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "role": message.setRole(parser.getText()); break;
+                case "content": message.setContent(parser.getText()); break;
+                default: parser.skipChildren();
+            }
+        }
+        return message;
+    }
+}
@@ -1,11 +1,18 @@
 package models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.fasterxml.jackson.databind.node.TextNode;
 import java.util.ArrayList;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonDeserialize(builder = ChatRequest.Builder.class)
 public class ChatRequest {
     
     @JsonProperty("model")
@@ -20,18 +27,33 @@ public class ChatRequest {
     @JsonProperty("options")
     private Options options;
     
+    // "json" for JSON mode, or a JSON Schema object the output must follow
+    @JsonProperty("format")
+    private JsonNode format;
+    
+    // How long the model stays loaded after this request, e.g. "30m"; "-1" keeps it loaded
+    @JsonProperty("keep_alive")
+    private String keepAlive;
+    
     private ChatRequest(Builder builder) {
         this.model = builder.model;
         this.messages = builder.messages;
         this.stream = builder.stream;
         this.options = builder.options;
+        this.format = builder.format;
+        this.keepAlive = builder.keepAlive;
     }
     
+    // Jackson reads requests (e.g. JSONL batch files) through the builder
+    @JsonPOJOBuilder(withPrefix = "")
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Builder {
         private String model;
         private List<Message> messages;
         private Boolean stream;
         private Options options;
+        private JsonNode format;
+        private String keepAlive;
         
         public Builder() {
             this.messages = new ArrayList<>();
@@ -86,11 +108,46 @@ public class ChatRequest {
             return this;
         }
         
+        // A fixed seed makes sampling reproducible even above temperature 0
+        public Builder seed(Integer seed) {
+            if (this.options == null) {
+                this.options = new Options();
+            }
+            this.options.setSeed(seed);
+            return this;
+        }
+        
+        // Context window to load the model with; changing it makes Ollama reload the model
+        public Builder numCtx(Integer numCtx) {
+            if (this.options == null) {
+                this.options = new Options();
+            }
+            this.options.setNumCtx(numCtx);
+            return this;
+        }
+        
         public Builder options(Options options) {
             this.options = options;
             return this;
         }
         
+        // Constrains the output to valid JSON
+        public Builder jsonMode() {
+            return format(TextNode.valueOf("json"));
+        }
+        
+        // Constrains the output to a JSON Schema (structured outputs), or "json" as a text node
+        public Builder format(JsonNode format) {
+            this.format = format;
+            return this;
+        }
+        
+        @JsonProperty("keep_alive")
+        public Builder keepAlive(String keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+        
         public ChatRequest build() {
             if (model == null || model.isEmpty()) {
                 throw new IllegalStateException("Model is required");
@@ -102,11 +159,35 @@ public class ChatRequest {
         }
     }
     
+    // Copy of this request that can be modified without touching the original
+    public Builder toBuilder() {
+        Builder builder = new Builder()
+            .model(model)
+            .messages(new ArrayList<>(messages))
+            .stream(stream)
+            .format(format != null ? format.deepCopy() : null)
+            .keepAlive(keepAlive);
+        builder.options = options != null ? options.copy() : null;
+        return builder;
+    }
+    
     // Getters
     public String getModel() { return model; }
     public List<Message> getMessages() { return messages; }
     public Boolean getStream() { return stream; }
     public Options getOptions() { return options; }
+    public JsonNode getFormat() { return format; }
+    public String getKeepAlive() { return keepAlive; }
+    
+    // Same request, same answer: greedy decoding or a pinned sampling seed
+    @JsonIgnore
+    public boolean isDeterministic() {
+        if (options == null) {
+            return false;
+        }
+        return options.getSeed() != null
+            || (options.getTemperature() != null && options.getTemperature() == 0.0);
+    }
     
     // Options class for model parameters
     @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -123,6 +204,12 @@ public class ChatRequest {
         @JsonProperty("top_k")
         private Integer topK;
         
+        @JsonProperty("seed")
+        private Integer seed;
+        
+        @JsonProperty("num_ctx")
+        private Integer numCtx;
+        
         // Getters and Setters
         public Double getTemperature() { return temperature; }
         public void setTemperature(Double temperature) { this.temperature = temperature; }
@@ -135,6 +222,23 @@ public class ChatRequest {
         
         public Integer getTopK() { return topK; }
         public void setTopK(Integer topK) { this.topK = topK; }
+        
+        public Integer getSeed() { return seed; }
+        public void setSeed(Integer seed) { this.seed = seed; }
+        
+        public Integer getNumCtx() { return numCtx; }
+        public void setNumCtx(Integer numCtx) { this.numCtx = numCtx; }
+        
+        public Options copy() {
+            Options copy = new Options();
+            copy.temperature = temperature;
+            copy.numPredict = numPredict;
+            copy.topP = topP;
+            copy.topK = topK;
+            copy.seed = seed;
+            copy.numCtx = numCtx;
+            return copy;
+        }
     }
 }
 
@@ -1,5 +1,6 @@
 package models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -36,6 +37,13 @@ public class ChatResponse {
     @JsonProperty("eval_duration")
     private Long evalDuration;
     
+    @JsonProperty("error")
+    private String error;
+    
+    // Client-side timings, only populated for streamed responses
+    @JsonIgnore
+    private StreamTimings streamTimings;
+    
     // Getters
     public String getModel() { return model; }
     public String getCreatedAt() { return createdAt; }
@@ -47,6 +55,8 @@ public class ChatResponse {
     public Long getPromptEvalDuration() { return promptEvalDuration; }
     public Integer getEvalCount() { return evalCount; }
     public Long getEvalDuration() { return evalDuration; }
+    public String getError() { return error; }
+    public StreamTimings getStreamTimings() { return streamTimings; }
     
     // Utility methods
     public String getContent() {
@@ -75,6 +85,30 @@ public class ChatResponse {
     public void setPromptEvalDuration(Long promptEvalDuration) { this.promptEvalDuration = promptEvalDuration; }
     public void setEvalCount(Integer evalCount) { this.evalCount = evalCount; }
     public void setEvalDuration(Long evalDuration) { this.evalDuration = evalDuration; }
+    public void setError(String error) { this.error = error; }
+    public void setStreamTimings(StreamTimings streamTimings) { this.streamTimings = streamTimings; }
+    
+    // Independent copy for handing one reply to several callers; stream timings are shared
+    public ChatResponse copy() {
+        ChatResponse copy = new ChatResponse();
+        copy.model = model;
+        copy.createdAt = createdAt;
+        if (message != null) {
+            copy.message = new ResponseMessage();
+            copy.message.setRole(message.getRole());
+            copy.message.setContent(message.getContent());
+        }
+        copy.done = done;
+        copy.totalDuration = totalDuration;
+        copy.loadDuration = loadDuration;
+        copy.promptEvalCount = promptEvalCount;
+        copy.promptEvalDuration = promptEvalDuration;
+        copy.evalCount = evalCount;
+        copy.evalDuration = evalDuration;
+        copy.error = error;
+        copy.streamTimings = streamTimings;
+        return copy;
+    }
 }
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -0,0 +1,79 @@
+package models;
+
+/**
+ * Folds the newline-delimited chunks of a streamed /api/chat response into a
+ * single {@link ChatResponse}. The statistics (eval_count, durations) come from
+ * the final {@code done:true} chunk; the content is the concatenation of all deltas.
+ */
+public class ChatStreamAccumulator {
+
+    private final StringBuilder content = new StringBuilder();
+    private final StreamTimings timings;
+    private String role = "assistant";
+    private ChatResponse finalChunk;
+
+    public ChatStreamAccumulator(long requestStartNanos) {
+        this.timings = new StreamTimings(requestStartNanos);
+    }
+
+    /**
+     * Adds one chunk and returns its token delta, or an empty string when the
+     * chunk carries no content (e.g. the closing statistics chunk).
+     */
+    public String accept(ChatResponse chunk, long receivedNanos) {
+        if (chunk.getError() != null) {
+            throw new IllegalStateException("Ollama stream error: " + chunk.getError());
+        }
+        String delta = "";
+        if (chunk.getMessage() != null) {
+            if (chunk.getMessage().getRole() != null) {
+                role = chunk.getMessage().getRole();
+            }
+            if (chunk.getContent() != null && !chunk.getContent().isEmpty()) {
+                delta = chunk.getContent();
+                content.append(delta);
+                timings.recordToken(receivedNanos);
+            }
+        }
+        if (Boolean.TRUE.equals(chunk.getDone())) {
+            finalChunk = chunk;
+            timings.recordComplete(receivedNanos);
+        }
+        return delta;
+    }
+
+    public boolean isDone() {
+        return finalChunk != null;
+    }
+
+    public StreamTimings getTimings() {
+        return timings;
+    }
+
+    public String getContent() {
+        return content.toString();
+    }
+
+    public ChatResponse toResponse() {
+        if (finalChunk == null) {
+            throw new IllegalStateException("Stream ended before the done chunk was received");
+        }
+        ResponseMessage message = new ResponseMessage();
+        message.setRole(role);
+        message.setContent(content.toString());
+
+        ChatResponse response = new ChatResponse();
+        response.setModel(finalChunk.getModel());
+        response.setCreatedAt(finalChunk.getCreatedAt());
+        response.setMessage(message);
+        response.setDone(true);
+        response.setTotalDuration(finalChunk.getTotalDuration());
+        response.setLoadDuration(finalChunk.getLoadDuration());
+        response.setPromptEvalCount(finalChunk.getPromptEvalCount());
+        response.setPromptEvalDuration(finalChunk.getPromptEvalDuration());
+        response.setEvalCount(finalChunk.getEvalCount());
+        response.setEvalDuration(finalChunk.getEvalDuration());
+        response.setStreamTimings(timings);
+        return response;
+    }
+}
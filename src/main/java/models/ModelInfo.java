@@ -0,0 +1,77 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// One installed model as listed by /api/tags
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ModelInfo {
+    
+    @JsonProperty("name")
+    private String name;
+    
+    @JsonProperty("model")
+    private String model;
+    
+    @JsonProperty("modified_at")
+    private String modifiedAt;
+    
+    @JsonProperty("size")
+    private Long size;
+    
+    @JsonProperty("digest")
+    private String digest;
+    
+    @JsonProperty("details")
+    private Details details;
+    
+    // Getters
+    public String getName() { return name; }
+    public String getModel() { return model; }
+    public String getModifiedAt() { return modifiedAt; }
+    public Long getSize() { return size; }
+    public String getDigest() { return digest; }
+    public Details getDetails() { return details; }
+    
+    // Setters
+    public void setName(String name) { this.name = name; }
+    public void setModel(String model) { this.model = model; }
+    public void setModifiedAt(String modifiedAt) { this.modifiedAt = modifiedAt; }
+    public void setSize(Long size) { this.size = size; }
+    public void setDigest(String digest) { this.digest = digest; }
+    public void setDetails(Details details) { this.details = details; }
+    
+    @Override
+    public String toString() {
+        return name + " (" + digest + ")";
+    }
+    
+    // Model family and quantization, shared by /api/tags and /api/show
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Details {
+        @JsonProperty("format")
+        private String format;
+        
+        @JsonProperty("family")
+        private String family;
+        
+        @JsonProperty("parameter_size")
+        private String parameterSize;
+        
+        @JsonProperty("quantization_level")
+        private String quantizationLevel;
+        
+        // Getters and Setters
+        public String getFormat() { return format; }
+        public void setFormat(String format) { this.format = format; }
+        
+        public String getFamily() { return family; }
+        public void setFamily(String family) { this.family = family; }
+        
+        public String getParameterSize() { return parameterSize; }
+        public void setParameterSize(String parameterSize) { this.parameterSize = parameterSize; }
+        
+        public String getQuantizationLevel() { return quantizationLevel; }
+        public void setQuantizationLevel(String quantizationLevel) { this.quantizationLevel = quantizationLevel; }
+    }
+}
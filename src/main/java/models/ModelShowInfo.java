@@ -0,0 +1,33 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Model details returned by /api/show
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ModelShowInfo {
+    
+    @JsonProperty("modelfile")
+    private String modelfile;
+    
+    @JsonProperty("parameters")
+    private String parameters;
+    
+    @JsonProperty("template")
+    private String template;
+    
+    @JsonProperty("details")
+    private ModelInfo.Details details;
+    
+    // Getters
+    public String getModelfile() { return modelfile; }
+    public String getParameters() { return parameters; }
+    public String getTemplate() { return template; }
+    public ModelInfo.Details getDetails() { return details; }
+    
+    // Setters
+    public void setModelfile(String modelfile) { this.modelfile = modelfile; }
+    public void setParameters(String parameters) { this.parameters = parameters; }
+    public void setTemplate(String template) { this.template = template; }
+    public void setDetails(ModelInfo.Details details) { this.details = details; }
+}
@@ -0,0 +1,113 @@
+package models;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Canonical SHA-256 of everything that decides a model's answer: model name, model
+ * digest, every message, every sampling option and the output format. Fields are fed
+ * in a fixed order with length prefixes and explicit null markers, so equal requests
+ * always hash the same regardless of how they were built, and no two different
+ * requests can collide by concatenation. The {@code stream} flag and
+ * {@code keep_alive} are left out: they change the framing of the answer and how long
+ * the model stays loaded, not the answer.
+ */
+public final class RequestFingerprint {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RequestFingerprint() {
+    }
+
+    /**
+     * @param modelDigest digest of the installed model, so a re-pulled model gets new
+     *                    fingerprints; may be null when unknown
+     * @return 64 lowercase hex characters
+     */
+    public static String of(ChatRequest request, String modelDigest) {
+        MessageDigest sha = sha256();
+        putString(sha, request.getModel());
+        putString(sha, modelDigest);
+
+        putInt(sha, request.getMessages().size());
+        for (Message message : request.getMessages()) {
+            putString(sha, message.getRole());
+            putString(sha, message.getContent());
+        }
+
+        ChatRequest.Options options = request.getOptions();
+        if (options == null) {
+            sha.update((byte) 0);
+        } else {
+            sha.update((byte) 1);
+            putDouble(sha, options.getTemperature());
+            putLong(sha, options.getNumPredict());
+            putDouble(sha, options.getTopP());
+            putLong(sha, options.getTopK());
+            putLong(sha, options.getSeed());
+        }
+        // Only fed when set, so fingerprints of requests without them stay as they were
+        if (request.getFormat() != null) {
+            sha.update((byte) 2);
+            putString(sha, request.getFormat().toString());
+        }
+        if (options != null && options.getNumCtx() != null) {
+            sha.update((byte) 3);
+            putLong(sha, options.getNumCtx());
+        }
+        return toHex(sha.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void putString(MessageDigest sha, String value) {
+        if (value == null) {
+            putInt(sha, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(sha, bytes.length);
+        sha.update(bytes);
+    }
+
+    private static void putDouble(MessageDigest sha, Double value) {
+        // -0.0 and 0.0 sample identically, so they must hash identically
+        putLong(sha, value == null ? null : Double.doubleToLongBits(value == 0.0 ? 0.0 : value));
+    }
+
+    private static void putLong(MessageDigest sha, Number value) {
+        if (value == null) {
+            sha.update((byte) 0);
+            return;
+        }
+        sha.update((byte) 1);
+        long v = value.longValue();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            sha.update((byte) (v >>> shift));
+        }
+    }
+
+    private static void putInt(MessageDigest sha, int value) {
+        sha.update((byte) (value >>> 24));
+        sha.update((byte) (value >>> 16));
+        sha.update((byte) (value >>> 8));
+        sha.update((byte) value);
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >>> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
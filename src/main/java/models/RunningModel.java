@@ -0,0 +1,66 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+// One model currently loaded in memory, as listed by /api/ps
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RunningModel {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("model")
+    private String model;
+
+    @JsonProperty("size")
+    private Long size;
+
+    @JsonProperty("digest")
+    private String digest;
+
+    @JsonProperty("expires_at")
+    private String expiresAt;
+
+    @JsonProperty("size_vram")
+    private Long sizeVram;
+
+    // Getters
+    public String getName() { return name; }
+    public String getModel() { return model; }
+    public Long getSize() { return size; }
+    public String getDigest() { return digest; }
+    public String getExpiresAt() { return expiresAt; }
+    public Long getSizeVram() { return sizeVram; }
+
+    // Setters
+    public void setName(String name) { this.name = name; }
+    public void setModel(String model) { this.model = model; }
+    public void setSize(Long size) { this.size = size; }
+    public void setDigest(String digest) { this.digest = digest; }
+    public void setExpiresAt(String expiresAt) { this.expiresAt = expiresAt; }
+    public void setSizeVram(Long sizeVram) { this.sizeVram = sizeVram; }
+
+    // When Ollama unloads the model, or null if the timestamp is missing or unreadable
+    @JsonIgnore
+    public Instant getExpiresAtInstant() {
+        if (expiresAt == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(expiresAt).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (expires " + expiresAt + ")";
+    }
+}
@@ -0,0 +1,87 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * Client-side latency of a streamed generation: time-to-first-token (TTFT)
+ * and the gaps between consecutive token deltas, as the caller experienced them.
+ * All values are measured with {@link System#nanoTime()}.
+ */
+public class StreamTimings {
+
+    private final long requestStartNanos;
+    private long firstTokenNanos = -1;
+    private long lastTokenNanos = -1;
+    private long completeNanos = -1;
+    private long[] gaps = new long[64];
+    private int gapCount;
+    private int tokenCount;
+
+    public StreamTimings(long requestStartNanos) {
+        this.requestStartNanos = requestStartNanos;
+    }
+
+    public void recordToken(long nowNanos) {
+        if (firstTokenNanos < 0) {
+            firstTokenNanos = nowNanos;
+        } else {
+            if (gapCount == gaps.length) {
+                gaps = Arrays.copyOf(gaps, gaps.length * 2);
+            }
+            gaps[gapCount++] = nowNanos - lastTokenNanos;
+        }
+        lastTokenNanos = nowNanos;
+        tokenCount++;
+    }
+
+    public void recordComplete(long nowNanos) {
+        completeNanos = nowNanos;
+    }
+
+    // Getters
+    public long getRequestStartNanos() { return requestStartNanos; }
+    public int getTokenCount() { return tokenCount; }
+    public boolean hasFirstToken() { return firstTokenNanos >= 0; }
+
+    public long getTimeToFirstTokenNanos() {
+        return firstTokenNanos >= 0 ? firstTokenNanos - requestStartNanos : -1;
+    }
+
+    public double getTimeToFirstTokenMillis() {
+        return getTimeToFirstTokenNanos() / 1_000_000.0;
+    }
+
+    public long getTotalNanos() {
+        return completeNanos >= 0 ? completeNanos - requestStartNanos : -1;
+    }
+
+    public long[] getInterTokenGapsNanos() {
+        return Arrays.copyOf(gaps, gapCount);
+    }
+
+    public double getMeanInterTokenGapMillis() {
+        if (gapCount == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < gapCount; i++) {
+            sum += gaps[i];
+        }
+        return sum / (gapCount * 1_000_000.0);
+    }
+
+    public double getMaxInterTokenGapMillis() {
+        long max = 0;
+        for (int i = 0; i < gapCount; i++) {
+            max = Math.max(max, gaps[i]);
+        }
+        return max / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ttft=%.1fms tokens=%d meanGap=%.1fms maxGap=%.1fms",
+            getTimeToFirstTokenMillis(), tokenCount,
+            getMeanInterTokenGapMillis(), getMaxInterTokenGapMillis());
+    }
+}
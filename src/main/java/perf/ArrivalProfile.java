@@ -0,0 +1,50 @@
+package perf;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * When the next request should be sent, as a gap after the previous intended send
+ * time. Profiles are independent of how fast responses come back (open loop).
+ */
+public interface ArrivalProfile {
+
+    long nextGapNanos(long elapsedNanos);
+
+    // Requests exactly every 1/rate seconds
+    static ArrivalProfile fixed(double requestsPerSecond) {
+        long gap = gapFor(requestsPerSecond);
+        return elapsed -> gap;
+    }
+
+    // Exponentially distributed gaps: a Poisson process averaging the given rate
+    static ArrivalProfile poisson(double requestsPerSecond, long seed) {
+        double meanGap = 1_000_000_000.0 / positive(requestsPerSecond);
+        Random random = new Random(seed);
+        return elapsed -> (long) (-Math.log(1.0 - random.nextDouble()) * meanGap);
+    }
+
+    // Fixed-rate stages, each held for stepDuration; the last rate holds until the run ends
+    static ArrivalProfile steps(Duration stepDuration, double... requestsPerSecond) {
+        if (requestsPerSecond.length == 0) {
+            throw new IllegalArgumentException("At least one step rate is required");
+        }
+        long[] gaps = new long[requestsPerSecond.length];
+        for (int i = 0; i < gaps.length; i++) {
+            gaps[i] = gapFor(requestsPerSecond[i]);
+        }
+        long stepNanos = stepDuration.toNanos();
+        return elapsed -> gaps[(int) Math.min(elapsed / stepNanos, gaps.length - 1)];
+    }
+
+    private static long gapFor(double requestsPerSecond) {
+        return Math.max(1, (long) (1_000_000_000.0 / positive(requestsPerSecond)));
+    }
+
+    private static double positive(double requestsPerSecond) {
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("Arrival rate must be positive, got " + requestsPerSecond);
+        }
+        return requestsPerSecond;
+    }
+}
@@ -0,0 +1,153 @@
+package perf;
+
+import metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-loop load generator: requests are started on the schedule given by an
+ * {@link ArrivalProfile}, whether or not earlier ones have come back. Each response
+ * time is measured from the request's <em>intended</em> start, so time spent queued
+ * behind slow requests (in the client, the transport or the server) is counted
+ * instead of silently dropped, which is the coordinated-omission trap of closed loops.
+ *
+ * <pre>
+ * LoadReport report = new LoadGenerator.Builder()
+ *     .profile(ArrivalProfile.poisson(2.0, 42))
+ *     .duration(Duration.ofSeconds(30))
+ *     .request(() -> ollamaService.chatAsync(request))
+ *     .build()
+ *     .run();
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private final ArrivalProfile profile;
+    private final Duration duration;
+    private final Duration drainTimeout;
+    private final int maxOutstanding;
+    private final Supplier<? extends CompletableFuture<?>> request;
+
+    private LoadGenerator(Builder builder) {
+        this.profile = builder.profile;
+        this.duration = builder.duration;
+        this.drainTimeout = builder.drainTimeout;
+        this.maxOutstanding = builder.maxOutstanding;
+        this.request = builder.request;
+    }
+
+    public static class Builder {
+        private ArrivalProfile profile;
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration drainTimeout = Duration.ofSeconds(60);
+        private int maxOutstanding = 10_000;
+        private Supplier<? extends CompletableFuture<?>> request;
+
+        public Builder profile(ArrivalProfile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        // How long to wait for stragglers after the last request was sent
+        public Builder drainTimeout(Duration drainTimeout) {
+            this.drainTimeout = drainTimeout;
+            return this;
+        }
+
+        // Safety valve: sends beyond this many outstanding requests are counted as dropped
+        public Builder maxOutstanding(int maxOutstanding) {
+            this.maxOutstanding = maxOutstanding;
+            return this;
+        }
+
+        public Builder request(Supplier<? extends CompletableFuture<?>> request) {
+            this.request = request;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (profile == null || request == null) {
+                throw new IllegalStateException("Arrival profile and request are required");
+            }
+            return new LoadGenerator(this);
+        }
+    }
+
+    public LoadReport run() {
+        LatencyHistogram responseTimes = new LatencyHistogram();
+        LatencyHistogram serviceTimes = new LatencyHistogram();
+        LongAdder succeeded = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicInteger outstanding = new AtomicInteger();
+        long start = System.nanoTime();
+        LongAccumulator lastCompletion = new LongAccumulator(Math::max, start);
+
+        long end = start + duration.toNanos();
+        long intendedStart = start;
+        long sent = 0;
+        long dropped = 0;
+        long maxSchedulerLag = 0;
+
+        while (intendedStart < end) {
+            waitUntil(intendedStart);
+            long sendTime = System.nanoTime();
+            maxSchedulerLag = Math.max(maxSchedulerLag, sendTime - intendedStart);
+
+            if (outstanding.get() >= maxOutstanding) {
+                dropped++;
+            } else {
+                sent++;
+                outstanding.incrementAndGet();
+                long intended = intendedStart;
+                start(request).whenComplete((result, error) -> {
+                    long now = System.nanoTime();
+                    responseTimes.recordValue(now - intended);
+                    serviceTimes.recordValue(now - sendTime);
+                    if (error == null) {
+                        succeeded.increment();
+                    } else {
+                        failed.increment();
+                    }
+                    lastCompletion.accumulate(now);
+                    outstanding.decrementAndGet();
+                });
+            }
+            intendedStart += profile.nextGapNanos(intendedStart - start);
+        }
+
+        long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+
+        long elapsed = Math.max(lastCompletion.get(), end) - start;
+        return new LoadReport(sent, succeeded.sum(), failed.sum(), dropped, outstanding.get(),
+            elapsed, maxSchedulerLag, responseTimes, serviceTimes);
+    }
+
+    private static CompletableFuture<?> start(Supplier<? extends CompletableFuture<?>> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
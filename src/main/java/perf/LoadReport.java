@@ -0,0 +1,81 @@
+package perf;
+
+import metrics.LatencyHistogram;
+
+/**
+ * Outcome of a {@link LoadGenerator} run. Response time is measured from each
+ * request's intended start (coordinated-omission corrected); service time from the
+ * moment it was actually sent.
+ */
+public class LoadReport {
+
+    private final long sent;
+    private final long succeeded;
+    private final long failed;
+    private final long dropped;
+    private final long timedOut;
+    private final long elapsedNanos;
+    private final long maxSchedulerLagNanos;
+    private final LatencyHistogram responseTimes;
+    private final LatencyHistogram serviceTimes;
+
+    LoadReport(long sent, long succeeded, long failed, long dropped, long timedOut, long elapsedNanos,
+               long maxSchedulerLagNanos, LatencyHistogram responseTimes, LatencyHistogram serviceTimes) {
+        this.sent = sent;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.dropped = dropped;
+        this.timedOut = timedOut;
+        this.elapsedNanos = elapsedNanos;
+        this.maxSchedulerLagNanos = maxSchedulerLagNanos;
+        this.responseTimes = responseTimes;
+        this.serviceTimes = serviceTimes;
+    }
+
+    public long getSent() { return sent; }
+    public long getSucceeded() { return succeeded; }
+    public long getFailed() { return failed; }
+    public long getDropped() { return dropped; }
+    public long getTimedOut() { return timedOut; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public long getMaxSchedulerLagNanos() { return maxSchedulerLagNanos; }
+    public LatencyHistogram getResponseTimes() { return responseTimes; }
+    public LatencyHistogram getServiceTimes() { return serviceTimes; }
+
+    // Completed requests per second over the whole run, including the drain
+    public double getAchievedThroughput() {
+        return elapsedNanos > 0 ? (succeeded + failed) * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    public double getResponseTimeMillis(double percentile) {
+        return responseTimes.getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    public double getServiceTimeMillis(double percentile) {
+        return serviceTimes.getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("=== Load Test Results ===\n");
+        report.append(String.format("Sent: %d  OK: %d  Failed: %d  Dropped: %d  Timed out: %d%n",
+            sent, succeeded, failed, dropped, timedOut));
+        report.append(String.format("Achieved throughput: %.2f req/s over %.1fs%n",
+            getAchievedThroughput(), elapsedNanos / 1_000_000_000.0));
+        report.append(String.format("Max scheduler lag: %.2fms%n", maxSchedulerLagNanos / 1_000_000.0));
+        appendPercentiles(report, "Response time", responseTimes);
+        appendPercentiles(report, "Service time ", serviceTimes);
+        return report.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder report, String label, LatencyHistogram histogram) {
+        report.append(String.format("%s (ms): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+            label,
+            histogram.getValueAtPercentile(50) / 1_000_000.0,
+            histogram.getValueAtPercentile(90) / 1_000_000.0,
+            histogram.getValueAtPercentile(99) / 1_000_000.0,
+            histogram.getValueAtPercentile(99.9) / 1_000_000.0,
+            histogram.getMax() / 1_000_000.0));
+    }
+}
@@ -0,0 +1,134 @@
+package perf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Baseline sample distributions, keyed by scenario, model and model digest, in one
+ * small binary file. Samples are stored as floats, 4 bytes each, so a few dozen
+ * scenarios with 30 samples of two metrics stay in the tens of kilobytes. Every
+ * {@link #put} rewrites the file through a temporary copy, so a crash never leaves
+ * it half written.
+ */
+public class PerfBaselineStore {
+
+    // "PBL1"
+    private static final int MAGIC = 0x50424c31;
+
+    private final Path file;
+    private final Map<String, Map<String, double[]>> baselines = new LinkedHashMap<>();
+
+    private PerfBaselineStore(Path file) {
+        this.file = file;
+    }
+
+    // Loads the file if it exists; a missing file is an empty store
+    public static PerfBaselineStore open(Path file) {
+        PerfBaselineStore store = new PerfBaselineStore(file);
+        if (Files.exists(file)) {
+            store.load();
+        }
+        return store;
+    }
+
+    // Scenario, model and digest; a new digest means a new baseline
+    public static String key(String scenario, String model, String digest) {
+        return scenario + "|" + model + "@" + (digest != null ? digest : "");
+    }
+
+    // ==================== ACCESS ====================
+
+    // Null when there is no baseline for the metric
+    public synchronized double[] get(String key, String metric) {
+        Map<String, double[]> metrics = baselines.get(key);
+        double[] samples = metrics != null ? metrics.get(metric) : null;
+        return samples != null ? samples.clone() : null;
+    }
+
+    public synchronized void put(String key, Map<String, double[]> samplesByMetric) {
+        Map<String, double[]> metrics = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> entry : samplesByMetric.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().clone());
+        }
+        baselines.put(key, metrics);
+        save();
+    }
+
+    public synchronized boolean contains(String key) {
+        return baselines.containsKey(key);
+    }
+
+    public synchronized Set<String> keys() {
+        return new LinkedHashSet<>(baselines.keySet());
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // ==================== FILE ====================
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a baseline file: " + file);
+            }
+            int keys = in.readInt();
+            for (int k = 0; k < keys; k++) {
+                String key = in.readUTF();
+                Map<String, double[]> metrics = new LinkedHashMap<>();
+                int metricCount = in.readUnsignedByte();
+                for (int m = 0; m < metricCount; m++) {
+                    String metric = in.readUTF();
+                    double[] samples = new double[in.readInt()];
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i] = in.readFloat();
+                    }
+                    metrics.put(metric, samples);
+                }
+                baselines.put(key, metrics);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read baselines from " + file, e);
+        }
+    }
+
+    private void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(baselines.size());
+                for (Map.Entry<String, Map<String, double[]>> entry : baselines.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeByte(entry.getValue().size());
+                    for (Map.Entry<String, double[]> metric : entry.getValue().entrySet()) {
+                        out.writeUTF(metric.getKey());
+                        out.writeInt(metric.getValue().length);
+                        for (double sample : metric.getValue()) {
+                            out.writeFloat((float) sample);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write baselines to " + file, e);
+        }
+    }
+}
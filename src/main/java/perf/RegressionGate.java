@@ -0,0 +1,136 @@
+package perf;
+
+import config.OllamaConfig;
+import models.ChatRequest;
+import models.ChatResponse;
+import models.ModelInfo;
+import services.OllamaService;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Performance-regression gate. A scenario is run {@code samples} times after a few
+ * discarded warm-up calls, and the latency and generation-speed distributions are
+ * compared with the baseline stored for the same scenario, model and model digest.
+ * The first run for a digest records the baseline. After that, a metric regresses only
+ * when the new run is worse with a one-sided {@link MannWhitneyU} p-value below
+ * {@code alpha} and a rank-biserial effect of at least {@code minEffect}. Noise and
+ * improvements pass.
+ *
+ * <p>Scenarios are measured from Ollama's own durations, so the response cache must
+ * not answer them: leave {@code cache.enabled} off or send non-deterministic requests.
+ */
+public class RegressionGate {
+
+    // Ollama's total_duration, in milliseconds; higher is worse
+    public static final String LATENCY_MS = "latency.ms";
+    // Generated tokens per second of eval time; lower is worse
+    public static final String TOKENS_PER_SECOND = "tokens.per.sec";
+
+    // Below this the normal approximation of the rank-sum test is unreliable
+    public static final int MIN_SAMPLES = 8;
+
+    private final PerfBaselineStore store;
+    private final int samples;
+    private final int warmup;
+    private final double alpha;
+    private final double minEffect;
+    private final boolean updateBaselines;
+
+    /**
+     * @param minEffect       smallest rank-biserial effect that counts, 0 to 1
+     * @param updateBaselines record every run as the new baseline instead of checking it
+     */
+    public RegressionGate(PerfBaselineStore store, int samples, int warmup, double alpha, double minEffect,
+                          boolean updateBaselines) {
+        if (samples < MIN_SAMPLES) {
+            throw new IllegalArgumentException("Need at least " + MIN_SAMPLES + " samples, got " + samples);
+        }
+        this.store = store;
+        this.samples = samples;
+        this.warmup = warmup;
+        this.alpha = alpha;
+        this.minEffect = minEffect;
+        this.updateBaselines = updateBaselines;
+    }
+
+    public static RegressionGate fromConfig(OllamaConfig config) {
+        return new RegressionGate(PerfBaselineStore.open(Paths.get(config.getPerfBaselineFile())),
+            config.getPerfSamples(), config.getPerfWarmup(), config.getPerfAlpha(), config.getPerfMinEffect(),
+            config.isPerfUpdateBaselines());
+    }
+
+    // ==================== RUNS ====================
+
+    // Samples the request through the service and checks it against the model's current digest
+    public RegressionReport run(String scenario, OllamaService service, ChatRequest request) {
+        String digest = service.getModelCatalog().find(request.getModel()).map(ModelInfo::getDigest).orElse("");
+        return check(scenario, request.getModel(), digest, collect(() -> service.chatTyped(request)));
+    }
+
+    // Runs the warm-up calls, then collects one sample per metric from each measured call
+    public Map<String, double[]> collect(Supplier<ChatResponse> call) {
+        for (int i = 0; i < warmup; i++) {
+            call.get();
+        }
+        double[] latency = new double[samples];
+        double[] tokensPerSecond = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            ChatResponse response = call.get();
+            long totalNanos = response.getTotalDuration() != null ? response.getTotalDuration() : System.nanoTime() - start;
+            latency[i] = totalNanos / 1e6;
+            tokensPerSecond[i] = response.getTokensPerSecond();
+        }
+        Map<String, double[]> collected = new LinkedHashMap<>();
+        collected.put(LATENCY_MS, latency);
+        collected.put(TOKENS_PER_SECOND, tokensPerSecond);
+        return collected;
+    }
+
+    /**
+     * Compares the samples with the stored baseline, or records them as the baseline
+     * when there is none for this digest yet or baselines are being updated.
+     */
+    public RegressionReport check(String scenario, String model, String digest, Map<String, double[]> samplesByMetric) {
+        String key = PerfBaselineStore.key(scenario, model, digest);
+        if (updateBaselines || !store.contains(key)) {
+            store.put(key, samplesByMetric);
+            return new RegressionReport(key, true, new ArrayList<>());
+        }
+        List<RegressionReport.Comparison> comparisons = new ArrayList<>();
+        for (Map.Entry<String, double[]> entry : samplesByMetric.entrySet()) {
+            double[] baseline = store.get(key, entry.getKey());
+            if (baseline != null) {
+                comparisons.add(compare(entry.getKey(), baseline, entry.getValue()));
+            }
+        }
+        return new RegressionReport(key, false, comparisons);
+    }
+
+    private RegressionReport.Comparison compare(String metric, double[] baseline, double[] candidate) {
+        MannWhitneyU test = higherIsWorse(metric)
+            ? MannWhitneyU.greater(baseline, candidate)
+            : MannWhitneyU.greater(candidate, baseline);
+        boolean regression = test.getPValue() < alpha && test.getRankBiserial() >= minEffect;
+        return new RegressionReport.Comparison(metric, median(baseline), median(candidate), test.getPValue(),
+            test.getRankBiserial(), regression);
+    }
+
+    private static boolean higherIsWorse(String metric) {
+        return !TOKENS_PER_SECOND.equals(metric);
+    }
+
+    static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
@@ -0,0 +1,91 @@
+package perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link RegressionGate} check: either a freshly recorded baseline, or
+ * one comparison per metric against the stored baseline.
+ */
+public class RegressionReport {
+
+    private final String key;
+    private final boolean baselineRecorded;
+    private final List<Comparison> comparisons;
+
+    RegressionReport(String key, boolean baselineRecorded, List<Comparison> comparisons) {
+        this.key = key;
+        this.baselineRecorded = baselineRecorded;
+        this.comparisons = Collections.unmodifiableList(new ArrayList<>(comparisons));
+    }
+
+    public String getKey() { return key; }
+    public boolean isBaselineRecorded() { return baselineRecorded; }
+    public List<Comparison> getComparisons() { return comparisons; }
+
+    public boolean isRegression() {
+        for (Comparison comparison : comparisons) {
+            if (comparison.isRegression()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(key);
+        if (baselineRecorded) {
+            return report.append(": baseline recorded").toString();
+        }
+        report.append(isRegression() ? ": REGRESSION" : ": no regression");
+        for (Comparison comparison : comparisons) {
+            report.append('\n').append("  ").append(comparison);
+        }
+        return report.toString();
+    }
+
+    /**
+     * One metric, baseline against the new run. A regression needs both a significant
+     * p-value and an effect at least as large as the gate's minimum.
+     */
+    public static class Comparison {
+        private final String metric;
+        private final double baselineMedian;
+        private final double candidateMedian;
+        private final double pValue;
+        private final double effectSize;
+        private final boolean regression;
+
+        Comparison(String metric, double baselineMedian, double candidateMedian, double pValue,
+                   double effectSize, boolean regression) {
+            this.metric = metric;
+            this.baselineMedian = baselineMedian;
+            this.candidateMedian = candidateMedian;
+            this.pValue = pValue;
+            this.effectSize = effectSize;
+            this.regression = regression;
+        }
+
+        public String getMetric() { return metric; }
+        public double getBaselineMedian() { return baselineMedian; }
+        public double getCandidateMedian() { return candidateMedian; }
+        public double getPValue() { return pValue; }
+        // Rank-biserial correlation in the direction of a slowdown: 1 means every new sample is worse
+        public double getEffectSize() { return effectSize; }
+        public boolean isRegression() { return regression; }
+
+        // Relative change of the median, e.g. 0.15 for 15% higher
+        public double getMedianChange() {
+            return baselineMedian != 0 ? candidateMedian / baselineMedian - 1 : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: median %.2f -> %.2f (%+.1f%%), p=%.4f, effect=%.2f%s", metric,
+                baselineMedian, candidateMedian, getMedianChange() * 100, pValue, effectSize,
+                regression ? " REGRESSED" : "");
+        }
+    }
+}
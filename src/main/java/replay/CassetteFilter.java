@@ -0,0 +1,58 @@
+package replay;
+
+import io.restassured.builder.ResponseBuilder;
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RestAssured side of the cassette: records responses of the {@link utils.SpecBuilder}
+ * spec, or in replay mode builds them from the cassette without sending the request.
+ * Shares the cassette with {@link CassetteTransport}.
+ */
+public class CassetteFilter implements Filter {
+
+    private final CassetteStore store;
+
+    public CassetteFilter(CassetteStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Response filter(FilterableRequestSpecification request, FilterableResponseSpecification responseSpec,
+                           FilterContext context) {
+        String method = request.getMethod();
+        String path = URI.create(request.getURI()).getPath();
+        byte[] body = bodyBytes(request.getBody());
+
+        if (store.getMode() == ReplayMode.REPLAY) {
+            Recording recording = store.replay(method, path, body);
+            return new ResponseBuilder()
+                .setStatusCode(recording.getStatusCode())
+                .setStatusLine("HTTP/1.1 " + recording.getStatusCode())
+                .setContentType(recording.getContentType())
+                .setBody(recording.getBody())
+                .build();
+        }
+
+        Response response = context.next(request, responseSpec);
+        store.record(method, path, body, Recording.of(response.getStatusCode(), response.getContentType(),
+            response.asByteArray()));
+        return response;
+    }
+
+    private static byte[] bodyBytes(Object body) {
+        if (body == null) {
+            return null;
+        }
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
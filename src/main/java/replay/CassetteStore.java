@@ -0,0 +1,502 @@
+package replay;
+
+import config.OllamaConfig;
+import models.ChatCodec;
+import models.ChatRequest;
+import models.RequestFingerprint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Cassette of recorded server exchanges for offline suite runs.
+ *
+ * <p>Recordings are appended to numbered segment files ({@code segment-000001.log}, ...)
+ * that roll over at a size limit and are never rewritten. Each record carries its key
+ * and a CRC, so a torn tail from a crash is detected and cut off. Lookups go through
+ * {@code index.bin}, an open-addressing hash table kept in a memory-mapped file, and
+ * replayed bodies are read from memory-mapped segments; a replayed call costs a couple
+ * of page reads and no parsing of the rest of the cassette. The index is derived data:
+ * when it is missing or does not cover the end of the log it is rebuilt from the
+ * segments.
+ *
+ * <p>Keys hash method, path and body; chat bodies are keyed by their
+ * {@link RequestFingerprint} plus the stream flag, so formatting differences between
+ * clients do not matter. Repeating a request within one run replays the recordings in
+ * the order they were made, then starts over.
+ *
+ * <p>Replay lookups are lock-free; recording is serialized.
+ */
+public class CassetteStore implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final int INDEX_MAGIC = 0x4F435831; // "OCX1"
+    private static final int HEADER_BYTES = 32;
+    private static final int KEY_BYTES = 32;
+    // key, segment number, padding, offset
+    private static final int SLOT_BYTES = 48;
+    private static final int INITIAL_SLOTS = 1024;
+    // length, key, status, content type length, chunk count, CRC
+    private static final int MIN_RECORD_BYTES = 4 + KEY_BYTES + 4 + 2 + 4 + 4;
+
+    private final Path directory;
+    private final ReplayMode mode;
+    private final long segmentBytes;
+    private final ConcurrentHashMap<String, AtomicInteger> occurrences = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, MappedByteBuffer> segmentMaps = new ConcurrentHashMap<>();
+
+    private FileChannel indexChannel;
+    // File behind the index map: index.bin, or the table being rebuilt
+    private Path indexFile;
+    private MappedByteBuffer index;
+    private int slots;
+    private int size;
+    private int segment;
+    private long segmentEnd;
+    private FileChannel segmentChannel;
+
+    public CassetteStore(Path directory, ReplayMode mode) throws IOException {
+        this(directory, mode, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public CassetteStore(Path directory, ReplayMode mode, long segmentBytes) throws IOException {
+        if (mode == ReplayMode.OFF) {
+            throw new IllegalArgumentException("A cassette is only opened to record or replay");
+        }
+        if (mode == ReplayMode.REPLAY && !Files.isDirectory(directory)) {
+            throw new IllegalStateException("No cassette at " + directory.toAbsolutePath()
+                + "; run once with replay.mode=record");
+        }
+        if (segmentBytes < 1 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1 byte and 2 GB, got " + segmentBytes);
+        }
+        this.directory = directory;
+        this.mode = mode;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        openIndex();
+    }
+
+    // Process-wide cassette for replay.mode and replay.dir, or null when replay.mode is off
+    public static CassetteStore getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final CassetteStore INSTANCE = open(OllamaConfig.getInstance());
+
+        private static CassetteStore open(OllamaConfig config) {
+            ReplayMode mode = ReplayMode.parse(config.getReplayMode());
+            if (mode == ReplayMode.OFF) {
+                return null;
+            }
+            try {
+                return new CassetteStore(Paths.get(config.getReplayDir()), mode);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open cassette " + config.getReplayDir(), e);
+            }
+        }
+    }
+
+    public ReplayMode getMode() {
+        return mode;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // ==================== RECORD / REPLAY ====================
+
+    public void record(String method, String path, byte[] body, Recording recording) {
+        byte[] requestKey = requestKey(method, path, body);
+        int occurrence = occurrences.computeIfAbsent(hex(requestKey), k -> new AtomicInteger()).getAndIncrement();
+        try {
+            append(occurrenceKey(requestKey, occurrence), recording);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record " + method + " " + path, e);
+        }
+    }
+
+    public Recording replay(String method, String path, byte[] body) {
+        byte[] requestKey = requestKey(method, path, body);
+        AtomicInteger counter = occurrences.computeIfAbsent(hex(requestKey), k -> new AtomicInteger());
+        int occurrence = counter.getAndIncrement();
+        Recording recording = find(occurrenceKey(requestKey, occurrence));
+        if (recording == null && occurrence > 0) {
+            // Asked more often than during recording: cycle through the recordings again
+            counter.set(1);
+            recording = find(occurrenceKey(requestKey, 0));
+        }
+        if (recording == null) {
+            throw new IllegalStateException("No recording of " + method + " " + path + " in "
+                + directory.toAbsolutePath() + "; re-record with replay.mode=record");
+        }
+        return recording;
+    }
+
+    // ==================== KEYS ====================
+
+    static byte[] requestKey(String method, String path, byte[] body) {
+        MessageDigest sha = sha256();
+        putBytes(sha, method.getBytes(StandardCharsets.UTF_8));
+        putBytes(sha, path.getBytes(StandardCharsets.UTF_8));
+        ChatRequest chat = "/api/chat".equals(path) ? parseChatRequest(body) : null;
+        if (chat != null) {
+            // Ollama streams unless told otherwise
+            sha.update((byte) (Boolean.FALSE.equals(chat.getStream()) ? 0 : 1));
+            putBytes(sha, RequestFingerprint.of(chat, null).getBytes(StandardCharsets.US_ASCII));
+        } else {
+            putBytes(sha, body);
+        }
+        return sha.digest();
+    }
+
+    private static ChatRequest parseChatRequest(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return ChatCodec.mapper().readValue(body, ChatRequest.class);
+        } catch (IOException | RuntimeException e) {
+            // Deliberately malformed bodies are keyed by their raw bytes
+            return null;
+        }
+    }
+
+    private static byte[] occurrenceKey(byte[] requestKey, int occurrence) {
+        MessageDigest sha = sha256();
+        sha.update(requestKey);
+        sha.update(ByteBuffer.allocate(4).putInt(occurrence).array());
+        return sha.digest();
+    }
+
+    private static void putBytes(MessageDigest sha, byte[] bytes) {
+        int length = bytes != null ? bytes.length : -1;
+        sha.update(ByteBuffer.allocate(4).putInt(length).array());
+        if (bytes != null) {
+            sha.update(bytes);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] key) {
+        StringBuilder builder = new StringBuilder(key.length * 2);
+        for (byte b : key) {
+            builder.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    // ==================== SEGMENTS ====================
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("segment-%06d.log", number));
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.matches("segment-\\d{6}\\.log"))
+                .forEach(name -> numbers.add(Integer.parseInt(name.substring(8, 14))));
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private synchronized void append(byte[] key, Recording recording) throws IOException {
+        ByteBuffer record = encode(key, recording);
+        openSegmentFor(record.remaining());
+        long offset = segmentEnd;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += segmentChannel.write(record, position);
+        }
+        segmentEnd = position;
+        insert(key, segment, offset);
+        writeHeader();
+    }
+
+    // Keeps appending to the last segment until the next record would overflow it
+    private void openSegmentFor(int recordBytes) throws IOException {
+        boolean full = segmentEnd > 0 && segmentEnd + recordBytes > segmentBytes;
+        if (segmentChannel != null && !full) {
+            return;
+        }
+        if (segmentChannel != null) {
+            segmentChannel.force(false);
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+        if (segment == 0 || full) {
+            segment++;
+            segmentEnd = 0;
+        }
+        segmentChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer encode(byte[] key, Recording recording) {
+        byte[] contentType = recording.getContentType() != null
+            ? recording.getContentType().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = KEY_BYTES + 4 + 2 + contentType.length + 4;
+        for (byte[] chunk : recording.getChunks()) {
+            length += 8 + 4 + chunk.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+        buffer.putInt(length);
+        buffer.put(key);
+        buffer.putInt(recording.getStatusCode());
+        buffer.putShort((short) contentType.length);
+        buffer.put(contentType);
+        buffer.putInt(recording.getChunkCount());
+        for (int i = 0; i < recording.getChunkCount(); i++) {
+            byte[] chunk = recording.getChunks().get(i);
+            buffer.putLong(recording.getDelayNanos(i));
+            buffer.putInt(chunk.length);
+            buffer.put(chunk);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, length);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private Recording decode(ByteBuffer buffer, int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 4 + KEY_BYTES);
+        int status = record.getInt();
+        byte[] contentType = new byte[record.getShort()];
+        record.get(contentType);
+        int count = record.getInt();
+        List<byte[]> chunks = new ArrayList<>(count);
+        long[] delays = new long[count];
+        for (int i = 0; i < count; i++) {
+            delays[i] = record.getLong();
+            byte[] chunk = new byte[record.getInt()];
+            record.get(chunk);
+            chunks.add(chunk);
+        }
+        return new Recording(status, new String(contentType, StandardCharsets.UTF_8), chunks, delays);
+    }
+
+    // Length of the intact record at offset, or -1 if it is torn or corrupt
+    private static int validRecordLength(ByteBuffer buffer, int offset) {
+        if (offset + MIN_RECORD_BYTES > buffer.limit()) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length < MIN_RECORD_BYTES - 8 || (long) offset + 4 + length + 4 > buffer.limit()) {
+            return -1;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset + 4).limit(offset + 4 + length);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(offset + 4 + length) ? 4 + length + 4 : -1;
+    }
+
+    private MappedByteBuffer segmentMap(int number) {
+        return segmentMaps.computeIfAbsent(number, n -> {
+            try (FileChannel channel = FileChannel.open(segmentPath(n), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map " + segmentPath(n), e);
+            }
+        });
+    }
+
+    // ==================== INDEX ====================
+
+    private Path indexPath() {
+        return directory.resolve("index.bin");
+    }
+
+    private void openIndex() throws IOException {
+        List<Integer> segments = listSegments();
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        segmentEnd = segment == 0 ? 0 : Files.size(segmentPath(segment));
+
+        if (Files.exists(indexPath())) {
+            indexChannel = FileChannel.open(indexPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexFile = indexPath();
+            if (indexChannel.size() >= HEADER_BYTES) {
+                index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+                slots = index.getInt(4);
+                size = index.getInt(8);
+                boolean current = index.getInt(0) == INDEX_MAGIC
+                    && indexChannel.size() == HEADER_BYTES + (long) slots * SLOT_BYTES
+                    && index.getInt(12) == segment
+                    && index.getLong(16) == segmentEnd;
+                if (current) {
+                    return;
+                }
+            }
+            indexChannel.close();
+        }
+        rebuildIndex(segments);
+    }
+
+    private void rebuildIndex(List<Integer> segments) throws IOException {
+        Path temp = directory.resolve("index.bin.tmp");
+        mapNewIndex(temp, INITIAL_SLOTS);
+        for (int number : segments) {
+            MappedByteBuffer map = segmentMap(number);
+            int offset = 0;
+            int length;
+            while ((length = validRecordLength(map, offset)) > 0) {
+                byte[] key = new byte[KEY_BYTES];
+                ByteBuffer keyBytes = map.duplicate();
+                keyBytes.position(offset + 4);
+                keyBytes.get(key);
+                insert(key, number, offset);
+                offset += length;
+            }
+            if (number == segment && offset < segmentEnd) {
+                // Torn tail from a crash mid-append
+                try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.WRITE)) {
+                    channel.truncate(offset);
+                }
+                segmentMaps.remove(number);
+                segmentEnd = offset;
+            }
+        }
+        writeHeader();
+        // Growing mid-rebuild swaps the mapped file, so move whichever one is mapped now
+        Files.move(indexFile, indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexFile = indexPath();
+    }
+
+    private void mapNewIndex(Path file, int slotCount) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        indexChannel = channel;
+        indexFile = file;
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+        slots = slotCount;
+        size = 0;
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, slots);
+    }
+
+    private void writeHeader() {
+        index.putInt(8, size);
+        index.putInt(12, segment);
+        index.putLong(16, segmentEnd);
+    }
+
+    private void insert(byte[] key, int segmentNumber, long offset) throws IOException {
+        if ((size + 1) * 2 > slots) {
+            grow();
+        }
+        int mask = slots - 1;
+        for (int slot = ByteBuffer.wrap(key).getInt() & mask; ; slot = (slot + 1) & mask) {
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            boolean empty = index.getInt(base + KEY_BYTES) == 0;
+            if (empty || keyMatches(base, key)) {
+                for (int i = 0; i < KEY_BYTES; i++) {
+                    index.put(base + i, key[i]);
+                }
+                index.putLong(base + KEY_BYTES + 8, offset);
+                index.putInt(base + KEY_BYTES, segmentNumber);
+                if (empty) {
+                    size++;
+                }
+                return;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        MappedByteBuffer old = index;
+        int oldSlots = slots;
+        FileChannel oldChannel = indexChannel;
+        Path live = indexFile;
+        Path temp = directory.resolve("index.bin.grow");
+        mapNewIndex(temp, oldSlots * 2);
+        for (int slot = 0; slot < oldSlots; slot++) {
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            int segmentNumber = old.getInt(base + KEY_BYTES);
+            if (segmentNumber != 0) {
+                byte[] key = new byte[KEY_BYTES];
+                for (int i = 0; i < KEY_BYTES; i++) {
+                    key[i] = old.get(base + i);
+                }
+                insert(key, segmentNumber, old.getLong(base + KEY_BYTES + 8));
+            }
+        }
+        writeHeader();
+        oldChannel.close();
+        // Takes the place of the table it replaces, which is not index.bin during a rebuild
+        Files.move(temp, live, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexFile = live;
+    }
+
+    private Recording find(byte[] key) {
+        MappedByteBuffer table = index;
+        int mask = slots - 1;
+        for (int slot = ByteBuffer.wrap(key).getInt() & mask; ; slot = (slot + 1) & mask) {
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            int segmentNumber = table.getInt(base + KEY_BYTES);
+            if (segmentNumber == 0) {
+                return null;
+            }
+            if (keyMatches(base, key)) {
+                return decode(segmentMap(segmentNumber), (int) table.getLong(base + KEY_BYTES + 8));
+            }
+        }
+    }
+
+    private boolean keyMatches(int base, byte[] key) {
+        for (int i = 0; i < KEY_BYTES; i++) {
+            if (index.get(base + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.force(false);
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+        index.force();
+        indexChannel.close();
+    }
+}
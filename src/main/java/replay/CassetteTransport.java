@@ -0,0 +1,302 @@
+package replay;
+
+import config.OllamaConfig;
+import transport.OllamaTransport;
+import transport.StreamingResponse;
+import transport.TransportResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport decorator that records every exchange of the wrapped transport into a
+ * {@link CassetteStore}, or in replay mode answers from the cassette without touching
+ * the network. Streamed bodies are recorded line by line with their arrival gaps, and
+ * can be replayed with the same pacing.
+ */
+public class CassetteTransport implements OllamaTransport {
+
+    private static final String JSON = "application/json";
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final OllamaTransport delegate;
+    private final CassetteStore store;
+    private final boolean reproduceTiming;
+
+    /**
+     * @param delegate        live transport; only used when recording
+     * @param reproduceTiming replay streamed chunks with their recorded gaps
+     */
+    public CassetteTransport(OllamaTransport delegate, CassetteStore store, boolean reproduceTiming) {
+        this.delegate = delegate;
+        this.store = store;
+        this.reproduceTiming = reproduceTiming;
+    }
+
+    // The transport itself when replay.mode is off, otherwise wrapped in the default cassette
+    public static OllamaTransport wrapDefault(OllamaTransport transport) {
+        CassetteStore store = CassetteStore.getDefault();
+        return store == null ? transport
+            : new CassetteTransport(transport, store, OllamaConfig.getInstance().isReplayTiming());
+    }
+
+    private boolean replaying() {
+        return store.getMode() == ReplayMode.REPLAY;
+    }
+
+    @Override
+    public TransportResponse get(String path) {
+        if (replaying()) {
+            return toResponse(store.replay("GET", path, null));
+        }
+        return record("GET", path, null, delegate.get(path));
+    }
+
+    @Override
+    public TransportResponse post(String path, byte[] jsonBody) {
+        if (replaying()) {
+            return toResponse(store.replay("POST", path, jsonBody));
+        }
+        return record("POST", path, jsonBody, delegate.post(path, jsonBody));
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postAsync(String path, byte[] jsonBody) {
+        if (replaying()) {
+            try {
+                return CompletableFuture.completedFuture(toResponse(store.replay("POST", path, jsonBody)));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return delegate.postAsync(path, jsonBody).thenApply(response -> record("POST", path, jsonBody, response));
+    }
+
+    @Override
+    public StreamingResponse postStream(String path, byte[] jsonBody) {
+        if (replaying()) {
+            Recording recording = store.replay("POST", path, jsonBody);
+            return new ReplayedStream(recording, new ChunkInputStream(recording, reproduceTiming));
+        }
+        long start = System.nanoTime();
+        StreamingResponse live = delegate.postStream(path, jsonBody);
+        return new RecordingStream(path, jsonBody, live, new LineRecorder(live.getBody(), start));
+    }
+
+    @Override
+    public void close() {
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    private TransportResponse record(String method, String path, byte[] body, TransportResponse response) {
+        store.record(method, path, body, Recording.of(response.getStatusCode(), JSON, response.getBody()));
+        return response;
+    }
+
+    private static TransportResponse toResponse(Recording recording) {
+        return new TransportResponse(recording.getStatusCode(), recording.getBody());
+    }
+
+    // ==================== STREAMING ====================
+
+    private class RecordingStream extends StreamingResponse {
+
+        private final String path;
+        private final byte[] requestBody;
+        private final StreamingResponse live;
+        private final LineRecorder recorder;
+
+        RecordingStream(String path, byte[] requestBody, StreamingResponse live, LineRecorder recorder) {
+            super(live.getStatusCode(), recorder);
+            this.path = path;
+            this.requestBody = requestBody;
+            this.live = live;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void abort() {
+            recorder.aborted = true;
+            live.abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                recorder.close();
+                // A cut-short stream is not a faithful recording, so only full bodies are kept
+                if (recorder.complete) {
+                    store.record("POST", path, requestBody, recorder.toRecording(getStatusCode()));
+                }
+            } finally {
+                live.close();
+            }
+        }
+    }
+
+    // Tees the live body and splits it into NDJSON lines stamped with their arrival gaps
+    private static class LineRecorder extends InputStream {
+
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final List<byte[]> chunks = new ArrayList<>();
+        private final List<Long> delays = new ArrayList<>();
+        private long last;
+        private boolean closed;
+        boolean complete;
+        volatile boolean aborted;
+
+        LineRecorder(InputStream in, long startNanos) {
+            this.in = in;
+            this.last = startNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                endLine();
+                complete = true;
+            } else {
+                line.write(b);
+                if (b == '\n') {
+                    endLine();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = in.read(buffer, offset, length);
+            if (n == -1) {
+                endLine();
+                complete = true;
+                return n;
+            }
+            int from = offset;
+            for (int i = offset; i < offset + n; i++) {
+                if (buffer[i] == '\n') {
+                    line.write(buffer, from, i + 1 - from);
+                    endLine();
+                    from = i + 1;
+                }
+            }
+            line.write(buffer, from, offset + n - from);
+            return n;
+        }
+
+        private void endLine() {
+            if (line.size() == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            chunks.add(line.toByteArray());
+            delays.add(now - last);
+            last = now;
+            line.reset();
+        }
+
+        Recording toRecording(int statusCode) {
+            long[] gaps = new long[delays.size()];
+            for (int i = 0; i < gaps.length; i++) {
+                gaps[i] = delays.get(i);
+            }
+            return new Recording(statusCode, NDJSON, chunks, gaps);
+        }
+
+        // Readers may stop at the done chunk or close early; the rest is still recorded
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] buffer = new byte[8192];
+                while (!aborted && read(buffer, 0, buffer.length) != -1) {
+                    // recorded as a side effect
+                }
+            } catch (IOException e) {
+                complete = false;
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static class ReplayedStream extends StreamingResponse {
+
+        private final ChunkInputStream body;
+
+        ReplayedStream(Recording recording, ChunkInputStream body) {
+            super(recording.getStatusCode(), body);
+            this.body = body;
+        }
+
+        @Override
+        public void abort() {
+            body.aborted = true;
+        }
+    }
+
+    // Hands out one recorded chunk per read, optionally waiting out the recorded gap first
+    private static class ChunkInputStream extends InputStream {
+
+        private final Recording recording;
+        private final boolean paced;
+        private int chunk = -1;
+        private int position;
+        volatile boolean aborted;
+
+        ChunkInputStream(Recording recording, boolean paced) {
+            this.recording = recording;
+            this.paced = paced;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (chunk < 0 || position == recording.getChunks().get(chunk).length) {
+                if (aborted || chunk + 1 >= recording.getChunkCount()) {
+                    return -1;
+                }
+                chunk++;
+                position = 0;
+                if (paced) {
+                    pause(recording.getDelayNanos(chunk));
+                }
+            }
+            byte[] current = recording.getChunks().get(chunk);
+            int n = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        private static void pause(long nanos) throws InterruptedIOException {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying a stream");
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package replay;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One recorded HTTP exchange: status, content type and the body as the chunks it
+ * arrived in, each with the delay since the previous chunk (the first is measured
+ * from sending the request). A plain response is a single chunk.
+ */
+public class Recording {
+
+    private final int statusCode;
+    private final String contentType;
+    private final List<byte[]> chunks;
+    private final long[] delaysNanos;
+
+    public Recording(int statusCode, String contentType, List<byte[]> chunks, long[] delaysNanos) {
+        if (chunks.size() != delaysNanos.length) {
+            throw new IllegalArgumentException("Every chunk needs a delay");
+        }
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+        this.delaysNanos = delaysNanos.clone();
+    }
+
+    public static Recording of(int statusCode, String contentType, byte[] body) {
+        return new Recording(statusCode, contentType, Collections.singletonList(body), new long[] {0});
+    }
+
+    public int getStatusCode() { return statusCode; }
+    public String getContentType() { return contentType; }
+    public List<byte[]> getChunks() { return chunks; }
+    public int getChunkCount() { return chunks.size(); }
+
+    public long getDelayNanos(int chunk) {
+        return delaysNanos[chunk];
+    }
+
+    public byte[] getBody() {
+        if (chunks.size() == 1) {
+            return chunks.get(0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, chunk.length);
+        }
+        return out.toByteArray();
+    }
+}
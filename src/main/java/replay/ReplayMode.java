@@ -0,0 +1,21 @@
+package replay;
+
+import java.util.Locale;
+
+/**
+ * How {@link services.OllamaService} treats the server: talk to it directly, talk to it
+ * and record every exchange, or never talk to it and serve recordings instead.
+ */
+public enum ReplayMode {
+    OFF,
+    RECORD,
+    REPLAY;
+
+    public static ReplayMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("replay.mode must be off, record or replay, got '" + value + "'");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package services;
+
+import models.ChatResponse;
+import transport.HttpStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * An {@link InFlightLimiter} whose limit follows the server. Ollama reports how long a
+ * chat spent loading, reading the prompt and generating; whatever else the round trip
+ * took was spent waiting for a free slot or on the wire. Ollama's own
+ * {@code total_duration} includes the slot wait, so it is not used. While the waiting
+ * stays under the threshold and the limit is actually in use, the limit grows by one
+ * per limit's worth of calls. Once requests start queueing it is cut in proportion to
+ * the share of the round trip the server actually worked (between {@link #MIN_BACKOFF}
+ * and {@link #MAX_BACKOFF}), and halved on 429/503, at most once per round trip. The
+ * limit settles at the number of parallel slots the server really has, which is where
+ * tokens/sec peaks without latency growing.
+ */
+public class AdaptiveLimiter {
+
+    public static final double MIN_BACKOFF = 0.5;
+    public static final double MAX_BACKOFF = 0.9;
+
+    private final InFlightLimiter limiter;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long queueThresholdNanos;
+
+    private double estimate;
+    private long lastDecreaseNanos;
+    private long decreases;
+
+    /**
+     * @param queueThresholdMillis time a call may spend outside the server's own
+     *                             processing before it counts as queueing
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long queueThresholdMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= min <= max, got " + minLimit + " and " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueThresholdNanos = queueThresholdMillis * 1_000_000;
+        this.estimate = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limiter = new InFlightLimiter((int) estimate);
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    // ==================== CALLS ====================
+
+    public CompletableFuture<ChatResponse> submit(Supplier<CompletableFuture<ChatResponse>> call) {
+        return limiter.submit(() -> {
+            long start = System.nanoTime();
+            boolean saturated = limiter.getInFlight() >= limiter.getLimit();
+            CompletableFuture<ChatResponse> future;
+            try {
+                future = call.get();
+            } catch (Throwable e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            return future.whenComplete((response, error) -> onSample(start, saturated, response, error));
+        });
+    }
+
+    // Blocking form: waits for a permit on the calling thread, then runs the call on it
+    public ChatResponse call(Supplier<ChatResponse> call) {
+        CompletableFuture<Boolean> granted = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+        limiter.submit(() -> {
+            granted.complete(limiter.getInFlight() >= limiter.getLimit());
+            return done;
+        });
+        boolean saturated = granted.join();
+        long start = System.nanoTime();
+        try {
+            ChatResponse response = call.get();
+            onSample(start, saturated, response, null);
+            done.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Any failure, Errors included, must hand the permit back
+            onSample(start, saturated, null, e);
+            done.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // ==================== ADJUSTMENT ====================
+
+    private synchronized void onSample(long startNanos, boolean saturated, ChatResponse response, Throwable error) {
+        long now = System.nanoTime();
+        double backoff = backoff(now - startNanos, response, error);
+        if (backoff < 1.0) {
+            // Calls sent before the last cut still carry the old queue; one cut per round trip
+            if (startNanos - lastDecreaseNanos > 0) {
+                estimate = Math.max(minLimit, estimate * backoff);
+                lastDecreaseNanos = now;
+                decreases++;
+            }
+        } else if (error == null && saturated) {
+            estimate = Math.min(maxLimit, estimate + 1.0 / estimate);
+        }
+        int limit = (int) estimate;
+        if (limit != limiter.getLimit()) {
+            limiter.setLimit(limit);
+        }
+    }
+
+    // Factor to cut the limit by, or 1 when the call shows no overload
+    private double backoff(long roundTripNanos, ChatResponse response, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof HttpStatusException) {
+            int status = ((HttpStatusException) cause).getStatusCode();
+            return status == 429 || status == 503 ? MIN_BACKOFF : 1.0;
+        }
+        if (response == null || response.getEvalDuration() == null) {
+            return 1.0;
+        }
+        long working = response.getEvalDuration() + orZero(response.getPromptEvalDuration())
+            + orZero(response.getLoadDuration());
+        if (roundTripNanos - working <= queueThresholdNanos) {
+            return 1.0;
+        }
+        return Math.max(MIN_BACKOFF, Math.min(MAX_BACKOFF, (double) working / roundTripNanos));
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+
+    // ==================== STATE ====================
+
+    public int getLimit() { return limiter.getLimit(); }
+    public int getInFlight() { return limiter.getInFlight(); }
+    public int getQueued() { return limiter.getQueued(); }
+    public synchronized long getDecreaseCount() { return decreases; }
+}
@@ -0,0 +1,251 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import metrics.MetricsRegistry;
+import models.ChatCodec;
+import models.ChatRequest;
+import models.ChatResponse;
+import models.ChatStreamAccumulator;
+import transport.HttpStatusException;
+import transport.OllamaTransport;
+import transport.StreamingResponse;
+import transport.TransportExecutors;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hedged chats: the request is streamed, and if no token has arrived by the deadline a
+ * duplicate is sent. Whichever produces a token first is kept and the other is dropped,
+ * which stops its generation. The deadline is a percentile of recent time-to-first-token
+ * for the model, never below a floor. Each hedge is paid for from the
+ * {@link RetryPolicy} budget; with none left the request just waits.
+ *
+ * <p>Behind a {@link transport.NodePoolTransport} the duplicate lands on another node,
+ * since the node serving the original has one more request outstanding.
+ */
+class ChatHedger {
+
+    private static final int WINDOW = 256;
+    // Below this many samples the floor is the deadline
+    private static final int MIN_SAMPLES = 20;
+
+    private final OllamaTransport transport;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final ConcurrentHashMap<String, TtftWindow> windows = new ConcurrentHashMap<>();
+
+    ChatHedger(OllamaTransport transport, double percentile, long minDelayMillis) {
+        this.transport = transport;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelayMillis * 1_000_000;
+    }
+
+    ChatResponse chat(ChatRequest request, RetryPolicy budget, MetricsRegistry metrics) {
+        byte[] body = ChatCodec.writeRequest(request.toBuilder().stream(true).build());
+        TtftWindow window = windows.computeIfAbsent(request.getModel(), model -> new TtftWindow());
+        Race race = new Race(body);
+        race.start(false);
+        Attempt winner;
+        try {
+            winner = race.firstToken.get(Math.max(minDelayNanos, window.percentile(percentile)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (budget.tryWithdraw()) {
+                metrics.increment("hedge.sent");
+                race.start(true);
+            }
+            winner = await(race);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.abortAll();
+            throw new IllegalStateException("Interrupted while waiting for the first token", e);
+        }
+        if (winner.hedge) {
+            metrics.increment("hedge.won");
+        }
+        window.record(winner.ttftNanos);
+        try {
+            return winner.result.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static Attempt await(Race race) {
+        try {
+            return race.firstToken.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof IOException) {
+            return new UncheckedIOException("Chat stream failed", (IOException) cause);
+        }
+        return new IllegalStateException(cause);
+    }
+
+    // ==================== RACE ====================
+
+    private final class Race {
+        private final byte[] body;
+        private final List<Attempt> attempts = new ArrayList<>();
+        private final AtomicReference<Attempt> winner = new AtomicReference<>();
+        private final CompletableFuture<Attempt> firstToken = new CompletableFuture<>();
+        private int failed;
+
+        private Race(byte[] body) {
+            this.body = body;
+        }
+
+        private void start(boolean hedge) {
+            Attempt attempt = new Attempt(this, hedge);
+            synchronized (this) {
+                if (firstToken.isDone()) {
+                    return;
+                }
+                attempts.add(attempt);
+            }
+            CompletableFuture.runAsync(attempt::run, TransportExecutors.sharedIoExecutor());
+        }
+
+        private boolean claim(Attempt attempt) {
+            if (!winner.compareAndSet(null, attempt)) {
+                return false;
+            }
+            firstToken.complete(attempt);
+            synchronized (this) {
+                for (Attempt other : attempts) {
+                    if (other != attempt) {
+                        other.abort();
+                    }
+                }
+            }
+            return true;
+        }
+
+        // The race fails only when every attempt sent has failed before any token
+        private synchronized void failed(Throwable error) {
+            failed++;
+            if (winner.get() == null && failed == attempts.size()) {
+                firstToken.completeExceptionally(error);
+            }
+        }
+
+        private synchronized void abortAll() {
+            for (Attempt attempt : attempts) {
+                attempt.abort();
+            }
+        }
+    }
+
+    private final class Attempt {
+        private final Race race;
+        private final boolean hedge;
+        private final CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        private volatile StreamingResponse response;
+        private volatile boolean aborted;
+        private volatile long ttftNanos;
+
+        private Attempt(Race race, boolean hedge) {
+            this.race = race;
+            this.hedge = hedge;
+        }
+
+        private void run() {
+            long start = System.nanoTime();
+            boolean claimed = false;
+            try (StreamingResponse stream = transport.postStream("/api/chat", race.body)) {
+                response = stream;
+                if (aborted) {
+                    stream.abort();
+                    throw new IOException("Hedged attempt dropped before it started");
+                }
+                if (stream.getStatusCode() != 200) {
+                    String error = new String(stream.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                    throw new HttpStatusException(
+                        "Chat failed with status " + stream.getStatusCode() + ": " + error, stream.getStatusCode());
+                }
+                ChatStreamAccumulator accumulator = new ChatStreamAccumulator(start);
+                try (JsonParser parser = ChatCodec.createStreamParser(stream.getBody())) {
+                    ChatResponse chunk;
+                    while (!accumulator.isDone() && (chunk = ChatCodec.readResponse(parser)) != null) {
+                        String delta = accumulator.accept(chunk, System.nanoTime());
+                        if (!claimed && (!delta.isEmpty() || accumulator.isDone())) {
+                            ttftNanos = System.nanoTime() - start;
+                            if (!race.claim(this)) {
+                                stream.abort();
+                                return;
+                            }
+                            claimed = true;
+                        }
+                    }
+                    // Read past the done chunk so closing hands the connection back instead of aborting
+                    if (accumulator.isDone()) {
+                        ChatCodec.readResponse(parser);
+                    }
+                }
+                if (!accumulator.isDone()) {
+                    throw new IOException("Chat stream ended before the done chunk");
+                }
+                result.complete(accumulator.toResponse());
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                if (!claimed) {
+                    race.failed(e);
+                }
+            }
+        }
+
+        private void abort() {
+            aborted = true;
+            StreamingResponse current = response;
+            if (current != null) {
+                current.abort();
+            }
+        }
+    }
+
+    // ==================== DEADLINE ====================
+
+    // Recent time-to-first-token samples for one model
+    private static final class TtftWindow {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        // 0 until there are enough samples to trust
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package services;
+
+import models.ChatResponse;
+
+/**
+ * Receives the token deltas of a streamed chat as they arrive.
+ * Callbacks run on the thread that reads the stream, so keep them cheap.
+ */
+@FunctionalInterface
+public interface ChatStreamListener {
+
+    void onToken(String delta);
+
+    default void onComplete(ChatResponse response) {
+    }
+
+    default void onError(Throwable error) {
+    }
+
+    // Checked after every delta; once true the stream is aborted so the server stops generating
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,333 @@
+package services;
+
+import config.OllamaConfig;
+import models.ChatRequest;
+import models.ChatResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A multi-turn chat that keeps its history between turns and holds the prompt under a
+ * token budget, so long conversations neither overflow {@code num_ctx} nor get slower
+ * every turn. What happens to old turns is up to the {@link HistoryPolicy}; the system
+ * message is always kept.
+ *
+ * <p>Assistant turns are counted with the {@code eval_count} Ollama reports for them.
+ * Other messages are estimated from their length, using a chars-per-token ratio learned
+ * from those replies. {@code prompt_eval_count} is recorded but not used for this,
+ * because Ollama leaves prompt prefixes it had cached out of it.
+ *
+ * <p>Once over budget, history is trimmed down to a low-water mark rather than just
+ * under the limit. The prompt prefix then stays the same for several turns, so
+ * Ollama's prompt cache keeps hitting between trims.
+ *
+ * <p>Not thread-safe: a session is one conversation.
+ */
+public class ConversationSession {
+
+    // Role markers and separators the chat template adds around every message
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final double PRIOR_CHARS_PER_TOKEN = 4.0;
+    private static final int PRIOR_WEIGHT_TOKENS = 64;
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation: ";
+    private static final String SUMMARY_INSTRUCTION = "Summarize the conversation below in a few sentences. "
+        + "Keep names, numbers, facts and decisions the user may refer back to.";
+
+    private final OllamaService service;
+    private final String model;
+    private final String summaryModel;
+    private final Turn systemMessage;
+    private final HistoryPolicy policy;
+    private final int maxPromptTokens;
+    private final int lowWaterTokens;
+    private final ChatRequest.Options options;
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private Turn summary;
+
+    private long replyChars;
+    private long replyTokens;
+    private int lastPromptEvalCount = -1;
+    private int droppedTurns;
+    private int summaryCount;
+
+    private ConversationSession(Builder builder) {
+        this.service = builder.service;
+        this.model = builder.model;
+        this.summaryModel = builder.summaryModel != null ? builder.summaryModel : builder.model;
+        this.systemMessage = builder.systemMessage != null ? new Turn("system", builder.systemMessage, -1) : null;
+        this.policy = builder.policy;
+        this.maxPromptTokens = builder.maxPromptTokens;
+        this.lowWaterTokens = (int) (builder.maxPromptTokens * builder.lowWaterRatio);
+        this.options = builder.options;
+    }
+
+    // ==================== TURNS ====================
+
+    public ChatResponse send(String userMessage) {
+        return exchange(userMessage, service::chatTyped);
+    }
+
+    public ChatResponse sendStream(String userMessage, ChatStreamListener listener) {
+        return exchange(userMessage, request -> service.chatStream(request, listener));
+    }
+
+    // Seeds earlier history, e.g. a transcript to continue; the budget applies on the next send
+    public ConversationSession addHistory(String role, String content) {
+        turns.addLast(new Turn(role, content, -1));
+        return this;
+    }
+
+    private ChatResponse exchange(String userMessage, Function<ChatRequest, ChatResponse> call) {
+        // Trimming is only kept once the turn succeeds: a failed turn leaves no trace, so a
+        // retry sends the same history
+        List<Turn> committedTurns = new ArrayList<>(turns);
+        Turn committedSummary = summary;
+        int committedDropped = droppedTurns;
+        int committedSummaries = summaryCount;
+        turns.addLast(new Turn("user", userMessage, -1));
+        ChatResponse response;
+        try {
+            fitBudget();
+            response = call.apply(buildRequest());
+        } catch (RuntimeException | Error e) {
+            turns.clear();
+            turns.addAll(committedTurns);
+            summary = committedSummary;
+            droppedTurns = committedDropped;
+            summaryCount = committedSummaries;
+            throw e;
+        }
+        Integer evalCount = response.getEvalCount();
+        String content = response.getContent() != null ? response.getContent() : "";
+        if (evalCount != null && evalCount > 0) {
+            replyChars += content.length();
+            replyTokens += evalCount;
+        }
+        turns.addLast(new Turn("assistant", content, evalCount != null ? evalCount : -1));
+        lastPromptEvalCount = response.getPromptEvalCount() != null ? response.getPromptEvalCount() : -1;
+        return response;
+    }
+
+    private ChatRequest buildRequest() {
+        ChatRequest.Builder builder = new ChatRequest.Builder().model(model);
+        if (systemMessage != null) {
+            builder.addSystemMessage(systemMessage.content);
+        }
+        if (summary != null) {
+            builder.addSystemMessage(summary.content);
+        }
+        for (Turn turn : turns) {
+            builder.addMessage(turn.role, turn.content);
+        }
+        return builder.options(options != null ? options.copy() : null).build();
+    }
+
+    // ==================== BUDGET ====================
+
+    private void fitBudget() {
+        if (policy == HistoryPolicy.UNBOUNDED || getEstimatedPromptTokens() <= maxPromptTokens) {
+            return;
+        }
+        List<Turn> dropped = dropOldest(lowWaterTokens);
+        if (policy == HistoryPolicy.SUMMARIZE && !dropped.isEmpty()) {
+            summarize(dropped);
+            // The new summary may itself push the prompt back over
+            dropOldest(maxPromptTokens);
+        }
+    }
+
+    // Oldest turns first, never the newest message, and never leaving an assistant turn first
+    private List<Turn> dropOldest(int targetTokens) {
+        List<Turn> dropped = new ArrayList<>();
+        int estimate = getEstimatedPromptTokens();
+        while (turns.size() > 1 && (estimate > targetTokens || "assistant".equals(turns.peekFirst().role))) {
+            Turn turn = turns.removeFirst();
+            estimate -= tokensOf(turn);
+            dropped.add(turn);
+        }
+        droppedTurns += dropped.size();
+        return dropped;
+    }
+
+    private void summarize(List<Turn> dropped) {
+        StringBuilder transcript = new StringBuilder();
+        if (summary != null) {
+            transcript.append(summary.content).append("\n\n");
+        }
+        for (Turn turn : dropped) {
+            transcript.append("assistant".equals(turn.role) ? "Assistant: " : "User: ")
+                .append(turn.content).append('\n');
+        }
+        ChatRequest request = new ChatRequest.Builder()
+            .model(summaryModel)
+            .addSystemMessage(SUMMARY_INSTRUCTION)
+            .addUserMessage(transcript.toString())
+            .temperature(0.0)
+            .maxTokens(Math.max(32, maxPromptTokens / 8))
+            .build();
+        try {
+            ChatResponse response = service.chatTyped(request);
+            summary = new Turn("system", SUMMARY_PREFIX + response.getContent().trim(), -1);
+            summaryCount++;
+        } catch (RuntimeException e) {
+            // Losing the old turns outright is the sliding-window outcome, and better than failing the turn
+            summary = null;
+        }
+    }
+
+    private int tokensOf(Turn turn) {
+        if (turn.tokens >= 0) {
+            return turn.tokens + MESSAGE_OVERHEAD_TOKENS;
+        }
+        return (int) Math.ceil(turn.content.length() / getCharsPerToken()) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    // ==================== STATE ====================
+
+    public int getEstimatedPromptTokens() {
+        int total = 0;
+        if (systemMessage != null) {
+            total += tokensOf(systemMessage);
+        }
+        if (summary != null) {
+            total += tokensOf(summary);
+        }
+        for (Turn turn : turns) {
+            total += tokensOf(turn);
+        }
+        return total;
+    }
+
+    // Learned from replies, starting from a typical 4 chars per token
+    public double getCharsPerToken() {
+        return (replyChars + PRIOR_CHARS_PER_TOKEN * PRIOR_WEIGHT_TOKENS) / (replyTokens + PRIOR_WEIGHT_TOKENS);
+    }
+
+    public List<Turn> getTurns() {
+        return Collections.unmodifiableList(new ArrayList<>(turns));
+    }
+
+    // Current summary of dropped turns, or null
+    public String getSummary() {
+        return summary != null ? summary.content : null;
+    }
+
+    // prompt_eval_count of the last reply, or -1
+    public int getLastPromptEvalCount() { return lastPromptEvalCount; }
+    public int getDroppedTurnCount() { return droppedTurns; }
+    public int getSummaryCount() { return summaryCount; }
+    public int getMaxPromptTokens() { return maxPromptTokens; }
+
+    public static final class Turn {
+        private final String role;
+        private final String content;
+        // Exact count from eval_count, or -1 when estimated
+        private final int tokens;
+
+        Turn(String role, String content, int tokens) {
+            this.role = role;
+            this.content = content;
+            this.tokens = tokens;
+        }
+
+        public String getRole() { return role; }
+        public String getContent() { return content; }
+    }
+
+    // ==================== BUILDER ====================
+
+    public static class Builder {
+        private final OllamaService service;
+        private String model;
+        private String summaryModel;
+        private String systemMessage;
+        private HistoryPolicy policy;
+        private int maxPromptTokens;
+        private double lowWaterRatio = 0.75;
+        private ChatRequest.Options options;
+
+        public Builder(OllamaService service) {
+            OllamaConfig config = OllamaConfig.getInstance();
+            this.service = service;
+            this.model = config.getDefaultModel();
+            this.policy = HistoryPolicy.parse(config.getConversationPolicy());
+            this.maxPromptTokens = config.getConversationNumCtx() - config.getConversationReplyReserve();
+        }
+
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        // Model that writes summaries under SUMMARIZE; defaults to the chat model
+        public Builder summaryModel(String summaryModel) {
+            this.summaryModel = summaryModel;
+            return this;
+        }
+
+        public Builder systemMessage(String systemMessage) {
+            this.systemMessage = systemMessage;
+            return this;
+        }
+
+        public Builder policy(HistoryPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        public Builder maxPromptTokens(int maxPromptTokens) {
+            this.maxPromptTokens = maxPromptTokens;
+            return this;
+        }
+
+        /**
+         * Runs the model with this context window and budgets for it, keeping
+         * {@code replyReserve} tokens free for the answer.
+         */
+        public Builder numCtx(int numCtx, int replyReserve) {
+            options().setNumCtx(numCtx);
+            this.maxPromptTokens = numCtx - replyReserve;
+            return this;
+        }
+
+        // Share of the budget history is cut back to once it overflows
+        public Builder lowWaterRatio(double lowWaterRatio) {
+            this.lowWaterRatio = lowWaterRatio;
+            return this;
+        }
+
+        public Builder temperature(Double temperature) {
+            options().setTemperature(temperature);
+            return this;
+        }
+
+        public Builder maxTokens(Integer maxTokens) {
+            options().setNumPredict(maxTokens);
+            return this;
+        }
+
+        private ChatRequest.Options options() {
+            if (options == null) {
+                options = new ChatRequest.Options();
+            }
+            return options;
+        }
+
+        public ConversationSession build() {
+            if (model == null || model.isEmpty()) {
+                throw new IllegalStateException("Model is required");
+            }
+            if (maxPromptTokens <= 0) {
+                throw new IllegalStateException("Prompt token budget must be positive, got " + maxPromptTokens);
+            }
+            if (lowWaterRatio <= 0 || lowWaterRatio > 1) {
+                throw new IllegalStateException("Low-water ratio must be in (0, 1], got " + lowWaterRatio);
+            }
+            return new ConversationSession(this);
+        }
+    }
+}
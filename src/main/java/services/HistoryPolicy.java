@@ -0,0 +1,25 @@
+package services;
+
+import java.util.Locale;
+
+/**
+ * What a {@link ConversationSession} does once its history outgrows the token budget.
+ * The system message is pinned under every policy.
+ */
+public enum HistoryPolicy {
+    // Send everything; the prompt grows with every turn
+    UNBOUNDED,
+    // Drop the oldest turns
+    SLIDING_WINDOW,
+    // Fold the oldest turns into a model-written summary kept after the system message
+    SUMMARIZE;
+
+    public static HistoryPolicy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                "conversation.policy must be unbounded, sliding_window or summarize, got '" + value + "'");
+        }
+    }
+}
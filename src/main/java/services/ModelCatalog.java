@@ -0,0 +1,210 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import models.ChatCodec;
+import models.ModelInfo;
+import models.ModelShowInfo;
+import transport.OllamaTransport;
+import transport.TransportResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typed, cached view of the installed models. {@code /api/tags} is fetched at most once
+ * per TTL; within it, lookups by name or digest are hash-map hits with no HTTP call.
+ * Loading is single-flight: when the catalog is empty, concurrent callers wait on one
+ * shared fetch; when it is merely stale, one caller refreshes while the rest keep
+ * reading the previous snapshot. {@code /api/show} results are cached by digest,
+ * which never changes for the same model bytes.
+ */
+public class ModelCatalog {
+
+    private static final ObjectReader MODEL_LIST_READER = ChatCodec.mapper().readerForListOf(ModelInfo.class);
+
+    private final OllamaTransport transport;
+    private final long ttlNanos;
+    private final AtomicReference<CompletableFuture<Snapshot>> loading = new AtomicReference<>();
+    private final ConcurrentHashMap<String, CompletableFuture<ModelShowInfo>> showCache = new ConcurrentHashMap<>();
+    private volatile Snapshot current;
+
+    public ModelCatalog(OllamaTransport transport, long ttlMillis) {
+        this.transport = transport;
+        this.ttlNanos = ttlMillis * 1_000_000;
+    }
+
+    // ==================== LOOKUPS ====================
+
+    public List<ModelInfo> getModels() {
+        return snapshot().models;
+    }
+
+    public int size() {
+        return snapshot().models.size();
+    }
+
+    public boolean isAvailable(String name) {
+        return find(name).isPresent();
+    }
+
+    // Accepts a bare name for the ":latest" tag, like the Ollama CLI
+    public Optional<ModelInfo> find(String name) {
+        Snapshot snapshot = snapshot();
+        ModelInfo model = snapshot.byName.get(name);
+        if (model == null && name.indexOf(':') < 0) {
+            model = snapshot.byName.get(name + ":latest");
+        }
+        return Optional.ofNullable(model);
+    }
+
+    // With or without the "sha256:" prefix
+    public Optional<ModelInfo> findByDigest(String digest) {
+        return Optional.ofNullable(snapshot().byDigest.get(stripDigestPrefix(digest)));
+    }
+
+    /**
+     * {@code /api/show} for an installed model, fetched once per digest; concurrent
+     * callers for the same model share the fetch.
+     */
+    public Optional<ModelShowInfo> show(String name) {
+        Optional<ModelInfo> model = find(name);
+        if (!model.isPresent()) {
+            return Optional.empty();
+        }
+        String key = model.get().getDigest() != null ? model.get().getDigest() : model.get().getName();
+        CompletableFuture<ModelShowInfo> mine = new CompletableFuture<>();
+        CompletableFuture<ModelShowInfo> existing = showCache.putIfAbsent(key, mine);
+        if (existing != null) {
+            return Optional.of(join(existing));
+        }
+        try {
+            ModelShowInfo info = fetchShow(model.get().getName());
+            mine.complete(info);
+            return Optional.of(info);
+        } catch (Throwable e) {
+            // Failed fetches are not cached, so the next caller retries; waiters fail with
+            // the same error rather than blocking on a future nobody completes
+            showCache.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Forces the next lookup to fetch /api/tags again
+    public void invalidate() {
+        current = null;
+    }
+
+    // ==================== LOADING ====================
+
+    private Snapshot snapshot() {
+        Snapshot snapshot = current;
+        if (snapshot != null && System.nanoTime() - snapshot.loadedAt < ttlNanos) {
+            return snapshot;
+        }
+        CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+        CompletableFuture<Snapshot> inFlight = loading.compareAndExchange(null, mine);
+        if (inFlight == null) {
+            try {
+                Snapshot fresh = fetchTags();
+                current = fresh;
+                mine.complete(fresh);
+                return fresh;
+            } catch (Throwable e) {
+                // Errors too: waiters on an incomplete load would block forever
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.set(null);
+            }
+        }
+        // Someone else is fetching: a stale catalog beats waiting for it
+        return snapshot != null ? snapshot : join(inFlight);
+    }
+
+    private Snapshot fetchTags() {
+        TransportResponse response = transport.get("/api/tags");
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException("Listing models failed with status " + response.getStatusCode());
+        }
+        try {
+            JsonNode models = ChatCodec.mapper().readTree(response.getBody()).path("models");
+            List<ModelInfo> list = MODEL_LIST_READER.readValue(models);
+            return new Snapshot(list, System.nanoTime());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse model list", e);
+        }
+    }
+
+    private ModelShowInfo fetchShow(String name) {
+        byte[] body = ("{\"name\":" + quote(name) + "}").getBytes(StandardCharsets.UTF_8);
+        TransportResponse response = transport.post("/api/show", body);
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException(
+                "Showing model " + name + " failed with status " + response.getStatusCode());
+        }
+        try {
+            return ChatCodec.mapper().readValue(response.getBody(), ModelShowInfo.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse model details for " + name, e);
+        }
+    }
+
+    private static String quote(String value) {
+        try {
+            return ChatCodec.mapper().writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not encode model name " + value, e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String stripDigestPrefix(String digest) {
+        return digest != null && digest.startsWith("sha256:") ? digest.substring("sha256:".length()) : digest;
+    }
+
+    // Immutable result of one /api/tags fetch
+    private static class Snapshot {
+        final List<ModelInfo> models;
+        final Map<String, ModelInfo> byName;
+        final Map<String, ModelInfo> byDigest;
+        final long loadedAt;
+
+        Snapshot(List<ModelInfo> models, long loadedAt) {
+            this.models = Collections.unmodifiableList(models);
+            this.byName = new HashMap<>(models.size() * 2);
+            this.byDigest = new HashMap<>(models.size() * 2);
+            for (ModelInfo model : models) {
+                byName.put(model.getName(), model);
+                if (model.getDigest() != null) {
+                    byDigest.put(stripDigestPrefix(model.getDigest()), model);
+                }
+            }
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package services;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import config.OllamaConfig;
+import models.ChatCodec;
+import models.ChatRequest;
+import models.RunningModel;
+import replay.ReplayMode;
+import transport.NodePoolTransport;
+import transport.OllamaTransport;
+import transport.PooledHttpTransport;
+import transport.TransportExecutors;
+import transport.TransportResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a set of models loaded so requests do not pay Ollama's model load time. The
+ * models are loaded up front, every chat carries a {@code keep_alive}, and a background
+ * poll of {@code /api/ps} reloads a model that was evicted or is about to expire. A
+ * load is a chat with no messages, which Ollama answers once the model is in memory.
+ * With a {@link NodePoolTransport} every node is polled and kept warm on its own, since
+ * routing may send the next request to any of them.
+ *
+ * <p>Requests that still paid a load are counted by {@link OllamaService} as
+ * {@code model.cold.loads}, whether or not a manager is running.
+ */
+public class ModelResidencyManager implements AutoCloseable {
+
+    private static final ObjectReader RUNNING_LIST_READER = ChatCodec.mapper().readerForListOf(RunningModel.class);
+
+    private final List<Node> nodes;
+    private final List<String> models;
+    private final String keepAlive;
+    private final long refreshMarginMillis;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder pollFailures = new LongAdder();
+    private ScheduledExecutorService poller;
+
+    /**
+     * @param keepAlive           sent with every load and chat, e.g. "30m"; "-1" never unloads
+     * @param refreshMarginMillis reload a model this long before Ollama would unload it
+     */
+    public ModelResidencyManager(OllamaTransport transport, List<String> models, String keepAlive,
+                                 long refreshMarginMillis) {
+        this(Collections.singletonList(new Node("default", transport)), models, keepAlive, refreshMarginMillis);
+    }
+
+    // Keeps the models warm on every node of the pool, talking to each node directly
+    public ModelResidencyManager(NodePoolTransport pool, List<String> models, String keepAlive,
+                                 long refreshMarginMillis) {
+        this(toNodes(pool), models, keepAlive, refreshMarginMillis);
+    }
+
+    private ModelResidencyManager(List<Node> nodes, List<String> models, String keepAlive,
+                                  long refreshMarginMillis) {
+        this.nodes = nodes;
+        this.models = new ArrayList<>(models);
+        this.keepAlive = keepAlive;
+        this.refreshMarginMillis = refreshMarginMillis;
+    }
+
+    private static List<Node> toNodes(NodePoolTransport pool) {
+        List<Node> nodes = new ArrayList<>();
+        for (NodePoolTransport.Node node : pool.getNodes()) {
+            nodes.add(new Node(node.getName(), node.getTransport()));
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+
+    // ==================== DEFAULT INSTANCE ====================
+
+    // Started on first use when residency.enabled is set; null otherwise and in replay mode
+    public static ModelResidencyManager getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final ModelResidencyManager INSTANCE = create(OllamaConfig.getInstance());
+
+        private static ModelResidencyManager create(OllamaConfig config) {
+            if (!config.isResidencyEnabled() || ReplayMode.parse(config.getReplayMode()) == ReplayMode.REPLAY) {
+                return null;
+            }
+            NodePoolTransport pool = NodePoolTransport.getDefault();
+            ModelResidencyManager manager = pool != null
+                ? new ModelResidencyManager(pool, config.getResidencyModels(), config.getResidencyKeepAlive(),
+                    config.getResidencyRefreshMarginMillis())
+                : new ModelResidencyManager(PooledHttpTransport.getDefault(), config.getResidencyModels(),
+                    config.getResidencyKeepAlive(), config.getResidencyRefreshMarginMillis());
+            try {
+                manager.warmUp();
+            } catch (RuntimeException e) {
+                // The poll keeps retrying; a server that is still starting must not break the suite
+                System.err.println("Model warm-up failed, will retry: " + e.getMessage());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(manager::close));
+            return manager.start(config.getResidencyPollMillis());
+        }
+    }
+
+    // ==================== RESIDENCY ====================
+
+    // Loads every managed model on every node now, one after another, and blocks until they are in memory
+    public void warmUp() {
+        forEachNode(node -> {
+            for (String model : models) {
+                load(node, model);
+            }
+            refreshRunning(node);
+        });
+    }
+
+    // Polls /api/ps in the background and reloads models that are gone or about to expire
+    public synchronized ModelResidencyManager start(long pollMillis) {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(TransportExecutors.daemonThreads("ollama-residency"));
+            poller.scheduleWithFixedDelay(this::pollQuietly, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    // One poll: read /api/ps on each node, then reload whatever needs it there
+    public void poll() {
+        forEachNode(node -> {
+            refreshRunning(node);
+            Instant refreshBy = Instant.now().plusMillis(refreshMarginMillis);
+            for (String model : models) {
+                RunningModel loaded = node.running.get(fullName(model));
+                Instant expires = loaded != null ? loaded.getExpiresAtInstant() : null;
+                if (loaded == null || (expires != null && expires.isBefore(refreshBy))) {
+                    load(node, model);
+                }
+            }
+        });
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // Thrown out of a scheduled task would cancel every later poll
+            pollFailures.increment();
+        }
+    }
+
+    // A node that is down must not keep the others cold; the first failure is rethrown at the end
+    private void forEachNode(Consumer<Node> action) {
+        RuntimeException failure = null;
+        for (Node node : nodes) {
+            try {
+                action.accept(node);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void load(Node node, String model) {
+        ObjectNode body = ChatCodec.mapper().createObjectNode();
+        body.put("model", model);
+        body.putArray("messages");
+        body.put("keep_alive", keepAlive);
+        body.put("stream", false);
+        TransportResponse response;
+        try {
+            response = node.transport.post("/api/chat", ChatCodec.mapper().writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not encode load request for " + model, e);
+        }
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException("Loading model " + model + " on " + node.name + " failed with status "
+                + response.getStatusCode() + ": " + response.getBodyAsString());
+        }
+        loads.increment();
+    }
+
+    private void refreshRunning(Node node) {
+        TransportResponse response = node.transport.get("/api/ps");
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException("Listing running models on " + node.name + " failed with status "
+                + response.getStatusCode());
+        }
+        try {
+            List<RunningModel> list = RUNNING_LIST_READER.readValue(
+                ChatCodec.mapper().readTree(response.getBody()).path("models"));
+            Map<String, RunningModel> byName = new HashMap<>(list.size() * 2);
+            for (RunningModel model : list) {
+                byName.put(fullName(model.getName()), model);
+            }
+            node.running = byName;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse running models", e);
+        }
+    }
+
+    // /api/ps reports "llama3.2:latest" for a model configured as "llama3.2"
+    private static String fullName(String model) {
+        return model.indexOf(':') < 0 ? model + ":latest" : model;
+    }
+
+    // The request with this manager's keep_alive, unless it already sets its own
+    public ChatRequest apply(ChatRequest request) {
+        return request.getKeepAlive() != null ? request : request.toBuilder().keepAlive(keepAlive).build();
+    }
+
+    // ==================== STATE ====================
+
+    // Loaded on every node, as of the last poll or warm-up; a bare name means ":latest"
+    public boolean isLoaded(String model) {
+        for (Node node : nodes) {
+            if (!node.running.containsKey(fullName(model))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Across all nodes, so a model loaded on several appears once per node
+    public List<RunningModel> getRunningModels() {
+        List<RunningModel> running = new ArrayList<>();
+        for (Node node : nodes) {
+            running.addAll(node.running.values());
+        }
+        return running;
+    }
+
+    public List<String> getModels() {
+        return Collections.unmodifiableList(models);
+    }
+
+    public String getKeepAlive() { return keepAlive; }
+    // Warm-ups and refreshes sent, each one a keep_alive reset or a real load
+    public long getLoadCount() { return loads.sum(); }
+    public long getPollFailureCount() { return pollFailures.sum(); }
+
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    // One server to keep models on, with what it reported running at the last poll
+    private static final class Node {
+        private final String name;
+        private final OllamaTransport transport;
+        private volatile Map<String, RunningModel> running = Collections.emptyMap();
+
+        private Node(String name, OllamaTransport transport) {
+            this.name = name;
+            this.transport = transport;
+        }
+    }
+}
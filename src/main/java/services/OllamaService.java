@@ -1,94 +1,454 @@
-package models;
-
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-public class ChatResponse {
-    
-    @JsonProperty("model")
-    private String model;
-    
-    @JsonProperty("created_at")
-    private String createdAt;
-    
-    @JsonProperty("message")
-    private ResponseMessage message;
-    
-    @JsonProperty("done")
-    private Boolean done;
-    
-    @JsonProperty("total_duration")
-    private Long totalDuration;
-    
-    @JsonProperty("load_duration")
-    private Long loadDuration;
-    
-    @JsonProperty("prompt_eval_count")
-    private Integer promptEvalCount;
-    
-    @JsonProperty("prompt_eval_duration")
-    private Long promptEvalDuration;
-    
-    @JsonProperty("eval_count")
-    private Integer evalCount;
-    
-    @JsonProperty("eval_duration")
-    private Long evalDuration;
-    
-    // Getters
-    public String getModel() { return model; }
-    public String getCreatedAt() { return createdAt; }
-    public ResponseMessage getMessage() { return message; }
-    public Boolean getDone() { return done; }
-    public Long getTotalDuration() { return totalDuration; }
-    public Long getLoadDuration() { return loadDuration; }
-    public Integer getPromptEvalCount() { return promptEvalCount; }
-    public Long getPromptEvalDuration() { return promptEvalDuration; }
-    public Integer getEvalCount() { return evalCount; }
-    public Long getEvalDuration() { return evalDuration; }
-    
-    // Utility methods
-    public String getContent() {
-        return message != null ? message.getContent() : null;
-    }
-    
-    public long getTotalDurationInSeconds() {
-        return totalDuration != null ? totalDuration / 1_000_000_000 : 0;
-    }
-    
-    public double getTokensPerSecond() {
-        if (evalCount != null && evalDuration != null && evalDuration > 0) {
-            return (evalCount.doubleValue() * 1_000_000_000) / evalDuration;
-        }
-        return 0;
-    }
-    
-    // Setters
-    public void setModel(String model) { this.model = model; }
-    public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
-    public void setMessage(ResponseMessage message) { this.message = message; }
-    public void setDone(Boolean done) { this.done = done; }
-    public void setTotalDuration(Long totalDuration) { this.totalDuration = totalDuration; }
-    public void setLoadDuration(Long loadDuration) { this.loadDuration = loadDuration; }
-    public void setPromptEvalCount(Integer promptEvalCount) { this.promptEvalCount = promptEvalCount; }
-    public void setPromptEvalDuration(Long promptEvalDuration) { this.promptEvalDuration = promptEvalDuration; }
-    public void setEvalCount(Integer evalCount) { this.evalCount = evalCount; }
-    public void setEvalDuration(Long evalDuration) { this.evalDuration = evalDuration; }
-}
+package services;
+
+import cache.ResponseCache;
+import com.fasterxml.jackson.core.JsonParser;
+import config.OllamaConfig;
+import io.restassured.response.Response;
+import metrics.MetricsRegistry;
+import metrics.Outcome;
+import models.ChatCodec;
+import models.ChatRequest;
+import models.ChatResponse;
+import models.ChatStreamAccumulator;
+import models.ModelInfo;
+import models.RequestFingerprint;
+import replay.CassetteTransport;
+import transport.AsyncHttpTransport;
+import transport.HttpStatusException;
+import transport.NodePoolTransport;
+import transport.OllamaTransport;
+import transport.PooledHttpTransport;
+import transport.StreamingResponse;
+import transport.TransportResponse;
+import utils.SpecBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.restassured.RestAssured.given;
+
+public class OllamaService {
+
+    private final OllamaConfig config;
+    private final OllamaTransport transport;
+    private final OllamaTransport asyncTransport;
+    private final InFlightLimiter inFlightLimiter;
+    private final ModelCatalog modelCatalog;
+    private final long coldLoadNanos;
+    private volatile MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private volatile ResponseCache responseCache = ResponseCache.getDefault();
+    private volatile ModelResidencyManager residency;
+    private volatile RetryPolicy retryPolicy;
+    private volatile ChatHedger hedger;
+    private volatile boolean adaptiveConcurrency;
+    private volatile RequestCoalescer coalescer;
+    private final ConcurrentHashMap<String, AdaptiveLimiter> adaptiveLimiters = new ConcurrentHashMap<>();
+
+    // Talks to base.uri, or through a NodePoolTransport when base.uris lists several hosts
+    public OllamaService() {
+        this(CassetteTransport.wrapDefault(defaultTransport(false)),
+            CassetteTransport.wrapDefault(defaultTransport(true)));
+        this.residency = ModelResidencyManager.getDefault();
+    }
 
-@JsonIgnoreProperties(ignoreUnknown = true)
-class ResponseMessage {
-    @JsonProperty("role")
-    private String role;
-    
-    @JsonProperty("content")
-    private String content;
-    
-    // Getters and Setters
-    public String getRole() { return role; }
-    public void setRole(String role) { this.role = role; }
-    
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    public OllamaService(OllamaTransport transport) {
+        this(transport, transport);
+    }
+
+    public OllamaService(OllamaTransport transport, OllamaTransport asyncTransport) {
+        this.config = OllamaConfig.getInstance();
+        this.transport = transport;
+        this.asyncTransport = asyncTransport;
+        this.inFlightLimiter = new InFlightLimiter(config.getAsyncMaxInFlight());
+        this.modelCatalog = new ModelCatalog(transport, config.getCatalogTtlMillis());
+        this.coldLoadNanos = config.getResidencyColdLoadMillis() * 1_000_000;
+        this.retryPolicy = RetryPolicy.fromConfig(config);
+        this.adaptiveConcurrency = config.isAdaptiveConcurrencyEnabled();
+        this.coalescer = config.isCoalesceEnabled() ? new RequestCoalescer() : null;
+        if (config.isHedgeEnabled()) {
+            enableHedging(config.getHedgePercentile(), config.getHedgeMinDelayMillis());
+        }
+    }
+
+    // ==================== CHAT OPERATIONS ====================
+
+    // RestAssured path, for tests that assert on the raw HTTP response
+    public Response chat(ChatRequest request) {
+        return given()
+            .spec(SpecBuilder.getRequestSpec())
+            .body(request)
+        .when()
+            .post("/api/chat");
+    }
+
+    /**
+     * Blocking chat. With a {@link ResponseCache} configured, deterministic requests
+     * (temperature 0 or a fixed seed) are answered from the cache when the same request
+     * has been seen against the same model digest before. Deterministic requests are
+     * also retried on connection failures, 429 and 5xx, and identical ones in flight
+     * at the same time share one generation. With hedging on, a chat slow to produce
+     * its first token gets a duplicate.
+     */
+    public ChatResponse chatTyped(ChatRequest request) {
+        ChatRequest sent = withKeepAlive(request);
+        ResponseCache cache = responseCache;
+        String fingerprint = null;
+        if (cache != null && sent.isDeterministic()) {
+            fingerprint = RequestFingerprint.of(sent, modelDigest(sent.getModel()));
+            ChatResponse cached = cachedResponse(cache, fingerprint);
+            if (cached != null) {
+                metrics.increment("response.cache.hit");
+                return cached;
+            }
+            metrics.increment("response.cache.miss");
+        }
+
+        RequestCoalescer current = coalescer;
+        if (current != null && sent.isDeterministic()) {
+            String key = fingerprint != null ? fingerprint : RequestFingerprint.of(sent, "");
+            String cacheKey = fingerprint;
+            return current.call(key, () -> fetch(sent, cache, cacheKey), metrics);
+        }
+        return fetch(sent, cache, fingerprint);
+    }
+
+    // An unreadable disk tier is a miss, like an empty one
+    private ChatResponse cachedResponse(ResponseCache cache, String fingerprint) {
+        try {
+            return cache.get(fingerprint);
+        } catch (UncheckedIOException e) {
+            metrics.increment("response.cache.read.errors");
+            return null;
+        }
+    }
+
+    private ChatResponse fetch(ChatRequest sent, ResponseCache cache, String fingerprint) {
+        long start = System.nanoTime();
+        ChatResponse response;
+        try {
+            response = sent.isDeterministic()
+                ? retryPolicy.call(() -> sendLimited(sent), null, metrics)
+                : sendLimited(sent);
+        } catch (RuntimeException e) {
+            recordChat(sent, start, null, e);
+            throw e;
+        }
+        recordChat(sent, start, response, null);
+        if (fingerprint != null) {
+            try {
+                cache.put(fingerprint, response);
+            } catch (UncheckedIOException e) {
+                // A full or read-only cache.dir costs the disk tier, not a chat Ollama answered
+                metrics.increment("response.cache.write.errors");
+            }
+        }
+        return response;
+    }
+
+    private ChatResponse sendLimited(ChatRequest request) {
+        AdaptiveLimiter adaptive = adaptiveLimiter(request.getModel());
+        return adaptive != null ? adaptive.call(() -> send(request)) : send(request);
+    }
+
+    private ChatResponse send(ChatRequest request) {
+        ChatHedger current = hedger;
+        if (current != null) {
+            return current.chat(request, retryPolicy, metrics);
+        }
+        return transport.post("/api/chat", ChatCodec.writeRequest(request), OllamaService::parseChatResponse);
+    }
+
+    /**
+     * Non-blocking chat: no thread is held while the model generates. At most
+     * {@code async.max.in.flight} calls are on the wire at once, or with adaptive
+     * concurrency on, the model's current limit; the rest queue inside the service and
+     * start as earlier calls finish.
+     */
+    public CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+        ChatRequest sent = withKeepAlive(request);
+        byte[] body = ChatCodec.writeRequest(sent);
+        RequestCoalescer current = coalescer;
+        if (current != null && sent.isDeterministic()) {
+            return current.callAsync(RequestFingerprint.of(sent, ""), () -> fetchAsync(sent, body), metrics);
+        }
+        return fetchAsync(sent, body);
+    }
+
+    private CompletableFuture<ChatResponse> fetchAsync(ChatRequest sent, byte[] body) {
+        long start = System.nanoTime();
+        AdaptiveLimiter adaptive = adaptiveLimiter(sent.getModel());
+        CompletableFuture<ChatResponse> response = adaptive != null
+            ? adaptive.submit(() -> asyncTransport.postAsync("/api/chat", body).thenApply(OllamaService::toChatResponse))
+            : inFlightLimiter.submit(() -> asyncTransport.postAsync("/api/chat", body))
+                .thenApply(OllamaService::toChatResponse);
+        return response.whenComplete((result, error) -> recordChat(sent, start, result, error));
+    }
+
+    public InFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+
+    /**
+     * Turns adaptive concurrency on or off. When on, blocking and async chats to each
+     * model go through that model's {@link AdaptiveLimiter}, and its limit is published
+     * as the {@code concurrency.limit.<model>} gauge.
+     */
+    public void setAdaptiveConcurrency(boolean enabled) {
+        this.adaptiveConcurrency = enabled;
+    }
+
+    // The model's limiter, or null when adaptive concurrency is off
+    public AdaptiveLimiter adaptiveLimiter(String model) {
+        if (!adaptiveConcurrency) {
+            return null;
+        }
+        AdaptiveLimiter existing = adaptiveLimiters.get(model);
+        if (existing != null) {
+            return existing;
+        }
+        return adaptiveLimiters.computeIfAbsent(model, name -> {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(config.getAdaptiveInitialLimit(),
+                config.getAdaptiveMinLimit(), config.getAsyncMaxInFlight(), config.getAdaptiveQueueThresholdMillis());
+            metrics.gauge("concurrency.limit." + name, limiter::getLimit);
+            return limiter;
+        });
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        adaptiveLimiters.forEach((model, limiter) -> metrics.gauge("concurrency.limit." + model, limiter::getLimit));
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    // Null turns caching off for this service
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public RequestCoalescer getRequestCoalescer() {
+        return coalescer;
+    }
+
+    // Null sends every call upstream, even identical concurrent ones
+    public void setRequestCoalescer(RequestCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Hedges blocking chats: one with no first token by {@code percentile} of recent
+     * time-to-first-token, and never before {@code minDelayMillis}, gets a duplicate.
+     */
+    public void enableHedging(double percentile, long minDelayMillis) {
+        this.hedger = new ChatHedger(transport, percentile, minDelayMillis);
+    }
+
+    public void disableHedging() {
+        this.hedger = null;
+    }
+
+    public ModelResidencyManager getResidencyManager() {
+        return residency;
+    }
+
+    // Null stops adding keep_alive to requests; the manager keeps running
+    public void setResidencyManager(ModelResidencyManager residency) {
+        this.residency = residency;
+    }
+
+    private static OllamaTransport defaultTransport(boolean async) {
+        NodePoolTransport pool = NodePoolTransport.getDefault();
+        if (pool != null) {
+            return pool;
+        }
+        return async ? AsyncHttpTransport.getDefault() : PooledHttpTransport.getDefault();
+    }
+
+    private ChatRequest withKeepAlive(ChatRequest request) {
+        ModelResidencyManager manager = residency;
+        return manager != null ? manager.apply(request) : request;
+    }
+
+    private void recordChat(ChatRequest request, long startNanos, ChatResponse response, Throwable error) {
+        metrics.recordChat(request.getModel(), error == null ? Outcome.SUCCESS : Outcome.ERROR,
+            System.nanoTime() - startNanos, response);
+        // load_duration is in nanoseconds; a warm model reports well under a millisecond
+        Long loadNanos = response != null ? response.getLoadDuration() : null;
+        if (loadNanos != null && loadNanos >= coldLoadNanos) {
+            metrics.increment("model.cold.loads");
+            metrics.counter("model.cold.load.ms").add(loadNanos / 1_000_000);
+        }
+    }
+
+    private static ChatResponse toChatResponse(TransportResponse response) {
+        if (response.getStatusCode() != 200) {
+            throw new HttpStatusException(
+                "Chat failed with status " + response.getStatusCode() + ": " + response.getBodyAsString(),
+                response.getStatusCode());
+        }
+        try {
+            return ChatCodec.readResponse(response.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse ChatResponse", e);
+        }
+    }
+
+    // Parses straight off the connection; only an error body is buffered
+    private static ChatResponse parseChatResponse(int statusCode, InputStream body) throws IOException {
+        if (statusCode != 200) {
+            throw new HttpStatusException(
+                "Chat failed with status " + statusCode + ": " + new String(body.readAllBytes(), StandardCharsets.UTF_8),
+                statusCode);
+        }
+        return ChatCodec.readResponse(body);
+    }
+
+    /**
+     * Streams a chat as newline-delimited JSON chunks, pushing each token delta to
+     * the listener as soon as it arrives. Blocks until the {@code done:true} chunk and
+     * returns the assembled response, with client-side TTFT and inter-token gaps in
+     * {@link ChatResponse#getStreamTimings()}. If the listener reports itself
+     * cancelled, the connection is dropped and a {@link CancellationException} thrown.
+     * A deterministic stream identical to one already running subscribes to it; see
+     * {@link RequestCoalescer}.
+     */
+    public ChatResponse chatStream(ChatRequest request, ChatStreamListener listener) {
+        ChatRequest sent = withKeepAlive(request);
+        RequestCoalescer current = coalescer;
+        if (current != null && sent.isDeterministic()) {
+            return current.stream(RequestFingerprint.of(sent, ""), listener,
+                fanout -> streamUpstream(sent, fanout), metrics);
+        }
+        return streamUpstream(sent, listener);
+    }
+
+    private ChatResponse streamUpstream(ChatRequest request, ChatStreamListener listener) {
+        byte[] body = ChatCodec.writeRequest(request.toBuilder().stream(true).build());
+        long start = System.nanoTime();
+        ChatResponse result;
+        try (StreamingResponse response = transport.postStream("/api/chat", body)) {
+            if (response.getStatusCode() != 200) {
+                String error = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                throw new HttpStatusException(
+                    "Chat stream failed with status " + response.getStatusCode() + ": " + error,
+                    response.getStatusCode());
+            }
+            result = readStream(response, start, listener);
+        } catch (IOException e) {
+            recordChat(request, start, null, e);
+            listener.onError(e);
+            throw new UncheckedIOException("Chat stream failed", e);
+        } catch (RuntimeException e) {
+            recordChat(request, start, null, e);
+            listener.onError(e);
+            throw e;
+        }
+        // The chat succeeded; a listener failing in onComplete is the caller's error, not the stream's
+        recordChat(request, start, result, null);
+        listener.onComplete(result);
+        return result;
+    }
+
+    private ChatResponse readStream(StreamingResponse response, long start, ChatStreamListener listener)
+            throws IOException {
+        ChatStreamAccumulator accumulator = new ChatStreamAccumulator(start);
+        // One parser for the whole stream: chunks are decoded as their bytes arrive
+        try (JsonParser parser = ChatCodec.createStreamParser(response.getBody())) {
+            ChatResponse chunk;
+            while (!accumulator.isDone() && (chunk = ChatCodec.readResponse(parser)) != null) {
+                String delta = accumulator.accept(chunk, System.nanoTime());
+                if (!delta.isEmpty()) {
+                    listener.onToken(delta);
+                    if (listener.isCancelled()) {
+                        // Dropping the connection is what makes Ollama stop generating
+                        response.abort();
+                        metrics.increment("stream.cancelled");
+                        throw new CancellationException("Chat stream cancelled by listener after "
+                            + accumulator.getTimings().getTokenCount() + " tokens");
+                    }
+                }
+            }
+            // Only a body read to the end goes back to the pool; anything else is aborted on close
+            if (accumulator.isDone()) {
+                ChatCodec.readResponse(parser);
+            }
+        }
+        return accumulator.toResponse();
+    }
+
+    // Replays a user/assistant history (alternating, user first) and asks a new question.
+    // The history is sent in full; use conversation() to hold it to a token budget
+    public ChatResponse continueConversation(List<String> history, String newMessage) {
+        ConversationSession session = conversation().policy(HistoryPolicy.UNBOUNDED).build();
+        for (int i = 0; i < history.size(); i++) {
+            session.addHistory(i % 2 == 0 ? "user" : "assistant", history.get(i));
+        }
+        return session.send(newMessage);
+    }
+
+    // Session builder on the default model, with the configured history policy and budget
+    public ConversationSession.Builder conversation() {
+        return new ConversationSession.Builder(this);
+    }
+
+    // ==================== MODEL OPERATIONS ====================
+
+    // Retried like any idempotent call; after the last retry the failing response is returned
+    public Response listModels() {
+        return retryPolicy.call(() -> given()
+            .spec(SpecBuilder.getRequestSpec())
+        .when()
+            .get("/api/tags"), OllamaService::isRetryableResponse, metrics);
+    }
+
+    public Response showModel(String modelName) {
+        return retryPolicy.call(() -> given()
+            .spec(SpecBuilder.getRequestSpec())
+            .body(Map.of("name", modelName))
+        .when()
+            .post("/api/show"), OllamaService::isRetryableResponse, metrics);
+    }
+
+    private static boolean isRetryableResponse(Response response) {
+        return HttpStatusException.isRetryable(response.getStatusCode());
+    }
+
+    // Answered from the model catalog; /api/tags is fetched at most once per catalog.ttl.ms
+    public boolean isModelAvailable(String modelName) {
+        return modelCatalog.isAvailable(modelName);
+    }
+
+    public int getInstalledModelCount() {
+        return modelCatalog.size();
+    }
+
+    public ModelCatalog getModelCatalog() {
+        return modelCatalog;
+    }
+
+    // An unknown model hashes with an empty digest
+    private String modelDigest(String modelName) {
+        return modelCatalog.find(modelName).map(ModelInfo::getDigest).orElse("");
+    }
 }
@@ -0,0 +1,249 @@
+package services;
+
+import metrics.MetricsRegistry;
+import models.ChatResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for identical deterministic chats: while one is on the wire, callers
+ * with the same key wait for it instead of sending their own. Every caller gets its own
+ * copy of the {@link ChatResponse}, so one caller changing it does not affect the
+ * others. Streams are fanned out: a caller joining mid-stream first gets
+ * the deltas already received, then the rest as they arrive, on the thread reading
+ * the stream. Every joined call is counted as {@code chat.coalesced}.
+ *
+ * <p>Only in-flight calls are shared; once a call finishes the next one goes out again.
+ * Use a {@link cache.ResponseCache} to reuse finished responses.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<String, CompletableFuture<ChatResponse>> calls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StreamFanout> streams = new ConcurrentHashMap<>();
+
+    // ==================== BLOCKING AND ASYNC ====================
+
+    public ChatResponse call(String key, Supplier<ChatResponse> call, MetricsRegistry metrics) {
+        CompletableFuture<ChatResponse> mine = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            metrics.increment("chat.coalesced");
+            return copy(await(existing));
+        }
+        try {
+            ChatResponse response = call.get();
+            mine.complete(response);
+            return copy(response);
+        } catch (Throwable e) {
+            // Errors too, or the callers waiting on this one would wait forever
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    public CompletableFuture<ChatResponse> callAsync(String key, Supplier<CompletableFuture<ChatResponse>> call,
+                                                     MetricsRegistry metrics) {
+        CompletableFuture<ChatResponse> mine = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            metrics.increment("chat.coalesced");
+            // A dependent future, so one caller cancelling does not cancel the others
+            return existing.thenApply(RequestCoalescer::copy);
+        }
+        CompletableFuture<ChatResponse> future;
+        try {
+            future = call.get();
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((response, error) -> {
+            calls.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(response);
+            }
+        });
+        return mine.thenApply(RequestCoalescer::copy);
+    }
+
+    // ==================== STREAMS ====================
+
+    /**
+     * Streams through {@code upstream} unless the same stream is already running, in
+     * which case this caller subscribes to it. The upstream is only cancelled once every
+     * subscriber has cancelled; a caller that cancels alone stops receiving deltas and
+     * gets a {@link CancellationException} when the shared stream ends. A listener that
+     * throws is dropped the same way, and its caller fails with what it threw.
+     */
+    public ChatResponse stream(String key, ChatStreamListener listener,
+                               Function<ChatStreamListener, ChatResponse> upstream, MetricsRegistry metrics) {
+        StreamFanout fanout = new StreamFanout();
+        Subscriber leader = fanout.subscribe(listener);
+        while (true) {
+            StreamFanout existing = streams.putIfAbsent(key, fanout);
+            if (existing == null) {
+                break;
+            }
+            Subscriber follower = existing.subscribe(listener);
+            if (follower != null) {
+                metrics.increment("chat.coalesced");
+                return await(follower.result);
+            }
+            // Finished but not yet unregistered
+            streams.remove(key, existing);
+        }
+        try {
+            upstream.apply(fanout);
+        } catch (Throwable e) {
+            // Usually already delivered through onError; the leader's own result carries it
+            fanout.onError(e);
+        } finally {
+            streams.remove(key, fanout);
+            // No subscriber may be left waiting, whatever the upstream did
+            fanout.onError(new IllegalStateException("Chat stream ended without a result"));
+        }
+        return await(leader.result);
+    }
+
+    private static ChatResponse await(CompletableFuture<ChatResponse> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException("Chat stream failed", (IOException) cause);
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static ChatResponse copy(ChatResponse response) {
+        return response != null ? response.copy() : null;
+    }
+
+    private static final class Subscriber {
+        private final ChatStreamListener listener;
+        private final CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        // Cancelled, or its listener threw: gets nothing more from the shared stream
+        private boolean cancelled;
+
+        private Subscriber(ChatStreamListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private static final class StreamFanout implements ChatStreamListener {
+        private final List<String> deltas = new ArrayList<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private boolean finished;
+
+        // Null once the stream has ended
+        private synchronized Subscriber subscribe(ChatStreamListener listener) {
+            if (finished) {
+                return null;
+            }
+            Subscriber subscriber = new Subscriber(listener);
+            subscribers.add(subscriber);
+            for (String delta : deltas) {
+                if (!deliver(subscriber, delta)) {
+                    break;
+                }
+            }
+            return subscriber;
+        }
+
+        @Override
+        public synchronized void onToken(String delta) {
+            deltas.add(delta);
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.cancelled) {
+                    deliver(subscriber, delta);
+                }
+            }
+        }
+
+        // A listener that throws fails only its own caller; the stream goes on for the rest
+        private boolean deliver(Subscriber subscriber, String delta) {
+            try {
+                subscriber.listener.onToken(delta);
+                if (subscriber.listener.isCancelled()) {
+                    detach(subscriber, new CancellationException(
+                        "Chat stream cancelled by listener after " + deltas.size() + " shared deltas"));
+                    return false;
+                }
+                return true;
+            } catch (Throwable e) {
+                detach(subscriber, e);
+                return false;
+            }
+        }
+
+        private static void detach(Subscriber subscriber, Throwable error) {
+            subscriber.cancelled = true;
+            subscriber.result.completeExceptionally(error);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void onComplete(ChatResponse response) {
+            finished = true;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.cancelled) {
+                    ChatResponse own = copy(response);
+                    try {
+                        subscriber.listener.onComplete(own);
+                        subscriber.result.complete(own);
+                    } catch (Throwable e) {
+                        subscriber.result.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.cancelled) {
+                    try {
+                        subscriber.listener.onError(error);
+                    } catch (Throwable ignored) {
+                        // The caller fails with the stream's error either way
+                    } finally {
+                        subscriber.result.completeExceptionally(error);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package services;
+
+import config.OllamaConfig;
+import metrics.MetricsRegistry;
+import transport.HttpStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries for idempotent calls: up to {@code maxRetries} more attempts after a
+ * connection failure, 429 or 5xx, sleeping a fully jittered exponential backoff in
+ * between. Retries and hedged requests draw on a shared budget that only refills as
+ * calls are made, so a struggling server sees at most {@code budgetRatio} extra
+ * requests per call instead of a multiple of its load.
+ */
+public class RetryPolicy {
+
+    // Budget on hand after start-up, and its ceiling
+    private static final double MAX_BUDGET = 10.0;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private double budget = MAX_BUDGET;
+
+    /**
+     * @param budgetRatio extra attempts earned per call, e.g. 0.2 allows one retry or
+     *                    hedge per five calls once the initial budget is spent
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, double budgetRatio) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetRatio = budgetRatio;
+    }
+
+    public static RetryPolicy fromConfig(OllamaConfig config) {
+        return new RetryPolicy(config.getMaxRetries(), config.getRetryBaseDelayMillis(),
+            config.getRetryMaxDelayMillis(), config.getRetryBudgetRatio());
+    }
+
+    /**
+     * Runs the attempt, retrying retryable failures and results matching
+     * {@code retryOnResult} (null for none). Once retries or budget run out, the last
+     * failure is thrown, or the last result returned.
+     */
+    public <T> T call(Supplier<T> attempt, Predicate<T> retryOnResult, MetricsRegistry metrics) {
+        deposit();
+        for (int retry = 0; ; retry++) {
+            T result;
+            try {
+                result = attempt.get();
+            } catch (Exception e) {
+                if (!isRetryable(e) || !mayRetry(retry, metrics)) {
+                    throw unchecked(e);
+                }
+                backoff(retry, e);
+                continue;
+            }
+            if (retryOnResult == null || !retryOnResult.test(result) || !mayRetry(retry, metrics)) {
+                return result;
+            }
+            backoff(retry, null);
+        }
+    }
+
+    private boolean mayRetry(int retry, MetricsRegistry metrics) {
+        if (retry >= maxRetries) {
+            return false;
+        }
+        if (!tryWithdraw()) {
+            metrics.increment("retry.budget.exhausted");
+            return false;
+        }
+        metrics.increment("retry.attempts");
+        return true;
+    }
+
+    private void backoff(int retry, Exception failure) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry, 20));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (failure != null) {
+                throw unchecked(failure);
+            }
+            throw new IllegalStateException("Interrupted while backing off", e);
+        }
+    }
+
+    // ==================== BUDGET ====================
+
+    private synchronized void deposit() {
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    // Takes one extra attempt from the budget; hedged requests spend it too
+    public synchronized boolean tryWithdraw() {
+        if (budget < 1.0) {
+            return false;
+        }
+        budget -= 1.0;
+        return true;
+    }
+
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    // ==================== FAILURES ====================
+
+    // Connection failures, timeouts, 429 and 5xx
+    public static boolean isRetryable(Throwable e) {
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isRetryable();
+        }
+        return e instanceof UncheckedIOException || e instanceof IOException;
+    }
+
+    // RestAssured throws checked I/O exceptions without declaring them
+    private static RuntimeException unchecked(Exception e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof IOException) {
+            return new UncheckedIOException((IOException) e);
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,31 @@
+package stub;
+
+import java.util.Random;
+
+/**
+ * Source of random non-negative values for the stub's latency and token-rate models.
+ */
+@FunctionalInterface
+public interface Distribution {
+
+    double sample(Random random);
+
+    static Distribution constant(double value) {
+        return random -> value;
+    }
+
+    static Distribution uniform(double min, double max) {
+        return random -> min + random.nextDouble() * (max - min);
+    }
+
+    // Clamped at zero, so a wide spread never yields negative times or rates
+    static Distribution normal(double mean, double stdDev) {
+        return random -> Math.max(0, mean + random.nextGaussian() * stdDev);
+    }
+
+    // Long right tail, the usual shape of real service latencies
+    static Distribution logNormal(double median, double sigma) {
+        double mu = Math.log(median);
+        return random -> Math.exp(mu + random.nextGaussian() * sigma);
+    }
+}
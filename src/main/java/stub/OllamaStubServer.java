@@ -0,0 +1,686 @@
+package stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import models.ChatCodec;
+import services.InFlightLimiter;
+import transport.TransportExecutors;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process, Ollama-compatible server for exercising the client side without a model.
+ * Serves {@code /api/chat} (streamed and not), {@code /api/tags}, {@code /api/show} and
+ * {@code /api/ps}.
+ *
+ * <p>Timings come from configurable {@link Distribution}s: load time on a model's first
+ * request, prompt-eval rate, generation rate and response length. Responses carry the
+ * matching {@code total_duration}, {@code load_duration}, {@code eval_count} and
+ * duration fields. Every delay is a scheduled task rather than a sleeping thread, so a
+ * few threads sustain thousands of requests per second. Like Ollama, at most
+ * {@code maxConcurrency} requests generate at once, up to {@code maxQueue} more wait,
+ * and beyond that the server answers 503. A share of requests can be failed on purpose
+ * with {@code errorRate}. Models stay loaded for their {@code keep_alive} after each
+ * request and pay the load time again once it has run out; a chat with no messages
+ * loads (or with {@code keep_alive} 0 unloads) a model, as in Ollama.
+ */
+public class OllamaStubServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = ChatCodec.mapper();
+    private static final String[] WORDS = ("the model answers each question with a short and clear reply "
+        + "based on what it knows about language data science history and everyday topics").split(" ");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    static {
+        // The JDK server writes headers and body separately; without TCP_NODELAY each
+        // small response stalls ~40ms on the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService scheduler;
+    private final InFlightLimiter generationSlots;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // Model -> System.nanoTime() at which it unloads
+    private final ConcurrentHashMap<String, Long> loadedUntil = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final Random random;
+
+    private final Map<String, String> models;
+    private final Distribution loadTimeMillis;
+    private final Distribution promptTokensPerSecond;
+    private final Distribution tokensPerSecond;
+    private final Distribution responseTokens;
+    private final Function<String, String> responder;
+    private final double errorRate;
+    private final int errorStatus;
+    private final int maxQueue;
+    private final long keepAliveNanos;
+    private final byte[] tagsBody;
+
+    private OllamaStubServer(Builder builder) throws IOException {
+        this.models = new LinkedHashMap<>();
+        for (String model : builder.models) {
+            models.put(model, sha256Hex(model));
+        }
+        this.loadTimeMillis = builder.loadTimeMillis;
+        this.promptTokensPerSecond = builder.promptTokensPerSecond;
+        this.tokensPerSecond = builder.tokensPerSecond;
+        this.responseTokens = builder.responseTokens;
+        this.responder = builder.responder;
+        this.errorRate = builder.errorRate;
+        this.errorStatus = builder.errorStatus;
+        this.maxQueue = builder.maxQueue;
+        this.keepAliveNanos = builder.keepAlive.isNegative() ? -1 : builder.keepAlive.toNanos();
+        this.random = builder.seed != null ? new Random(builder.seed) : new Random();
+        this.generationSlots = new InFlightLimiter(builder.maxConcurrency);
+        this.tagsBody = MAPPER.writeValueAsBytes(tags());
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.handlers = Executors.newFixedThreadPool(threads, TransportExecutors.daemonThreads("stub-http"));
+        this.scheduler = Executors.newScheduledThreadPool(threads, TransportExecutors.daemonThreads("stub-gen"));
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+    }
+
+    public static class Builder {
+        private int port;
+        private final List<String> models = new ArrayList<>();
+        private Distribution loadTimeMillis = Distribution.constant(0);
+        private Distribution promptTokensPerSecond = Distribution.constant(1000);
+        private Distribution tokensPerSecond = Distribution.constant(50);
+        private Distribution responseTokens = Distribution.uniform(20, 80);
+        private Function<String, String> responder;
+        private double errorRate;
+        private int errorStatus = 500;
+        private int maxConcurrency = 4;
+        private int maxQueue = 512;
+        private Long seed;
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+        // 0 picks a free port
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder model(String name) {
+            this.models.add(name);
+            return this;
+        }
+
+        // Paid once per model, by the first request that uses it
+        public Builder loadTimeMillis(Distribution loadTimeMillis) {
+            this.loadTimeMillis = loadTimeMillis;
+            return this;
+        }
+
+        public Builder promptTokensPerSecond(Distribution promptTokensPerSecond) {
+            this.promptTokensPerSecond = promptTokensPerSecond;
+            return this;
+        }
+
+        public Builder tokensPerSecond(Distribution tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        // Length of generated filler text; ignored when a responder is set
+        public Builder responseTokens(Distribution responseTokens) {
+            this.responseTokens = responseTokens;
+            return this;
+        }
+
+        // Maps the last user message to the reply, e.g. for canned answers
+        public Builder responder(Function<String, String> responder) {
+            this.responder = responder;
+            return this;
+        }
+
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Builder errorStatus(int errorStatus) {
+            this.errorStatus = errorStatus;
+            return this;
+        }
+
+        // Requests generating at once, like OLLAMA_NUM_PARALLEL
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        // Requests waiting for a slot before 503s, like OLLAMA_MAX_QUEUE
+        public Builder maxQueue(int maxQueue) {
+            this.maxQueue = maxQueue;
+            return this;
+        }
+
+        // How long a model stays loaded when a request sends no keep_alive; negative is forever
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public OllamaStubServer build() {
+            if (models.isEmpty()) {
+                models.add("llama3.2:3b");
+            }
+            if (errorRate < 0 || errorRate > 1) {
+                throw new IllegalStateException("Error rate must be between 0 and 1, got " + errorRate);
+            }
+            if (maxConcurrency < 1 || maxQueue < 0) {
+                throw new IllegalStateException("Max concurrency must be positive and max queue non-negative");
+            }
+            try {
+                return new OllamaStubServer(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not bind stub server to port " + port, e);
+            }
+        }
+    }
+
+    public OllamaStubServer start() {
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUri() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public long getRequestCount() { return requests.sum(); }
+    public int getGenerating() { return generationSlots.getInFlight(); }
+    public int getQueued() { return waiting.get(); }
+    // Times any model was loaded, i.e. requests that paid the load time
+    public long getLoadCount() { return loads.sum(); }
+
+    public boolean isLoaded(String model) {
+        Long until = loadedUntil.get(model);
+        return until != null && until - System.nanoTime() > 0;
+    }
+    // Streams the client dropped before the last token, which stopped their generation
+    public long getDisconnectCount() { return disconnects.sum(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    // ==================== ROUTING ====================
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        try {
+            if ("/api/chat".equals(path) && "POST".equals(method)) {
+                handleChat(exchange);
+            } else if ("/api/tags".equals(path) && "GET".equals(method)) {
+                send(exchange, 200, tagsBody);
+            } else if ("/api/show".equals(path) && "POST".equals(method)) {
+                handleShow(exchange);
+            } else if ("/api/ps".equals(path) && "GET".equals(method)) {
+                send(exchange, 200, MAPPER.writeValueAsBytes(ps()));
+            } else {
+                byte[] body = "404 page not found".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(404, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            exchange.close();
+            throw e;
+        }
+    }
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        long received = System.nanoTime();
+        JsonNode request = readBody(exchange);
+        if (request == null) {
+            sendError(exchange, 400, "invalid request body");
+            return;
+        }
+        String model = resolve(request.path("model").asText(""));
+        if (!models.containsKey(model)) {
+            sendError(exchange, 404, "model \"" + model + "\" not found, try pulling it first");
+            return;
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            sendError(exchange, errorStatus, "injected failure");
+            return;
+        }
+        if (waiting.get() >= maxQueue && generationSlots.getInFlight() >= generationSlots.getLimit()) {
+            sendError(exchange, 503, "server busy, please try again.  maximum pending requests exceeded");
+            return;
+        }
+
+        if (request.path("messages").size() == 0) {
+            handleLoad(exchange, model, request, received);
+            return;
+        }
+        Generation generation = plan(model, request, received);
+        waiting.incrementAndGet();
+        generationSlots.submit(() -> {
+            waiting.decrementAndGet();
+            return generation.start(exchange);
+        });
+    }
+
+    private void handleShow(HttpExchange exchange) throws IOException {
+        JsonNode request = readBody(exchange);
+        String model = resolve(request == null ? "" : request.path(request.has("model") ? "model" : "name").asText(""));
+        if (!models.containsKey(model)) {
+            sendError(exchange, 404, "model '" + model + "' not found");
+            return;
+        }
+        ObjectNode show = MAPPER.createObjectNode();
+        show.put("modelfile", "# Modelfile generated by OllamaStubServer\nFROM " + model + "\n");
+        show.put("parameters", "stop \"<|eot_id|>\"");
+        show.put("template", "{{ if .System }}{{ .System }}{{ end }}{{ .Prompt }}");
+        show.set("details", details());
+        show.put("modified_at", Instant.EPOCH.toString());
+        send(exchange, 200, MAPPER.writeValueAsBytes(show));
+    }
+
+    // Like Ollama, a bare name means the ":latest" tag
+    private String resolve(String model) {
+        return models.containsKey(model) || model.indexOf(':') >= 0 ? model : model + ":latest";
+    }
+
+    // Chat without messages: load the model and reset its timer, or unload it on keep_alive 0
+    private void handleLoad(HttpExchange exchange, String model, JsonNode request, long received) {
+        long keepAlive = keepAliveNanos(request.path("keep_alive"));
+        long loadNanos;
+        String reason;
+        if (keepAlive == 0) {
+            loadedUntil.remove(model);
+            loadNanos = 0;
+            reason = "unload";
+        } else {
+            loadNanos = reserve(model, received, keepAlive);
+            reason = "load";
+        }
+        scheduler.schedule(() -> {
+            try {
+                ObjectNode response = MAPPER.createObjectNode();
+                response.put("model", model);
+                response.put("created_at", Instant.now().toString());
+                response.putObject("message").put("role", "assistant").put("content", "");
+                response.put("done_reason", reason);
+                response.put("done", true);
+                send(exchange, 200, MAPPER.writeValueAsBytes(response));
+            } catch (IOException e) {
+                exchange.close();
+            }
+        }, loadNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Marks the model loaded for {@code keepAlive} past this request and returns the
+     * load time it pays: zero while still loaded. Concurrent cold requests share one load.
+     */
+    private long reserve(String model, long now, long keepAlive) {
+        long[] loadNanos = new long[1];
+        loadedUntil.compute(model, (name, until) -> {
+            if (until == null || until - now <= 0) {
+                loadNanos[0] = millisToNanos(loadTimeMillis.sample(random));
+                loads.increment();
+            }
+            // Timed from the request rather than from its end, which is close enough here
+            return keepAlive < 0 ? Long.MAX_VALUE : now + loadNanos[0] + keepAlive;
+        });
+        return loadNanos[0];
+    }
+
+    // keep_alive as Ollama reads it: a number of seconds or a duration like "5m" or "1h30m"
+    private long keepAliveNanos(JsonNode value) {
+        if (value.isNumber()) {
+            return (long) (value.asDouble() * 1e9);
+        }
+        String text = value.asText("").trim();
+        if (text.isEmpty()) {
+            return keepAliveNanos;
+        }
+        try {
+            return (long) (Double.parseDouble(text) * 1e9);
+        } catch (NumberFormatException e) {
+            // Go duration below
+        }
+        Matcher part = DURATION_PART.matcher(text.startsWith("-") ? text.substring(1) : text);
+        double nanos = 0;
+        int end = 0;
+        while (part.find() && part.start() == end) {
+            nanos += Double.parseDouble(part.group(1)) * unitNanos(part.group(2));
+            end = part.end();
+        }
+        if (end == 0 || end != text.length() - (text.startsWith("-") ? 1 : 0)) {
+            return keepAliveNanos;
+        }
+        return text.startsWith("-") ? -1 : (long) nanos;
+    }
+
+    private static double unitNanos(String unit) {
+        switch (unit) {
+            case "ms": return 1e6;
+            case "s": return 1e9;
+            case "m": return 60e9;
+            default: return 3600e9;
+        }
+    }
+
+    private ObjectNode ps() {
+        ObjectNode ps = MAPPER.createObjectNode();
+        ArrayNode list = ps.putArray("models");
+        long now = System.nanoTime();
+        for (Map.Entry<String, Long> loaded : loadedUntil.entrySet()) {
+            long remaining = loaded.getValue() - now;
+            if (remaining <= 0) {
+                continue;
+            }
+            ObjectNode entry = list.addObject();
+            entry.put("name", loaded.getKey());
+            entry.put("model", loaded.getKey());
+            entry.put("size", 2_019_393_189L);
+            entry.put("digest", models.get(loaded.getKey()));
+            entry.set("details", details());
+            Instant expires = loaded.getValue() == Long.MAX_VALUE
+                ? Instant.parse("2318-01-01T00:00:00Z") : Instant.now().plusNanos(remaining);
+            entry.put("expires_at", expires.toString());
+            entry.put("size_vram", 2_019_393_189L);
+        }
+        return ps;
+    }
+
+    private ObjectNode tags() {
+        ObjectNode tags = MAPPER.createObjectNode();
+        ArrayNode list = tags.putArray("models");
+        for (Map.Entry<String, String> model : models.entrySet()) {
+            ObjectNode entry = list.addObject();
+            entry.put("name", model.getKey());
+            entry.put("model", model.getKey());
+            entry.put("modified_at", Instant.EPOCH.toString());
+            entry.put("size", 2_019_393_189L);
+            entry.put("digest", model.getValue());
+            entry.set("details", details());
+        }
+        return tags;
+    }
+
+    private static ObjectNode details() {
+        ObjectNode details = MAPPER.createObjectNode();
+        details.put("format", "gguf");
+        details.put("family", "llama");
+        details.put("parameter_size", "3.2B");
+        details.put("quantization_level", "Q4_K_M");
+        return details;
+    }
+
+    // ==================== GENERATION ====================
+
+    private Generation plan(String model, JsonNode request, long received) {
+        int promptTokens = 0;
+        String lastUserMessage = "";
+        for (JsonNode message : request.path("messages")) {
+            String content = message.path("content").asText("");
+            // Rough tokenizer: ~4 characters per token plus the chat template's framing
+            promptTokens += content.length() / 4 + 4;
+            if ("user".equals(message.path("role").asText())) {
+                lastUserMessage = content;
+            }
+        }
+
+        List<String> tokens;
+        int limit = request.path("options").path("num_predict").asInt(-1);
+        if (responder != null) {
+            tokens = tokenize(responder.apply(lastUserMessage));
+        } else {
+            tokens = filler((int) Math.round(responseTokens.sample(random)));
+        }
+        if (limit >= 0 && tokens.size() > limit) {
+            tokens = tokens.subList(0, limit);
+        }
+
+        long loadNanos = reserve(model, received, keepAliveNanos(request.path("keep_alive")));
+        long promptNanos = (long) (promptTokens / Math.max(promptTokensPerSecond.sample(random), 1e-3) * 1e9);
+        long tokenGapNanos = (long) (1e9 / Math.max(tokensPerSecond.sample(random), 1e-3));
+        boolean stream = request.path("stream").asBoolean(true);
+        return new Generation(model, stream, tokens, promptTokens, loadNanos, promptNanos, tokenGapNanos, received);
+    }
+
+    private List<String> filler(int count) {
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            tokens.add(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : " " + word);
+        }
+        if (count > 0) {
+            tokens.set(count - 1, tokens.get(count - 1) + ".");
+        }
+        return tokens;
+    }
+
+    // Word-sized tokens that keep their leading space, so concatenation restores the text
+    private static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i)) && !Character.isWhitespace(text.charAt(i - 1))) {
+                tokens.add(text.substring(start, i));
+                start = i;
+            }
+        }
+        tokens.add(text.substring(start));
+        return tokens;
+    }
+
+    private class Generation {
+
+        private final String model;
+        private final boolean stream;
+        private final List<String> tokens;
+        private final int promptTokens;
+        private final long loadNanos;
+        private final long promptNanos;
+        private final long tokenGapNanos;
+        private final long received;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private HttpExchange exchange;
+        private OutputStream out;
+
+        Generation(String model, boolean stream, List<String> tokens, int promptTokens,
+                   long loadNanos, long promptNanos, long tokenGapNanos, long received) {
+            this.model = model;
+            this.stream = stream;
+            this.tokens = tokens;
+            this.promptTokens = promptTokens;
+            this.loadNanos = loadNanos;
+            this.promptNanos = promptNanos;
+            this.tokenGapNanos = tokenGapNanos;
+            this.received = received;
+        }
+
+        CompletableFuture<Void> start(HttpExchange exchange) {
+            this.exchange = exchange;
+            long firstToken = loadNanos + promptNanos + (tokens.isEmpty() ? 0 : tokenGapNanos);
+            if (stream) {
+                scheduler.schedule(() -> sendToken(0), firstToken, TimeUnit.NANOSECONDS);
+            } else {
+                long total = loadNanos + promptNanos + tokens.size() * tokenGapNanos;
+                scheduler.schedule(this::sendWhole, total, TimeUnit.NANOSECONDS);
+            }
+            return finished;
+        }
+
+        private void sendWhole() {
+            try {
+                ObjectNode response = chunk(String.join("", tokens), true);
+                addStats(response);
+                send(exchange, 200, MAPPER.writeValueAsBytes(response));
+            } catch (IOException e) {
+                exchange.close();
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        // Writes token i, or the final stats chunk once every token is out
+        private void sendToken(int i) {
+            try {
+                if (out == null) {
+                    exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                    exchange.sendResponseHeaders(200, 0);
+                    out = exchange.getResponseBody();
+                }
+                boolean last = i >= tokens.size();
+                ObjectNode chunk = chunk(last ? "" : tokens.get(i), last);
+                if (last) {
+                    addStats(chunk);
+                }
+                out.write(MAPPER.writeValueAsBytes(chunk));
+                out.write('\n');
+                out.flush();
+                if (last) {
+                    exchange.close();
+                    finished.complete(null);
+                } else {
+                    long gap = i + 1 < tokens.size() ? tokenGapNanos : 0;
+                    scheduler.schedule(() -> sendToken(i + 1), gap, TimeUnit.NANOSECONDS);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Client went away mid-stream
+                disconnects.increment();
+                exchange.close();
+                finished.complete(null);
+            }
+        }
+
+        private ObjectNode chunk(String content, boolean done) {
+            ObjectNode node = MAPPER.createObjectNode();
+            node.put("model", model);
+            node.put("created_at", Instant.now().toString());
+            ObjectNode message = node.putObject("message");
+            message.put("role", "assistant");
+            message.put("content", content);
+            node.put("done", done);
+            return node;
+        }
+
+        private void addStats(ObjectNode node) {
+            node.put("done_reason", "stop");
+            node.put("total_duration", System.nanoTime() - received);
+            node.put("load_duration", loadNanos);
+            node.put("prompt_eval_count", promptTokens);
+            node.put("prompt_eval_duration", promptNanos);
+            node.put("eval_count", tokens.size());
+            node.put("eval_duration", tokens.size() * tokenGapNanos);
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private static JsonNode readBody(HttpExchange exchange) {
+        try {
+            JsonNode node = MAPPER.readTree(exchange.getRequestBody());
+            return node != null && node.isObject() ? node : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode error = MAPPER.createObjectNode();
+        error.put("error", message);
+        send(exchange, status, MAPPER.writeValueAsBytes(error));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static long millisToNanos(double millis) {
+        return (long) (millis * 1_000_000);
+    }
+
+    private static String sha256Hex(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Usage: OllamaStubServer [port] [tokensPerSecond]; point base.uri at it to run the suite
+    public static void main(String[] args) throws InterruptedException {
+        OllamaStubServer stub = new Builder()
+            .port(args.length > 0 ? Integer.parseInt(args[0]) : 11434)
+            .tokensPerSecond(Distribution.normal(args.length > 1 ? Double.parseDouble(args[1]) : 50, 5))
+            .build()
+            .start();
+        System.out.println("Ollama stub listening on " + stub.getBaseUri());
+        Thread.currentThread().join();
+    }
+}
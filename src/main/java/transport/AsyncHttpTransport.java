@@ -0,0 +1,123 @@
+package transport;
+
+import config.OllamaConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Transport on the JDK {@link HttpClient}, whose {@code sendAsync} does not hold a
+ * thread while the server is generating. Used for {@code OllamaService.chatAsync}.
+ */
+public class AsyncHttpTransport implements OllamaTransport {
+
+    private final String baseUri;
+    private final Duration readTimeout;
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    public AsyncHttpTransport(String baseUri, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.baseUri = baseUri.endsWith("/") ? baseUri.substring(0, baseUri.length() - 1) : baseUri;
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.executor = TransportExecutors.newIoExecutor("ollama-async");
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .executor(executor)
+            .build();
+    }
+
+    public static AsyncHttpTransport fromConfig(OllamaConfig config) {
+        return new AsyncHttpTransport(config.getBaseUri(), config.getConnectTimeout(), config.getReadTimeout());
+    }
+
+    public static AsyncHttpTransport getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final AsyncHttpTransport INSTANCE = fromConfig(OllamaConfig.getInstance());
+    }
+
+    @Override
+    public TransportResponse get(String path) {
+        return join(client.sendAsync(request(path).GET().build(), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(AsyncHttpTransport::toResponse), "GET " + path);
+    }
+
+    @Override
+    public TransportResponse post(String path, byte[] jsonBody) {
+        return join(postAsync(path, jsonBody), "POST " + path);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postAsync(String path, byte[] jsonBody) {
+        return client.sendAsync(jsonPost(path, jsonBody), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(AsyncHttpTransport::toResponse);
+    }
+
+    @Override
+    public StreamingResponse postStream(String path, byte[] jsonBody) {
+        HttpResponse<InputStream> response = join(
+            client.sendAsync(jsonPost(path, jsonBody), HttpResponse.BodyHandlers.ofInputStream()),
+            "POST " + path);
+        return new StreamingResponse(response.statusCode(), response.body()) {
+            @Override
+            public void abort() {
+                // Closing the subscriber's stream cancels the exchange and drops the connection
+                try {
+                    getBody().close();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(baseUri + path))
+            .timeout(readTimeout)
+            .header("Accept", "application/json");
+    }
+
+    private HttpRequest jsonPost(String path, byte[] jsonBody) {
+        return request(path)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(jsonBody))
+            .build();
+    }
+
+    private static TransportResponse toResponse(HttpResponse<byte[]> response) {
+        return new TransportResponse(response.statusCode(), response.body());
+    }
+
+    private static <T> T join(CompletableFuture<T> future, String description) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(description + " interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException(description + " failed", (IOException) cause);
+            }
+            throw new IllegalStateException(description + " failed", cause);
+        }
+    }
+}
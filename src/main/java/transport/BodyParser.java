@@ -0,0 +1,14 @@
+package transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a response body into a value while it is still on the wire, so transports
+ * that can expose the socket stream skip buffering the whole body first.
+ */
+@FunctionalInterface
+public interface BodyParser<T> {
+
+    T parse(int statusCode, InputStream body) throws IOException;
+}
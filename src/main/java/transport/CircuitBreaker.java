@@ -0,0 +1,83 @@
+package transport;
+
+/**
+ * Per-node breaker: after enough failed or slow calls in a row the node is skipped for
+ * a cool-down, then a single trial call decides whether it comes back. Calls must end
+ * with exactly one of {@link #onSuccess(long)} or {@link #onFailure()}.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long opens;
+
+    /**
+     * @param failureThreshold consecutive failures that open the breaker
+     * @param slowCallMillis   a call this slow counts as a failure; 0 disables
+     * @param openMillis       how long an open breaker rejects calls before a trial
+     */
+    public CircuitBreaker(int failureThreshold, long slowCallMillis, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1, got " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = slowCallMillis > 0 ? slowCallMillis * 1_000_000 : Long.MAX_VALUE;
+        this.openNanos = openMillis * 1_000_000;
+    }
+
+    // Whether a call would be let through right now, without claiming the trial slot
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED || (state == State.OPEN && System.nanoTime() - openedAt >= openNanos);
+    }
+
+    // Claims permission for one call; an open breaker past its cool-down lets exactly one through
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // The trial call is still out
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess(long elapsedNanos) {
+        if (elapsedNanos >= slowCallNanos) {
+            onFailure();
+            return;
+        }
+        if (state == State.OPEN) {
+            // Started before the breaker opened; only the trial call may close it
+            return;
+        }
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                opens++;
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() { return state; }
+    public synchronized long getOpenCount() { return opens; }
+}
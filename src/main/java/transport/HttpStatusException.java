@@ -0,0 +1,29 @@
+package transport;
+
+/**
+ * An Ollama endpoint answered with an error status. Still an
+ * {@link IllegalStateException}, so existing handlers keep working; the status lets
+ * retry logic tell throttling and server faults from bad requests.
+ */
+public class HttpStatusException extends IllegalStateException {
+
+    private final int statusCode;
+
+    public HttpStatusException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    // 429 and 5xx may succeed on a later attempt; other 4xx will not
+    public boolean isRetryable() {
+        return isRetryable(statusCode);
+    }
+
+    public static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
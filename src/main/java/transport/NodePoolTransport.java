@@ -0,0 +1,471 @@
+package transport;
+
+import config.OllamaConfig;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads requests over several Ollama hosts. Each request goes to the best node by the
+ * {@link RoutingPolicy}, skipping nodes whose health probe of {@code /api/tags} failed
+ * and nodes whose {@link CircuitBreaker} is open. Requests are not retried on another
+ * node; a failure reaches the caller and counts against the node that served it.
+ *
+ * <p>Assumes every node serves the same models, since any of them may answer.
+ */
+public class NodePoolTransport implements OllamaTransport {
+
+    // Weight of the newest sample in a node's throughput average
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final List<Node> nodes;
+    private final RoutingPolicy routing;
+    // Rotating start for the scan, so ties do not all land on the first node
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService prober;
+
+    private NodePoolTransport(Builder builder) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(builder.nodes));
+        this.routing = builder.routing;
+    }
+
+    public static NodePoolTransport fromConfig(OllamaConfig config) {
+        Builder builder = new Builder()
+            .routing(RoutingPolicy.parse(config.getPoolRouting()))
+            .breaker(config.getPoolBreakerFailures(), config.getPoolBreakerSlowMillis(),
+                config.getPoolBreakerOpenMillis());
+        for (String uri : config.getBaseUris()) {
+            builder.node(uri,
+                new PooledHttpTransport(uri, config.getConnectTimeout(), config.getReadTimeout(), config.getMaxConnections()),
+                new AsyncHttpTransport(uri, config.getConnectTimeout(), config.getReadTimeout()));
+        }
+        return builder.build();
+    }
+
+    // Pool over base.uris with probes running, or null when only one host is configured
+    public static NodePoolTransport getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final NodePoolTransport INSTANCE = create(OllamaConfig.getInstance());
+
+        private static NodePoolTransport create(OllamaConfig config) {
+            if (config.getBaseUris().size() < 2) {
+                return null;
+            }
+            return fromConfig(config).start(config.getPoolHealthIntervalMillis());
+        }
+    }
+
+    // ==================== REQUESTS ====================
+
+    @Override
+    public TransportResponse get(String path) {
+        Node node = acquire();
+        long start = System.nanoTime();
+        node.outstanding.incrementAndGet();
+        try {
+            TransportResponse response = node.transport.get(path);
+            node.finish(response.getStatusCode(), start, -1);
+            return response;
+        } catch (RuntimeException e) {
+            node.fail();
+            throw e;
+        }
+    }
+
+    @Override
+    public TransportResponse post(String path, byte[] jsonBody) {
+        Node node = acquire();
+        long start = System.nanoTime();
+        node.outstanding.incrementAndGet();
+        try {
+            TransportResponse response = node.transport.post(path, jsonBody);
+            node.finish(response.getStatusCode(), start, response.getBody().length);
+            return response;
+        } catch (RuntimeException e) {
+            node.fail();
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> T post(String path, byte[] jsonBody, BodyParser<T> parser) {
+        Node node = acquire();
+        long start = System.nanoTime();
+        node.outstanding.incrementAndGet();
+        int[] status = {-1};
+        long[] bytes = {0};
+        try {
+            T result = node.transport.post(path, jsonBody, (statusCode, body) -> {
+                status[0] = statusCode;
+                CountingInputStream counting = new CountingInputStream(body);
+                T parsed = parser.parse(statusCode, counting);
+                bytes[0] = counting.count;
+                return parsed;
+            });
+            node.finish(status[0], start, bytes[0]);
+            return result;
+        } catch (RuntimeException e) {
+            // A parser rejecting a 4xx body still means the node answered
+            if (status[0] >= 0) {
+                node.finish(status[0], start, -1);
+            } else {
+                node.fail();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postAsync(String path, byte[] jsonBody) {
+        Node node;
+        try {
+            node = acquire();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+        node.outstanding.incrementAndGet();
+        return node.asyncTransport.postAsync(path, jsonBody).whenComplete((response, error) -> {
+            if (error != null) {
+                node.fail();
+            } else {
+                node.finish(response.getStatusCode(), start, response.getBody().length);
+            }
+        });
+    }
+
+    @Override
+    public StreamingResponse postStream(String path, byte[] jsonBody) {
+        Node node = acquire();
+        long start = System.nanoTime();
+        node.outstanding.incrementAndGet();
+        StreamingResponse response;
+        try {
+            response = node.transport.postStream(path, jsonBody);
+        } catch (RuntimeException e) {
+            node.fail();
+            throw e;
+        }
+        // The breaker judges time to headers; the stream stays outstanding until closed
+        node.judge(response.getStatusCode(), System.nanoTime() - start);
+        return new NodeStreamingResponse(node, response, start);
+    }
+
+    private Node acquire() {
+        List<Node> skipped = null;
+        while (true) {
+            Node best = select(skipped);
+            if (best == null) {
+                throw new IllegalStateException("No Ollama node available: " + nodes);
+            }
+            if (best.breaker.tryAcquire()) {
+                return best;
+            }
+            // Lost the half-open trial to another caller
+            if (skipped == null) {
+                skipped = new ArrayList<>();
+            }
+            skipped.add(best);
+        }
+    }
+
+    private Node select(List<Node> skipped) {
+        double fastest = 0;
+        if (routing == RoutingPolicy.THROUGHPUT) {
+            for (Node node : nodes) {
+                fastest = Math.max(fastest, node.bytesPerSecond);
+            }
+        }
+        int size = nodes.size();
+        int offset = Math.floorMod(next.getAndIncrement(), size);
+        Node best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get((offset + i) % size);
+            if (!node.healthy || !node.breaker.isCallPermitted() || (skipped != null && skipped.contains(node))) {
+                continue;
+            }
+            double score = node.outstanding.get() + 1;
+            if (routing == RoutingPolicy.THROUGHPUT) {
+                // Unmeasured nodes are assumed as fast as the best one, so they get tried
+                double speed = node.bytesPerSecond > 0 ? node.bytesPerSecond : Math.max(fastest, 1);
+                score /= speed;
+            }
+            if (score < bestScore) {
+                best = node;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // ==================== HEALTH ====================
+
+    // Probes every node's /api/tags at this interval in the background
+    public synchronized NodePoolTransport start(long healthIntervalMillis) {
+        if (prober == null) {
+            prober = Executors.newSingleThreadScheduledExecutor(TransportExecutors.daemonThreads("ollama-pool-health"));
+            prober.scheduleWithFixedDelay(this::probeAll, 0, healthIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    // One probe round; a node that hangs does not hold up the others
+    public void probeAll() {
+        for (Node node : nodes) {
+            if (node.probing.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(node::probe, TransportExecutors.sharedIoExecutor());
+            }
+        }
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public RoutingPolicy getRouting() {
+        return routing;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (prober != null) {
+                prober.shutdownNow();
+                prober = null;
+            }
+        }
+        for (Node node : nodes) {
+            node.transport.close();
+            if (node.asyncTransport != node.transport) {
+                node.asyncTransport.close();
+            }
+        }
+    }
+
+    // ==================== NODE ====================
+
+    public static final class Node {
+        private final String name;
+        private final OllamaTransport transport;
+        private final OllamaTransport asyncTransport;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile boolean healthy = true;
+        // Response bytes per second of request time, a stand-in for tokens per second
+        private volatile double bytesPerSecond;
+
+        Node(String name, OllamaTransport transport, OllamaTransport asyncTransport, CircuitBreaker breaker) {
+            this.name = name;
+            this.transport = transport;
+            this.asyncTransport = asyncTransport;
+            this.breaker = breaker;
+        }
+
+        // Ends a request that got a response; bytes < 0 leaves throughput alone
+        private void finish(int statusCode, long startNanos, long bytes) {
+            long elapsed = System.nanoTime() - startNanos;
+            outstanding.decrementAndGet();
+            judge(statusCode, elapsed);
+            if (bytes >= 0 && statusCode < 300) {
+                recordThroughput(bytes, elapsed);
+            }
+        }
+
+        private void judge(int statusCode, long elapsedNanos) {
+            requests.increment();
+            if (statusCode >= 500) {
+                failures.increment();
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess(elapsedNanos);
+            }
+        }
+
+        private void fail() {
+            outstanding.decrementAndGet();
+            requests.increment();
+            failures.increment();
+            breaker.onFailure();
+        }
+
+        private synchronized void recordThroughput(long bytes, long elapsedNanos) {
+            if (elapsedNanos <= 0) {
+                return;
+            }
+            double sample = bytes * 1e9 / elapsedNanos;
+            bytesPerSecond = bytesPerSecond == 0 ? sample : bytesPerSecond + EWMA_ALPHA * (sample - bytesPerSecond);
+        }
+
+        private void probe() {
+            try {
+                healthy = transport.get("/api/tags").getStatusCode() == 200;
+            } catch (RuntimeException e) {
+                healthy = false;
+            } finally {
+                probing.set(false);
+            }
+        }
+
+        public String getName() { return name; }
+        // Talks to this node directly, bypassing routing and the breaker
+        public OllamaTransport getTransport() { return transport; }
+        public int getOutstanding() { return outstanding.get(); }
+        public boolean isHealthy() { return healthy; }
+        public CircuitBreaker.State getBreakerState() { return breaker.getState(); }
+        public double getBytesPerSecond() { return bytesPerSecond; }
+        public long getRequestCount() { return requests.sum(); }
+        public long getFailureCount() { return failures.sum(); }
+
+        @Override
+        public String toString() {
+            return name + " (" + (healthy ? "up" : "down") + ", breaker " + breaker.getState()
+                + ", " + outstanding.get() + " outstanding)";
+        }
+    }
+
+    private static final class NodeStreamingResponse extends StreamingResponse {
+
+        private final Node node;
+        private final StreamingResponse response;
+        private final CountingInputStream body;
+        private final long start;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private NodeStreamingResponse(Node node, StreamingResponse response, long start) {
+            this(node, response, new CountingInputStream(response.getBody()), start);
+        }
+
+        private NodeStreamingResponse(Node node, StreamingResponse response, CountingInputStream body, long start) {
+            super(response.getStatusCode(), body);
+            this.node = node;
+            this.response = response;
+            this.body = body;
+            this.start = start;
+        }
+
+        @Override
+        public void abort() {
+            response.abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                response.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    node.outstanding.decrementAndGet();
+                    if (getStatusCode() < 300) {
+                        node.recordThroughput(body.count, System.nanoTime() - start);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    // ==================== BUILDER ====================
+
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<OllamaTransport> transports = new ArrayList<>();
+        private final List<OllamaTransport> asyncTransports = new ArrayList<>();
+        private final List<Node> nodes = new ArrayList<>();
+        private RoutingPolicy routing = RoutingPolicy.LEAST_OUTSTANDING;
+        private int breakerFailures = 5;
+        private long breakerSlowMillis;
+        private long breakerOpenMillis = 30_000;
+
+        public Builder node(String name, OllamaTransport transport) {
+            return node(name, transport, transport);
+        }
+
+        // Separate transport for postAsync, e.g. an AsyncHttpTransport to the same host
+        public Builder node(String name, OllamaTransport transport, OllamaTransport asyncTransport) {
+            names.add(name);
+            transports.add(transport);
+            asyncTransports.add(asyncTransport);
+            return this;
+        }
+
+        public Builder routing(RoutingPolicy routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * @param failures   consecutive failed or slow calls that open a node's breaker
+         * @param slowMillis a call slower than this counts as failed; 0 disables, for streams
+         *                   the time to headers is what counts
+         * @param openMillis how long an open breaker keeps the node out before a trial call
+         */
+        public Builder breaker(int failures, long slowMillis, long openMillis) {
+            this.breakerFailures = failures;
+            this.breakerSlowMillis = slowMillis;
+            this.breakerOpenMillis = openMillis;
+            return this;
+        }
+
+        public NodePoolTransport build() {
+            if (names.isEmpty()) {
+                throw new IllegalStateException("At least one node is required");
+            }
+            nodes.clear();
+            for (int i = 0; i < names.size(); i++) {
+                nodes.add(new Node(names.get(i), transports.get(i), asyncTransports.get(i),
+                    new CircuitBreaker(breakerFailures, breakerSlowMillis, breakerOpenMillis)));
+            }
+            return new NodePoolTransport(this);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HTTP layer underneath {@link services.OllamaService}. Implementations own their
+ * connections and must be safe to share between threads.
+ */
+public interface OllamaTransport extends Closeable {
+
+    TransportResponse get(String path);
+
+    TransportResponse post(String path, byte[] jsonBody);
+
+    // Parses the body as it streams in; the default buffers it first
+    default <T> T post(String path, byte[] jsonBody, BodyParser<T> parser) {
+        TransportResponse response = post(path, jsonBody);
+        try {
+            return parser.parse(response.getStatusCode(), new ByteArrayInputStream(response.getBody()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse response to POST " + path, e);
+        }
+    }
+
+    // Blocking transports fall back to running post() on an I/O executor
+    default CompletableFuture<TransportResponse> postAsync(String path, byte[] jsonBody) {
+        return CompletableFuture.supplyAsync(() -> post(path, jsonBody), TransportExecutors.sharedIoExecutor());
+    }
+
+    // Caller must close the returned stream; abort() drops the connection mid-body
+    StreamingResponse postStream(String path, byte[] jsonBody);
+
+    @Override
+    void close();
+}
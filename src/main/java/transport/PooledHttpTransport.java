@@ -0,0 +1,242 @@
+package transport;
+
+import config.OllamaConfig;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lean transport on a bounded pool of keep-alive connections. Unlike the RestAssured
+ * path there are no filters, no Groovy and no body logging: bytes in, bytes out.
+ */
+public class PooledHttpTransport implements OllamaTransport {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final String baseUri;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+
+    public PooledHttpTransport(String baseUri, int connectTimeoutMillis, int readTimeoutMillis,
+                               int maxConnections) {
+        this.baseUri = baseUri.endsWith("/") ? baseUri.substring(0, baseUri.length() - 1) : baseUri;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2_000);
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+            .setTcpNoDelay(true)
+            .setSoKeepAlive(true)
+            .setSoTimeout(readTimeoutMillis)
+            .build());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMillis)
+            .setSocketTimeout(readTimeoutMillis)
+            // Waiting for a free pooled connection counts against the connect budget
+            .setConnectionRequestTimeout(connectTimeoutMillis)
+            .build();
+
+        client = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .disableCookieManagement()
+            .disableAuthCaching()
+            .disableRedirectHandling()
+            .disableAutomaticRetries()
+            .evictIdleConnections(30, TimeUnit.SECONDS)
+            .build();
+    }
+
+    public static PooledHttpTransport fromConfig(OllamaConfig config) {
+        return new PooledHttpTransport(
+            config.getBaseUri(),
+            config.getConnectTimeout(),
+            config.getReadTimeout(),
+            config.getMaxConnections());
+    }
+
+    // Process-wide transport for the configured base.uri, created on first use
+    public static PooledHttpTransport getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder {
+        private static final PooledHttpTransport INSTANCE = fromConfig(OllamaConfig.getInstance());
+    }
+
+    @Override
+    public TransportResponse get(String path) {
+        return execute(new HttpGet(baseUri + path));
+    }
+
+    @Override
+    public TransportResponse post(String path, byte[] jsonBody) {
+        return execute(jsonPost(path, jsonBody));
+    }
+
+    @Override
+    public <T> T post(String path, byte[] jsonBody, BodyParser<T> parser) {
+        HttpPost post = jsonPost(path, jsonBody);
+        try (CloseableHttpResponse response = client.execute(post)) {
+            HttpEntity entity = response.getEntity();
+            // Closing the entity stream drains what the parser left and returns the connection
+            try (InputStream body = entity != null ? entity.getContent() : InputStream.nullInputStream()) {
+                return parser.parse(response.getStatusLine().getStatusCode(), body);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("POST " + path + " failed", e);
+        }
+    }
+
+    @Override
+    public StreamingResponse postStream(String path, byte[] jsonBody) {
+        HttpPost post = jsonPost(path, jsonBody);
+        try {
+            CloseableHttpResponse response = client.execute(post);
+            HttpEntity entity = response.getEntity();
+            InputStream content = entity != null ? entity.getContent() : InputStream.nullInputStream();
+            return new PooledStreamingResponse(response.getStatusLine().getStatusCode(), content, post, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException("POST " + path + " failed", e);
+        }
+    }
+
+    public String getBaseUri() {
+        return baseUri;
+    }
+
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getAvailableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpPost jsonPost(String path, byte[] jsonBody) {
+        HttpPost post = new HttpPost(baseUri + path);
+        post.setHeader("Accept", "application/json");
+        post.setEntity(new ByteArrayEntity(jsonBody, ContentType.APPLICATION_JSON));
+        return post;
+    }
+
+    private TransportResponse execute(HttpRequestBase request) {
+        try (CloseableHttpResponse response = client.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            // Reading the entity to the end hands the connection back to the pool
+            byte[] body = entity != null ? EntityUtils.toByteArray(entity) : EMPTY;
+            return new TransportResponse(response.getStatusLine().getStatusCode(), body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(request.getMethod() + " " + request.getURI() + " failed", e);
+        }
+    }
+
+    /**
+     * Closing a stream that was read to the end hands the connection back to the pool.
+     * Closing it earlier (a listener threw, the parser failed, a hedge lost) aborts the
+     * request instead: draining would block until the model finished generating.
+     */
+    private static class PooledStreamingResponse extends StreamingResponse {
+
+        private final HttpPost request;
+        private final CloseableHttpResponse response;
+        private final EofInputStream body;
+
+        PooledStreamingResponse(int statusCode, InputStream content, HttpPost request,
+                                CloseableHttpResponse response) {
+            this(statusCode, new EofInputStream(content, request), request, response);
+        }
+
+        private PooledStreamingResponse(int statusCode, EofInputStream body, HttpPost request,
+                                        CloseableHttpResponse response) {
+            super(statusCode, body);
+            this.request = request;
+            this.response = response;
+            this.body = body;
+        }
+
+        @Override
+        public void abort() {
+            request.abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                body.close();
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    // Remembers whether the body was read to the end, so close() knows whether to abort
+    private static class EofInputStream extends FilterInputStream {
+
+        private final HttpPost request;
+        private boolean eof;
+        private boolean closed;
+
+        EofInputStream(InputStream in, HttpPost request) {
+            super(in);
+            this.request = request;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            eof |= b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = in.read(buffer, offset, length);
+            eof |= n == -1;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!eof) {
+                request.abort();
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Already aborted or reset: the connection is discarded instead of reused
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package transport;
+
+import java.util.Locale;
+
+/**
+ * How a {@link NodePoolTransport} picks the node for the next request.
+ */
+public enum RoutingPolicy {
+    // Fewest requests currently on the wire
+    LEAST_OUTSTANDING,
+    // Fewest outstanding requests per unit of recent response throughput, so faster hosts take more
+    THROUGHPUT;
+
+    public static RoutingPolicy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                "pool.routing must be least_outstanding or throughput, got '" + value + "'");
+        }
+    }
+}
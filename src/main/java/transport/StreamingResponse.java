@@ -0,0 +1,30 @@
+package transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response whose body is read incrementally while the server is still writing it.
+ */
+public abstract class StreamingResponse implements Closeable {
+
+    private final int statusCode;
+    private final InputStream body;
+
+    protected StreamingResponse(int statusCode, InputStream body) {
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() { return statusCode; }
+    public InputStream getBody() { return body; }
+
+    // Tears down the connection so the server sees the client go away
+    public abstract void abort();
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
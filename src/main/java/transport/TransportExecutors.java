@@ -0,0 +1,67 @@
+package transport;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for I/O callbacks. With {@code -Dollama.virtualThreads=true} (set by the
+ * {@code virtual-threads} Maven profile) on JDK 21+, each task gets its own virtual
+ * thread; otherwise a cached pool of daemon platform threads is used. The code is
+ * compiled for Java 11, so the JDK 21 factory method is looked up reflectively.
+ */
+public final class TransportExecutors {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "ollama.virtualThreads";
+
+    private TransportExecutors() {
+    }
+
+    public static ExecutorService newIoExecutor(String namePrefix) {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("Virtual threads requested but not supported by Java "
+                + Runtime.version().feature() + "; falling back to platform threads");
+        }
+        return Executors.newCachedThreadPool(daemonThreads(namePrefix));
+    }
+
+    // Shared executor for running blocking calls off the caller's thread
+    public static ExecutorService sharedIoExecutor() {
+        return SharedHolder.INSTANCE;
+    }
+
+    private static class SharedHolder {
+        private static final ExecutorService INSTANCE = newIoExecutor("ollama-io");
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    public static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (!virtualThreadsAvailable()) {
+            return null;
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package transport;
+
+import java.nio.charset.StandardCharsets;
+
+public class TransportResponse {
+
+    private final int statusCode;
+    private final byte[] body;
+
+    public TransportResponse(int statusCode, byte[] body) {
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() { return statusCode; }
+    public byte[] getBody() { return body; }
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -1,13 +1,20 @@
 package utils;
 
+import com.github.fge.jsonschema.main.JsonSchema;
 import models.ChatResponse;
 import org.testng.Assert;
+import perf.RegressionReport;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
 public class AIResponseValidator {
+
+    private static final KeywordMatcher POSITIVE_WORDS = KeywordMatcher.compile(
+        "good", "great", "excellent", "wonderful", "amazing",
+        "positive", "success", "happy", "best"
+    );
     
     // BASIC VALIDATIONS
     
@@ -66,28 +73,31 @@ public class AIResponseValidator {
     }
     
     public static void assertContainsAnyKeyword(ChatResponse response, String... keywords) {
+        assertContainsAnyKeyword(response, KeywordMatcher.compile(keywords));
+    }
+    
+    // Precompiled variant for keyword sets checked against many responses
+    public static void assertContainsAnyKeyword(ChatResponse response, KeywordMatcher keywords) {
         assertResponseNotEmpty(response);
-        String content = response.getContent().toLowerCase();
-        boolean found = Arrays.stream(keywords)
-            .anyMatch(keyword -> content.contains(keyword.toLowerCase()));
-        
         Assert.assertTrue(
-            found,
+            keywords.containsAny(response.getContent()),
             String.format("Response does not contain any of: %s", 
-                         Arrays.toString(keywords))
+                         keywords.getKeywords())
         );
     }
     
     public static void assertContainsAllKeywords(ChatResponse response, String... keywords) {
+        assertContainsAllKeywords(response, KeywordMatcher.compile(keywords));
+    }
+    
+    public static void assertContainsAllKeywords(ChatResponse response, KeywordMatcher keywords) {
         assertResponseNotEmpty(response);
-        String content = response.getContent().toLowerCase();
-        
-        for (String keyword : keywords) {
-            Assert.assertTrue(
-                content.contains(keyword.toLowerCase()),
-                String.format("Response missing keyword: '%s'", keyword)
-            );
-        }
+        List<String> missing = keywords.findMissing(response.getContent());
+        Assert.assertTrue(
+            missing.isEmpty(),
+            String.format("Response missing keyword: '%s'", 
+                         missing.isEmpty() ? "" : missing.get(0))
+        );
     }
     
     public static void assertDoesNotContain(ChatResponse response, String text) {
@@ -111,13 +121,27 @@ public class AIResponseValidator {
     
     // FORMAT VALIDATIONS
     
+    // A single well-formed JSON object or array, surrounding whitespace allowed
     public static void assertIsJson(ChatResponse response) {
         assertResponseNotEmpty(response);
-        String content = response.getContent().trim();
+        String error = StructuredOutput.findSyntaxError(response.getContent());
+        Assert.assertNull(
+            error,
+            String.format("Response is not valid JSON format: %s", error)
+        );
+    }
+    
+    // Schema loaded from the classpath once and cached, e.g. "schemas/person.json"
+    public static void assertMatchesSchema(ChatResponse response, String schemaResource) {
+        assertMatchesSchema(response, JsonSchemaCache.getDefault().fromResource(schemaResource));
+    }
+    
+    public static void assertMatchesSchema(ChatResponse response, JsonSchema schema) {
+        assertResponseNotEmpty(response);
+        List<String> errors = StructuredOutput.validate(response.getContent(), schema);
         Assert.assertTrue(
-            content.startsWith("{") && content.endsWith("}") ||
-            content.startsWith("[") && content.endsWith("]"),
-            "Response is not valid JSON format"
+            errors.isEmpty(),
+            String.format("Response does not match schema: %s", errors)
         );
     }
     
@@ -135,17 +159,28 @@ public class AIResponseValidator {
     
     public static void assertNoRepeatedSentences(ChatResponse response) {
         assertResponseNotEmpty(response);
-        String content = response.getContent();
-        String[] sentences = content.split("[.!?]");
-        
-        for (int i = 0; i < sentences.length - 1; i++) {
-            for (int j = i + 1; j < sentences.length; j++) {
-                Assert.assertFalse(
-                    sentences[i].trim().equals(sentences[j].trim()),
-                    "Response contains repeated sentences"
-                );
-            }
-        }
+        RepetitionDetector.Report report = RepetitionDetector.analyze(response.getContent());
+        Assert.assertFalse(
+            report.hasRepeatedSentences(),
+            String.format("Response contains repeated sentences: '%s'", 
+                         report.getFirstRepeatedSentence())
+        );
+    }
+    
+    // Catches a model stuck in a loop: too many repeated 4-grams, or a repeating tail
+    public static void assertNoDegeneration(ChatResponse response, double maxRepetitionRatio) {
+        assertResponseNotEmpty(response);
+        RepetitionDetector.Report report = RepetitionDetector.analyze(response.getContent());
+        Assert.assertFalse(
+            report.isLooping(),
+            String.format("Response ends in a loop of %d words repeated %d times", 
+                         report.getLoopPeriod(), report.getLoopRepeats())
+        );
+        Assert.assertTrue(
+            report.getRepetitionRatio() <= maxRepetitionRatio,
+            String.format("Response repetition ratio too high. Expected <= %.2f, got %.2f", 
+                         maxRepetitionRatio, report.getRepetitionRatio())
+        );
     }
     
     public static void assertSentenceCount(ChatResponse response, int minCount) {
@@ -165,11 +200,12 @@ public class AIResponseValidator {
     
     public static void assertResponseTime(ChatResponse response, long maxSeconds) {
         Assert.assertNotNull(response.getTotalDuration(), "Duration not available");
-        long actualSeconds = response.getTotalDurationInSeconds();
+        // Compared in nanoseconds; whole seconds would let 10.9s pass a 10s limit
+        long actualNanos = response.getTotalDuration();
         Assert.assertTrue(
-            actualSeconds <= maxSeconds,
-            String.format("Response time %ds exceeded limit %ds", 
-                         actualSeconds, maxSeconds)
+            actualNanos <= maxSeconds * 1_000_000_000L,
+            String.format("Response time %.3fs exceeded limit %ds", 
+                         actualNanos / 1e9, maxSeconds)
         );
     }
     
@@ -182,6 +218,11 @@ public class AIResponseValidator {
         );
     }
     
+    // Fails on a statistically significant slowdown against the stored baseline
+    public static void assertNoPerformanceRegression(RegressionReport report) {
+        Assert.assertFalse(report.isRegression(), report.toString());
+    }
+    
     // METADATA VALIDATIONS
     
     public static void assertModel(ChatResponse response, String expectedModel) {
@@ -230,17 +271,8 @@ public class AIResponseValidator {
     
     public static void assertPositiveTone(ChatResponse response) {
         assertResponseNotEmpty(response);
-        String content = response.getContent().toLowerCase();
-        List<String> positiveWords = Arrays.asList(
-            "good", "great", "excellent", "wonderful", "amazing", 
-            "positive", "success", "happy", "best"
-        );
-        
-        boolean hasPositiveWord = positiveWords.stream()
-            .anyMatch(content::contains);
-        
         Assert.assertTrue(
-            hasPositiveWord,
+            POSITIVE_WORDS.containsAny(response.getContent()),
             "Response does not have positive tone"
         );
     }
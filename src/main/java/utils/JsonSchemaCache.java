@@ -0,0 +1,75 @@
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import models.ChatCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled JSON Schemas, built once and shared. Compiling a schema (parsing it,
+ * resolving references, building the validator tree) costs far more than validating
+ * one instance with it, so each schema is compiled on first use and the immutable,
+ * thread-safe result is reused by every later validation on any thread.
+ */
+public final class JsonSchemaCache {
+
+    private final JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
+    private final ConcurrentHashMap<String, JsonSchema> schemas = new ConcurrentHashMap<>();
+
+    private static class Holder {
+        static final JsonSchemaCache DEFAULT = new JsonSchemaCache();
+    }
+
+    public static JsonSchemaCache getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    // Schema file on the classpath, e.g. "schemas/person.json"
+    public JsonSchema fromResource(String path) {
+        JsonSchema schema = schemas.get(path);
+        return schema != null ? schema : schemas.computeIfAbsent(path, p -> compile(readResource(p), p));
+    }
+
+    // Inline schema text; keyed by the text itself
+    public JsonSchema fromJson(String schemaJson) {
+        JsonSchema schema = schemas.get(schemaJson);
+        return schema != null ? schema : schemas.computeIfAbsent(schemaJson, json -> compile(parse(json), "inline schema"));
+    }
+
+    public int size() {
+        return schemas.size();
+    }
+
+    private JsonSchema compile(JsonNode schema, String name) {
+        try {
+            return factory.getJsonSchema(schema);
+        } catch (ProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON Schema " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static JsonNode readResource(String path) {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("JSON Schema not found on classpath: " + path);
+            }
+            return ChatCodec.mapper().readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read JSON Schema " + path, e);
+        }
+    }
+
+    private static JsonNode parse(String json) {
+        try {
+            return ChatCodec.mapper().readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON Schema is not valid JSON", e);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled keyword set that finds every occurrence of every keyword in one pass over
+ * the text (Aho-Corasick), so the cost is linear in the text no matter how many
+ * keywords there are. Matching is case-insensitive by folding one char at a time: the
+ * text is never lowercased or copied. A matcher is immutable and thread-safe; compile
+ * it once and scan as many responses as needed.
+ */
+public final class KeywordMatcher {
+
+    private static final int ASCII = 128;
+    // Above this many states the dense ASCII table would cost more memory than it saves time
+    private static final int DENSE_STATE_LIMIT = 1 << 15;
+
+    private final String[] keywords;
+    private final int[] emptyKeywords;
+    // Trie edges per state: sorted folded chars and the states they lead to
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // Keywords ending at each state, and the nearest suffix state that ends one (0 = none)
+    private final int[][] terminals;
+    private final int[] outputLink;
+    // Full transition table for folded ASCII input, so the common case never walks failure links
+    private final int[] asciiDelta;
+
+    private KeywordMatcher(List<String> words) {
+        this.keywords = words.toArray(new String[0]);
+
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        List<Integer> empty = new ArrayList<>();
+        for (int k = 0; k < keywords.length; k++) {
+            String keyword = keywords[k];
+            if (keyword == null) {
+                throw new IllegalArgumentException("Keyword " + k + " is null");
+            }
+            if (keyword.isEmpty()) {
+                empty.add(k);
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(k);
+        }
+        this.emptyKeywords = empty.stream().mapToInt(Integer::intValue).toArray();
+
+        int states = trie.size();
+        edgeChars = new char[states][];
+        edgeTargets = new int[states][];
+        terminals = new int[states][];
+        for (int s = 0; s < states; s++) {
+            Map<Character, Integer> edges = trie.get(s);
+            edgeChars[s] = new char[edges.size()];
+            edgeTargets[s] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[s][i] = edge.getKey();
+                edgeTargets[s][i++] = edge.getValue();
+            }
+            if (!ends.get(s).isEmpty()) {
+                terminals[s] = ends.get(s).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        failure = new int[states];
+        outputLink = new int[states];
+        int[] order = linkFailures(states);
+        asciiDelta = states <= DENSE_STATE_LIMIT ? buildAsciiDelta(order) : null;
+    }
+
+    public static KeywordMatcher compile(String... keywords) {
+        return new KeywordMatcher(Arrays.asList(keywords));
+    }
+
+    public static KeywordMatcher compile(Collection<String> keywords) {
+        return new KeywordMatcher(new ArrayList<>(keywords));
+    }
+
+    // ==================== CONSTRUCTION ====================
+
+    // Breadth-first so every failure target is finished before the states that point at it
+    private int[] linkFailures(int states) {
+        int[] order = new int[states];
+        int visited = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            order[visited++] = s;
+            for (int i = 0; i < edgeChars[s].length; i++) {
+                char c = edgeChars[s][i];
+                int t = edgeTargets[s][i];
+                if (s == 0) {
+                    failure[t] = 0;
+                } else {
+                    int f = failure[s];
+                    while (f != 0 && next(f, c) < 0) {
+                        f = failure[f];
+                    }
+                    int g = next(f, c);
+                    failure[t] = g >= 0 ? g : 0;
+                }
+                int f = failure[t];
+                outputLink[t] = terminals[f] != null ? f : outputLink[f];
+                queue.add(t);
+            }
+        }
+        return order;
+    }
+
+    private int[] buildAsciiDelta(int[] order) {
+        int[] delta = new int[order.length * ASCII];
+        for (int s : order) {
+            for (char c = 0; c < ASCII; c++) {
+                int t = next(s, c);
+                delta[s * ASCII + c] = t >= 0 ? t : (s == 0 ? 0 : delta[failure[s] * ASCII + c]);
+            }
+        }
+        return delta;
+    }
+
+    // ==================== MATCHING ====================
+
+    public boolean containsAny(CharSequence text) {
+        if (emptyKeywords.length > 0) {
+            return true;
+        }
+        boolean[] found = new boolean[1];
+        scan(text, (keyword, end) -> {
+            found[0] = true;
+            return false;
+        });
+        return found[0];
+    }
+
+    public boolean containsAll(CharSequence text) {
+        return findMissing(text).isEmpty();
+    }
+
+    // Keywords that do not occur, in compile order; stops scanning once all are seen
+    public List<String> findMissing(CharSequence text) {
+        BitSet found = new BitSet(keywords.length);
+        for (int k : emptyKeywords) {
+            found.set(k);
+        }
+        int[] remaining = {keywords.length - found.cardinality()};
+        if (remaining[0] > 0) {
+            scan(text, (keyword, end) -> {
+                if (!found.get(keyword)) {
+                    found.set(keyword);
+                    remaining[0]--;
+                }
+                return remaining[0] > 0;
+            });
+        }
+        List<String> missing = new ArrayList<>();
+        for (int k = found.nextClearBit(0); k < keywords.length; k = found.nextClearBit(k + 1)) {
+            missing.add(keywords[k]);
+        }
+        return missing;
+    }
+
+    // Every occurrence, overlapping ones included, ordered by end position
+    public List<Match> findAll(CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        for (int k : emptyKeywords) {
+            matches.add(new Match(k, keywords[k], 0, 0));
+        }
+        scan(text, (keyword, end) -> {
+            matches.add(new Match(keyword, keywords[keyword], end - keywords[keyword].length(), end));
+            return true;
+        });
+        return matches;
+    }
+
+    // For text that arrives in pieces, such as a streamed response
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    public List<String> getKeywords() {
+        return Collections.unmodifiableList(Arrays.asList(keywords));
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+
+    @FunctionalInterface
+    private interface HitHandler {
+        // Returns false to stop the scan
+        boolean onHit(int keyword, int end);
+    }
+
+    private void scan(CharSequence text, HitHandler handler) {
+        scan(0, text, 0, handler);
+    }
+
+    // Returns the state after the last char scanned, so a later piece can continue from it
+    private int scan(int state, CharSequence text, int offset, HitHandler handler) {
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, fold(text.charAt(i)));
+            for (int s = terminals[state] != null ? state : outputLink[state]; s != 0; s = outputLink[s]) {
+                for (int keyword : terminals[s]) {
+                    if (!handler.onHit(keyword, offset + i + 1)) {
+                        return state;
+                    }
+                }
+            }
+        }
+        return state;
+    }
+
+    private int step(int state, char c) {
+        if (c < ASCII && asciiDelta != null) {
+            return asciiDelta[state * ASCII + c];
+        }
+        while (true) {
+            int t = next(state, c);
+            if (t >= 0) {
+                return t;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    private int next(int state, char c) {
+        int i = Arrays.binarySearch(edgeChars[state], c);
+        return i >= 0 ? edgeTargets[state][i] : -1;
+    }
+
+    private static char fold(char c) {
+        if (c < ASCII) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Carries the automaton state from one piece of text to the next, so keywords split
+     * across pieces are still found. Positions count from the start of the first piece.
+     * Empty keywords are never reported. Not thread-safe.
+     */
+    public final class Scanner {
+        private int state;
+        private int offset;
+
+        private Scanner() {
+        }
+
+        // Occurrences that end within this piece
+        public List<Match> feed(CharSequence piece) {
+            List<Match> matches = new ArrayList<>(0);
+            state = scan(state, piece, offset, (keyword, end) -> {
+                matches.add(new Match(keyword, keywords[keyword], end - keywords[keyword].length(), end));
+                return true;
+            });
+            offset += piece.length();
+            return matches;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    // One keyword occurrence; start inclusive, end exclusive, as in String.substring
+    public static final class Match {
+        private final int keywordIndex;
+        private final String keyword;
+        private final int start;
+        private final int end;
+
+        Match(int keywordIndex, String keyword, int start, int end) {
+            this.keywordIndex = keywordIndex;
+            this.keyword = keyword;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getKeywordIndex() { return keywordIndex; }
+        public String getKeyword() { return keyword; }
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+
+        @Override
+        public String toString() {
+            return "'" + keyword + "'@" + start;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package utils;
+
+/**
+ * One-pass detector for degenerate output: repeated sentences, repeated word n-grams
+ * and a looping suffix (the text ending in the same run of words over and over).
+ * Sentences and n-grams are kept as 64-bit hashes in sets capped at a fixed size, and
+ * loops are found from a ring of recent word hashes, so memory stays bounded however
+ * long the text is. Text can be fed in chunks as it streams; results do not depend on
+ * where the chunk boundaries fall.
+ *
+ * <p>Sentences end at '.', '!' or '?' and compare with runs of whitespace collapsed and
+ * case kept. Words are runs of letters and digits, compared case-insensitively.
+ */
+public final class RepetitionDetector {
+
+    public static final int DEFAULT_NGRAM_SIZE = 4;
+    public static final int DEFAULT_MAX_TRACKED = 1 << 16;
+    public static final int DEFAULT_MAX_LOOP_PERIOD = 64;
+
+    // A suffix counts as a loop when its unit repeats this often and covers this many words
+    private static final int MIN_LOOP_REPEATS = 3;
+    private static final int MIN_LOOP_WORDS = 8;
+    private static final int PREVIEW_CHARS = 80;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int ngramSize;
+    private final int maxLoopPeriod;
+    private final BoundedHashSet sentenceHashes;
+    private final BoundedHashSet ngramHashes;
+    // Recent word hashes; sized for both the n-gram window and the longest loop period
+    private final long[] recentWords;
+    // runs[p]: how many trailing words equal the word p positions before them
+    private final int[] runs;
+
+    private long sentenceHash = FNV_OFFSET;
+    private int sentenceLength;
+    private boolean pendingSpace;
+    private final StringBuilder preview = new StringBuilder();
+    private int sentences;
+    private int repeatedSentences;
+    private String firstRepeatedSentence;
+
+    private long wordHash = FNV_OFFSET;
+    private int wordLength;
+    private long words;
+    private long ngrams;
+    private long repeatedNgrams;
+    private boolean finished;
+
+    public RepetitionDetector() {
+        this(DEFAULT_NGRAM_SIZE, DEFAULT_MAX_TRACKED, DEFAULT_MAX_LOOP_PERIOD);
+    }
+
+    /**
+     * @param ngramSize     words per n-gram
+     * @param maxTracked    most distinct sentence and n-gram hashes remembered; beyond it,
+     *                      new ones are only checked, so counts become lower bounds
+     * @param maxLoopPeriod longest loop unit, in words, that is detected
+     */
+    public RepetitionDetector(int ngramSize, int maxTracked, int maxLoopPeriod) {
+        if (ngramSize < 1 || maxTracked < 1 || maxLoopPeriod < 1) {
+            throw new IllegalArgumentException("n-gram size, tracked hashes and loop period must be positive");
+        }
+        this.ngramSize = ngramSize;
+        this.maxLoopPeriod = maxLoopPeriod;
+        this.sentenceHashes = new BoundedHashSet(maxTracked);
+        this.ngramHashes = new BoundedHashSet(maxTracked);
+        this.recentWords = new long[Math.max(ngramSize, maxLoopPeriod + 1)];
+        this.runs = new int[maxLoopPeriod + 1];
+    }
+
+    public static Report analyze(CharSequence text) {
+        return new RepetitionDetector().append(text).finish();
+    }
+
+    // ==================== FEEDING ====================
+
+    public RepetitionDetector append(CharSequence text) {
+        if (finished) {
+            throw new IllegalStateException("Detector already finished");
+        }
+        for (int i = 0; i < text.length(); i++) {
+            accept(text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Counts what has been seen so far. The sentence and word still being written are
+     * left out, since the next chunk may extend them.
+     */
+    public Report report() {
+        return new Report(this);
+    }
+
+    // Closes the trailing sentence and word and returns the final result
+    public Report finish() {
+        if (!finished) {
+            endWord();
+            endSentence();
+            finished = true;
+        }
+        return report();
+    }
+
+    private void accept(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            wordHash = mixChar(wordHash, Character.toLowerCase(c));
+            wordLength++;
+        } else {
+            endWord();
+        }
+
+        if (c == '.' || c == '!' || c == '?') {
+            endSentence();
+        } else if (Character.isWhitespace(c)) {
+            pendingSpace = sentenceLength > 0;
+        } else {
+            if (pendingSpace) {
+                addToSentence(' ');
+                pendingSpace = false;
+            }
+            addToSentence(c);
+        }
+    }
+
+    // ==================== SENTENCES ====================
+
+    private void addToSentence(char c) {
+        sentenceHash = mixChar(sentenceHash, c);
+        sentenceLength++;
+        if (preview.length() < PREVIEW_CHARS) {
+            preview.append(c);
+        }
+    }
+
+    private void endSentence() {
+        if (sentenceLength > 0) {
+            sentences++;
+            // Mixing in the length keeps a sentence apart from an unlucky prefix collision
+            if (sentenceHashes.addOrFind(mixLong(sentenceHash, sentenceLength))) {
+                repeatedSentences++;
+                if (firstRepeatedSentence == null) {
+                    firstRepeatedSentence = preview.toString();
+                }
+            }
+        }
+        sentenceHash = FNV_OFFSET;
+        sentenceLength = 0;
+        pendingSpace = false;
+        preview.setLength(0);
+    }
+
+    // ==================== WORDS ====================
+
+    private void endWord() {
+        if (wordLength == 0) {
+            return;
+        }
+        long hash = mixLong(wordHash, wordLength);
+        wordHash = FNV_OFFSET;
+        wordLength = 0;
+
+        int slot = (int) (words % recentWords.length);
+        recentWords[slot] = hash;
+        words++;
+
+        if (words >= ngramSize) {
+            long ngram = FNV_OFFSET;
+            for (long w = words - ngramSize; w < words; w++) {
+                ngram = mixLong(ngram, recentWords[(int) (w % recentWords.length)]);
+            }
+            ngrams++;
+            if (ngramHashes.addOrFind(ngram)) {
+                repeatedNgrams++;
+            }
+        }
+
+        long available = Math.min(maxLoopPeriod, words - 1);
+        for (int p = 1; p <= available; p++) {
+            runs[p] = recentWords[(int) ((words - 1 - p) % recentWords.length)] == hash ? runs[p] + 1 : 0;
+        }
+    }
+
+    private static long mixChar(long hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    private static long mixLong(long hash, long value) {
+        for (int i = 0; i < 64; i += 16) {
+            hash = (hash ^ ((value >>> i) & 0xFFFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // ==================== RESULT ====================
+
+    public static final class Report {
+        private final int sentenceCount;
+        private final int repeatedSentenceCount;
+        private final String firstRepeatedSentence;
+        private final long wordCount;
+        private final long ngramCount;
+        private final long repeatedNgramCount;
+        private final int loopPeriod;
+        private final int loopRepeats;
+
+        private Report(RepetitionDetector detector) {
+            this.sentenceCount = detector.sentences;
+            this.repeatedSentenceCount = detector.repeatedSentences;
+            this.firstRepeatedSentence = detector.firstRepeatedSentence;
+            this.wordCount = detector.words;
+            this.ngramCount = detector.ngrams;
+            this.repeatedNgramCount = detector.repeatedNgrams;
+
+            // The period whose repetition covers the longest suffix; the shortest on ties
+            int bestPeriod = 0;
+            int bestCovered = 0;
+            for (int p = 1; p < detector.runs.length; p++) {
+                int covered = detector.runs[p] + p;
+                if (detector.runs[p] > 0 && covered > bestCovered) {
+                    bestPeriod = p;
+                    bestCovered = covered;
+                }
+            }
+            this.loopPeriod = bestPeriod;
+            this.loopRepeats = bestPeriod == 0 ? 0 : bestCovered / bestPeriod;
+        }
+
+        public int getSentenceCount() { return sentenceCount; }
+        public int getRepeatedSentenceCount() { return repeatedSentenceCount; }
+        public long getWordCount() { return wordCount; }
+        public long getNgramCount() { return ngramCount; }
+        public long getRepeatedNgramCount() { return repeatedNgramCount; }
+
+        // Up to 80 chars of the first sentence seen twice, or null
+        public String getFirstRepeatedSentence() { return firstRepeatedSentence; }
+
+        public boolean hasRepeatedSentences() {
+            return repeatedSentenceCount > 0;
+        }
+
+        // Share of word n-grams that already occurred earlier in the text
+        public double getRepetitionRatio() {
+            return ngramCount == 0 ? 0.0 : repeatedNgramCount / (double) ngramCount;
+        }
+
+        // Words in the repeating unit at the end of the text, or 0
+        public int getLoopPeriod() { return loopPeriod; }
+
+        public int getLoopRepeats() { return loopRepeats; }
+
+        public boolean isLooping() {
+            return loopRepeats >= MIN_LOOP_REPEATS && loopPeriod * loopRepeats >= MIN_LOOP_WORDS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sentences=%d repeated=%d ngramRatio=%.3f loop=%dx%d words",
+                sentenceCount, repeatedSentenceCount, getRepetitionRatio(), loopRepeats, loopPeriod);
+        }
+    }
+
+    // Open-addressing set of hashes that stops growing at its cap
+    private static final class BoundedHashSet {
+        private final int maxSize;
+        private long[] table = new long[64];
+        private boolean hasZero;
+        private int size;
+
+        BoundedHashSet(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        // True if the hash was already present; otherwise adds it while there is room
+        boolean addOrFind(long hash) {
+            if (hash == 0) {
+                if (hasZero) {
+                    return true;
+                }
+                if (size < maxSize) {
+                    hasZero = true;
+                    size++;
+                }
+                return false;
+            }
+            int mask = table.length - 1;
+            int i = (int) (hash ^ (hash >>> 32)) & mask;
+            while (table[i] != 0) {
+                if (table[i] == hash) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            if (size < maxSize) {
+                table[i] = hash;
+                if (++size * 2 > table.length) {
+                    grow();
+                }
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long hash : old) {
+                if (hash != 0) {
+                    int i = (int) (hash ^ (hash >>> 32)) & mask;
+                    while (table[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = hash;
+                }
+            }
+        }
+    }
+}
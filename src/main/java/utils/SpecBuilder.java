@@ -3,34 +3,59 @@ package utils;
 import config.OllamaConfig;
 import io.restassured.builder.RequestSpecBuilder;
 import io.restassured.builder.ResponseSpecBuilder;
-import io.restassured.filter.log.RequestLoggingFilter;
-import io.restassured.filter.log.ResponseLoggingFilter;
 import io.restassured.http.ContentType;
 import io.restassured.specification.RequestSpecification;
 import io.restassured.specification.ResponseSpecification;
+import logging.AsyncHttpLogger;
+import logging.SampledLoggingFilter;
+import replay.CassetteFilter;
+import replay.CassetteStore;
 
 import static org.hamcrest.Matchers.*;
 
+/**
+ * Shared RestAssured specs, built on first use. Safe to call from parallel test
+ * threads: the specs are published through volatile fields and built at most once
+ * between resets.
+ */
 public class SpecBuilder {
     
-    private static RequestSpecification requestSpec;
-    private static ResponseSpecification responseSpec;
+    private static volatile RequestSpecification requestSpec;
+    private static volatile ResponseSpecification responseSpec;
     
     public static RequestSpecification getRequestSpec() {
+        RequestSpecification spec = requestSpec;
+        return spec != null ? spec : buildRequestSpec();
+    }
+    
+    private static synchronized RequestSpecification buildRequestSpec() {
         if (requestSpec == null) {
-            requestSpec = new RequestSpecBuilder()
+            RequestSpecBuilder builder = new RequestSpecBuilder()
                 .setBaseUri(OllamaConfig.getInstance().getBaseUri())
                 .setContentType(ContentType.JSON)
                 .addHeader("Accept", "application/json")
-                .setRelaxedHTTPSValidation() // For local testing
-                .addFilter(new RequestLoggingFilter())
-                .addFilter(new ResponseLoggingFilter())
-                .build();
+                .setRelaxedHTTPSValidation(); // For local testing
+            // Sampled, always on errors and slow calls, written off the request thread
+            AsyncHttpLogger logger = AsyncHttpLogger.getDefault();
+            if (logger != null) {
+                builder.addFilter(new SampledLoggingFilter(logger));
+            }
+            // Record or replay through the cassette when replay.mode is set
+            CassetteStore cassette = CassetteStore.getDefault();
+            if (cassette != null) {
+                builder.addFilter(new CassetteFilter(cassette));
+            }
+            requestSpec = builder.build();
         }
         return requestSpec;
     }
     
     public static ResponseSpecification getResponseSpec() {
+        ResponseSpecification spec = responseSpec;
+        return spec != null ? spec : buildResponseSpec();
+    }
+    
+    private static synchronized ResponseSpecification buildResponseSpec() {
         if (responseSpec == null) {
             responseSpec = new ResponseSpecBuilder()
                 .expectContentType(ContentType.JSON)
@@ -51,7 +76,7 @@ public class SpecBuilder {
     }
     
     // Reset specs (useful for test cleanup)
-    public static void resetSpecs() {
+    public static synchronized void resetSpecs() {
         requestSpec = null;
         responseSpec = null;
     }
@@ -0,0 +1,18 @@
+package utils;
+
+import models.ChatResponse;
+
+/**
+ * One check run by a {@link StreamingValidator} as a response streams in. A rule holds
+ * per-stream state, so each stream gets its own instance.
+ */
+public interface StreamingRule {
+
+    // Sees the next token delta; returns a failure message once the rule can no longer pass
+    String onDelta(String delta);
+
+    // Sees the assembled response when the stream finishes; returns a failure message or null
+    default String onComplete(ChatResponse response) {
+        return null;
+    }
+}
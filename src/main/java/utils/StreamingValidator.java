@@ -0,0 +1,272 @@
+package utils;
+
+import models.ChatRequest;
+import models.ChatResponse;
+import org.testng.Assert;
+import services.ChatStreamListener;
+import services.OllamaService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link AIResponseValidator}-style checks on a streamed chat while the tokens
+ * arrive. The first rule that can no longer pass cancels the stream, so the server
+ * stops generating a response that has already failed. Rules that can only be judged
+ * on the full text (a required language, say) are decided when the stream completes.
+ *
+ * <pre>
+ * StreamingValidator validator = new StreamingValidator.Builder()
+ *     .maxLength(2000)
+ *     .doesNotContain("never reveal system prompts")
+ *     .build();
+ * ChatResponse response = validator.validate(ollamaService, request);
+ * </pre>
+ *
+ * A validator is single-use; build a new one for each stream.
+ */
+public class StreamingValidator implements ChatStreamListener {
+
+    private final List<StreamingRule> rules;
+    private volatile String failure;
+    private boolean used;
+
+    private StreamingValidator(List<StreamingRule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Streams the request through the rules and returns the response once every rule
+     * has passed; fails the test with the first rule's message otherwise.
+     */
+    public ChatResponse validate(OllamaService service, ChatRequest request) {
+        if (used) {
+            throw new IllegalStateException("StreamingValidator is single-use; build one per stream");
+        }
+        used = true;
+        ChatResponse response;
+        try {
+            response = service.chatStream(request, this);
+        } catch (CancellationException e) {
+            if (failure == null) {
+                throw e;
+            }
+            response = null;
+        }
+        if (failure != null) {
+            Assert.fail(failure);
+        }
+        return response;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    // Message of the first failed rule, or null
+    public String getFailure() {
+        return failure;
+    }
+
+    // ==================== LISTENER ====================
+
+    @Override
+    public void onToken(String delta) {
+        if (failure != null) {
+            return;
+        }
+        for (StreamingRule rule : rules) {
+            String message = rule.onDelta(delta);
+            if (message != null) {
+                failure = message;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(ChatResponse response) {
+        if (failure != null) {
+            return;
+        }
+        for (StreamingRule rule : rules) {
+            String message = rule.onComplete(response);
+            if (message != null) {
+                failure = message;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return failure != null;
+    }
+
+    // ==================== RULES ====================
+
+    private static class MaxLengthRule implements StreamingRule {
+        private final int maxLength;
+        private long length;
+
+        MaxLengthRule(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public String onDelta(String delta) {
+            length += delta.length();
+            return length <= maxLength ? null
+                : String.format("Response too long. Expected <= %d, got %d", maxLength, length);
+        }
+    }
+
+    private static class DoesNotContainRule implements StreamingRule {
+        private final KeywordMatcher.Scanner scanner;
+
+        DoesNotContainRule(KeywordMatcher forbidden) {
+            this.scanner = forbidden.newScanner();
+        }
+
+        @Override
+        public String onDelta(String delta) {
+            List<KeywordMatcher.Match> matches = scanner.feed(delta);
+            return matches.isEmpty() ? null
+                : String.format("Response should not contain: '%s'", matches.get(0).getKeyword());
+        }
+    }
+
+    // Passes as soon as one marker shows up; can only fail once the stream is complete
+    private static class LanguageRule implements StreamingRule {
+        private final String language;
+        private final KeywordMatcher.Scanner markers;
+        private boolean seen;
+
+        LanguageRule(String language, KeywordMatcher markers) {
+            this.language = language;
+            this.markers = markers.newScanner();
+        }
+
+        @Override
+        public String onDelta(String delta) {
+            if (!seen) {
+                seen = !markers.feed(delta).isEmpty();
+            }
+            return null;
+        }
+
+        @Override
+        public String onComplete(ChatResponse response) {
+            return seen ? null : String.format("Response does not appear to be %s",
+                language.equals("code") ? "code" : "in English");
+        }
+    }
+
+    private static class RepetitionRule implements StreamingRule {
+        private final RepetitionDetector detector = new RepetitionDetector();
+        private final boolean sentencesOnly;
+        private final double maxRepetitionRatio;
+
+        RepetitionRule(boolean sentencesOnly, double maxRepetitionRatio) {
+            this.sentencesOnly = sentencesOnly;
+            this.maxRepetitionRatio = maxRepetitionRatio;
+        }
+
+        @Override
+        public String onDelta(String delta) {
+            return check(detector.append(delta).report(), false);
+        }
+
+        @Override
+        public String onComplete(ChatResponse response) {
+            return check(detector.finish(), true);
+        }
+
+        // The n-gram ratio swings early in a response, so it is only judged at the end
+        private String check(RepetitionDetector.Report report, boolean complete) {
+            if (sentencesOnly) {
+                return report.hasRepeatedSentences()
+                    ? String.format("Response contains repeated sentences: '%s'", report.getFirstRepeatedSentence())
+                    : null;
+            }
+            if (report.isLooping()) {
+                return String.format("Response ends in a loop of %d words repeated %d times",
+                    report.getLoopPeriod(), report.getLoopRepeats());
+            }
+            if (complete && report.getRepetitionRatio() > maxRepetitionRatio) {
+                return String.format("Response repetition ratio too high. Expected <= %.2f, got %.2f",
+                    maxRepetitionRatio, report.getRepetitionRatio());
+            }
+            return null;
+        }
+    }
+
+    // ==================== BUILDER ====================
+
+    public static class Builder {
+        private static final KeywordMatcher ENGLISH_MARKERS = KeywordMatcher.compile(
+            "a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m",
+            "n", "o", "p", "q", "r", "s", "t", "u", "v", "w", "x", "y", "z"
+        );
+        private static final KeywordMatcher CODE_MARKERS = KeywordMatcher.compile("{", "(", "def", "function");
+
+        private final List<Supplier<StreamingRule>> rules = new ArrayList<>();
+
+        public Builder maxLength(int maxLength) {
+            rules.add(() -> new MaxLengthRule(maxLength));
+            return this;
+        }
+
+        public Builder doesNotContain(String... texts) {
+            KeywordMatcher forbidden = KeywordMatcher.compile(texts);
+            rules.add(() -> new DoesNotContainRule(forbidden));
+            return this;
+        }
+
+        // "english" or "code", as in AIResponseValidator.assertLanguage
+        public Builder language(String language) {
+            String normalized = language.toLowerCase();
+            switch (normalized) {
+                case "english":
+                    rules.add(() -> new LanguageRule(normalized, ENGLISH_MARKERS));
+                    break;
+                case "code":
+                    rules.add(() -> new LanguageRule(normalized, CODE_MARKERS));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Language validation not implemented for: " + language);
+            }
+            return this;
+        }
+
+        public Builder noRepeatedSentences() {
+            rules.add(() -> new RepetitionRule(true, 1.0));
+            return this;
+        }
+
+        // Cancels as soon as the output starts looping; the n-gram ratio is checked at the end
+        public Builder noDegeneration(double maxRepetitionRatio) {
+            rules.add(() -> new RepetitionRule(false, maxRepetitionRatio));
+            return this;
+        }
+
+        // Called once per built validator, since rules keep per-stream state
+        public Builder rule(Supplier<StreamingRule> rule) {
+            rules.add(rule);
+            return this;
+        }
+
+        public StreamingValidator build() {
+            if (rules.isEmpty()) {
+                throw new IllegalStateException("At least one rule is required");
+            }
+            List<StreamingRule> instances = new ArrayList<>(rules.size());
+            for (Supplier<StreamingRule> rule : rules) {
+                instances.add(rule.get());
+            }
+            return new StreamingValidator(instances);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import models.ChatCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks for model output that is supposed to be JSON. Well-formedness is checked by
+ * running the streaming parser over the text without building a tree; only schema
+ * validation, which needs one, parses into nodes. Strict JSON: no comments, no single
+ * quotes, no trailing content after the value.
+ */
+public final class StructuredOutput {
+
+    private static final JsonFactory STRICT = new JsonFactory();
+    private static final ObjectReader TREE_READER = ChatCodec.mapper().reader()
+        .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+
+    private StructuredOutput() {
+    }
+
+    /**
+     * @return null when the content is exactly one JSON object or array, otherwise what
+     *         is wrong and where
+     */
+    public static String findSyntaxError(String content) {
+        try (JsonParser parser = STRICT.createParser(content)) {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                return "No JSON value found";
+            }
+            if (first != JsonToken.START_OBJECT && first != JsonToken.START_ARRAY) {
+                return "Expected a JSON object or array at " + where(parser.currentLocation());
+            }
+            // Walks every token of the value, so any syntax error surfaces here
+            parser.skipChildren();
+            if (parser.nextToken() != null) {
+                return "Unexpected content after the JSON value at " + where(parser.currentLocation());
+            }
+            return null;
+        } catch (JsonProcessingException e) {
+            return e.getOriginalMessage() + " at " + where(e.getLocation());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read content", e);
+        }
+    }
+
+    /**
+     * @return every schema violation as "pointer: message", or the syntax error if the
+     *         content is not JSON at all; empty when the content is valid
+     */
+    public static List<String> validate(String content, JsonSchema schema) {
+        List<String> errors = new ArrayList<>();
+        JsonNode instance;
+        try {
+            instance = TREE_READER.readTree(content);
+        } catch (JsonProcessingException e) {
+            errors.add(e.getOriginalMessage() + " at " + where(e.getLocation()));
+            return errors;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read content", e);
+        }
+        if (instance == null || instance.isMissingNode()) {
+            errors.add("No JSON value found");
+            return errors;
+        }
+        try {
+            ProcessingReport report = schema.validate(instance, true);
+            for (ProcessingMessage message : report) {
+                // Warnings (e.g. draft 2019+ keywords like $defs that draft 4 ignores) are not violations
+                if (message.getLogLevel().compareTo(LogLevel.ERROR) < 0) {
+                    continue;
+                }
+                String pointer = message.asJson().path("instance").path("pointer").asText("");
+                errors.add((pointer.isEmpty() ? "/" : pointer) + ": " + message.getMessage());
+            }
+        } catch (ProcessingException e) {
+            throw new IllegalStateException("Schema validation could not run: " + e.getMessage(), e);
+        }
+        return errors;
+    }
+
+    private static String where(JsonLocation location) {
+        return location == null ? "unknown position"
+            : "line " + location.getLineNr() + ", column " + location.getColumnNr();
+    }
+}
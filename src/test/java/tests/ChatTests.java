@@ -2,10 +2,13 @@ package tests;
 
 import config.OllamaConfig;
 import io.restassured.response.Response;
+import metrics.MetricsSnapshot;
+import metrics.Outcome;
 import models.ChatRequest;
 import models.ChatResponse;
 import org.testng.Assert;
 import org.testng.annotations.*;
+import services.ConversationSession;
 import services.OllamaService;
 import utils.AIResponseValidator;
 
@@ -14,21 +17,24 @@ import java.util.List;
 
 public class ChatTests {
     
-    private OllamaService ollamaService;
     private String testModel;
     
     @BeforeClass
     public void setup() {
-        ollamaService = new OllamaService();
         testModel = OllamaConfig.getInstance().getDefaultModel();
         
         // Verify model is available
         Assert.assertTrue(
-            ollamaService.isModelAvailable(testModel),
+            ollamaService().isModelAvailable(testModel),
             "Test model not available: " + testModel
         );
     }
     
+    // Each test thread gets its own service, bound to its shard's node in parallel runs
+    private OllamaService ollamaService() {
+        return TestServices.current();
+    }
+    
     // ==================== BASIC CHAT TESTS ====================
     
     @Test(priority = 1, description = "Test simple chat completion")
@@ -40,7 +46,7 @@ public class ChatTests {
             .build();
         
         // Act
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         // Assert
         AIResponseValidator.assertResponseComplete(response);
@@ -57,7 +63,7 @@ public class ChatTests {
             .build();
         
         // Act
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         // Assert
         AIResponseValidator.assertResponseComplete(response);
@@ -73,7 +79,7 @@ public class ChatTests {
             .build();
         
         // Act
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         // Assert
         AIResponseValidator.assertResponseComplete(response);
@@ -86,24 +92,16 @@ public class ChatTests {
     
     @Test(priority = 4, description = "Test multi-turn conversation with context")
     public void testMultiTurnConversation() {
-        // Turn 1: Introduce a topic
-        ChatRequest request1 = new ChatRequest.Builder()
+        ConversationSession session = ollamaService().conversation()
             .model(testModel)
-            .addUserMessage("My name is John and I love pizza")
             .build();
         
-        ChatResponse response1 = ollamaService.chatTyped(request1);
+        // Turn 1: Introduce a topic
+        ChatResponse response1 = session.send("My name is John and I love pizza");
         AIResponseValidator.assertResponseComplete(response1);
         
-        // Turn 2: Ask about previous context
-        ChatRequest request2 = new ChatRequest.Builder()
-            .model(testModel)
-            .addUserMessage("My name is John and I love pizza")
-            .addAssistantMessage(response1.getContent())
-            .addUserMessage("What is my name?")
-            .build();
-        
-        ChatResponse response2 = ollamaService.chatTyped(request2);
+        // Turn 2: Ask about previous context; the session resends turn 1 for us
+        ChatResponse response2 = session.send("What is my name?");
         
         // Assert context retention
         AIResponseValidator.assertResponseComplete(response2);
@@ -118,7 +116,7 @@ public class ChatTests {
             "I drive it to work every day"
         );
         
-        ChatResponse response = ollamaService.continueConversation(
+        ChatResponse response = ollamaService().continueConversation(
             history, 
             "What color is my car?"
         );
@@ -140,7 +138,7 @@ public class ChatTests {
             .temperature(0.1)
             .build();
         
-        ChatResponse response1 = ollamaService.chatTyped(lowTemp);
+        ChatResponse response1 = ollamaService().chatTyped(lowTemp);
         
         // High temperature (creative)
         ChatRequest highTemp = new ChatRequest.Builder()
@@ -149,7 +147,7 @@ public class ChatTests {
             .temperature(1.5)
             .build();
         
-        ChatResponse response2 = ollamaService.chatTyped(highTemp);
+        ChatResponse response2 = ollamaService().chatTyped(highTemp);
         
         // Assert both completed
         AIResponseValidator.assertResponseComplete(response1);
@@ -171,7 +169,7 @@ public class ChatTests {
             .maxTokens(50)  // Limit tokens
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         
@@ -192,7 +190,7 @@ public class ChatTests {
             .addUserMessage("Tell me about the weather")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         AIResponseValidator.assertContainsAnyKeyword(response, 
@@ -208,7 +206,7 @@ public class ChatTests {
             .addUserMessage("Write a Python function to add two numbers")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         AIResponseValidator.assertContainsAllKeywords(response, "def", "return");
@@ -222,7 +220,7 @@ public class ChatTests {
             .addUserMessage("Give me 5 programming languages")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         AIResponseValidator.assertContainsList(response);
@@ -237,7 +235,7 @@ public class ChatTests {
             .addUserMessage("Hi")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         AIResponseValidator.assertResponseTime(response, 10); // 10 seconds max
@@ -253,7 +251,7 @@ public class ChatTests {
             .addUserMessage("Explain AI in one sentence")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         // Verify all performance metrics are present
         Assert.assertNotNull(response.getTotalDuration(), "Total duration missing");
@@ -267,6 +265,13 @@ public class ChatTests {
         System.out.println("Prompt Tokens: " + response.getPromptEvalCount());
         System.out.println("Generated Tokens: " + response.getEvalCount());
         System.out.println("Tokens/Second: " + String.format("%.2f", response.getTokensPerSecond()));
+        
+        // The service records every call in its metrics registry
+        MetricsSnapshot.ModelSnapshot recorded = ollamaService().getMetricsRegistry()
+            .snapshot()
+            .getModel(testModel, Outcome.SUCCESS);
+        Assert.assertNotNull(recorded, "Call should be recorded in metrics");
+        Assert.assertTrue(recorded.getGeneratedTokens() >= response.getEvalCount());
     }
     
     // ==================== ERROR HANDLING ====================
@@ -278,7 +283,7 @@ public class ChatTests {
             .addUserMessage("Hello")
             .build();
         
-        Response response = ollamaService.chat(request);
+        Response response = ollamaService().chat(request);
         
         // Should return error status
         Assert.assertEquals(response.statusCode(), 404, "Should return 404 for invalid model");
@@ -291,7 +296,7 @@ public class ChatTests {
             .addUserMessage("")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         // Model should still respond (likely asking for clarification)
         AIResponseValidator.assertResponseComplete(response);
@@ -312,7 +317,7 @@ public class ChatTests {
             .addUserMessage(longPrompt.toString())
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         Assert.assertTrue(
@@ -328,7 +333,7 @@ public class ChatTests {
             .addUserMessage("What does this mean: @#$%^&*()? Explain simply.")
             .build();
         
-        ChatResponse response = ollamaService.chatTyped(request);
+        ChatResponse response = ollamaService().chatTyped(request);
         
         AIResponseValidator.assertResponseComplete(response);
         AIResponseValidator.assertMinLength(response, 20);
@@ -1,26 +1,27 @@
 package tests;
 
 import io.restassured.response.Response;
+import models.ModelInfo;
 import org.testng.Assert;
 import org.testng.annotations.*;
+import services.ModelCatalog;
 import services.OllamaService;
 
 import java.util.List;
+import java.util.Map;
 
 public class ModelManagementTests {
     
-    private OllamaService ollamaService;
-    
-    @BeforeClass
-    public void setup() {
-        ollamaService = new OllamaService();
+    // Each test thread gets its own service, bound to its shard's node in parallel runs
+    private OllamaService ollamaService() {
+        return TestServices.current();
     }
     
     // ==================== MODEL LISTING TESTS ====================
     
     @Test(priority = 1, description = "Test list all models")
     public void testListModels() {
-        Response response = ollamaService.listModels();
+        Response response = ollamaService().listModels();
         
         // Validate response
         Assert.assertEquals(response.statusCode(), 200, "Should return 200 OK");
@@ -42,7 +43,7 @@ public class ModelManagementTests {
     public void testModelExists() {
         String expectedModel = "llama3.2:3b";
         
-        boolean exists = ollamaService.isModelAvailable(expectedModel);
+        boolean exists = ollamaService().isModelAvailable(expectedModel);
         
         Assert.assertTrue(exists, 
             "Model should be available: " + expectedModel);
@@ -50,7 +51,7 @@ public class ModelManagementTests {
     
     @Test(priority = 3, description = "Test model count")
     public void testModelCount() {
-        int count = ollamaService.getInstalledModelCount();
+        int count = ollamaService().getInstalledModelCount();
         
         System.out.println("Total installed models: " + count);
         Assert.assertTrue(count > 0, "Should have at least one model installed");
@@ -62,7 +63,7 @@ public class ModelManagementTests {
     public void testShowModelDetails() {
         String modelName = "llama3.2:3b";
         
-        Response response = ollamaService.showModel(modelName);
+        Response response = ollamaService().showModel(modelName);
         
         Assert.assertEquals(response.statusCode(), 200, "Should return model details");
         
@@ -78,7 +79,7 @@ public class ModelManagementTests {
     
     @Test(priority = 5, description = "Test show model with invalid name")
     public void testShowInvalidModel() {
-        Response response = ollamaService.showModel("nonexistent-model");
+        Response response = ollamaService().showModel("nonexistent-model");
         
         // Should return error
         Assert.assertEquals(response.statusCode(), 404, 
@@ -89,7 +90,7 @@ public class ModelManagementTests {
     
     @Test(priority = 6, description = "Validate model metadata structure")
     public void testModelMetadata() {
-        Response response = ollamaService.listModels();
+        Response response = ollamaService().listModels();
         
         // Get first model
         String firstName = response.jsonPath().getString("models[0].name");
@@ -109,20 +110,32 @@ public class ModelManagementTests {
     
     @Test(priority = 7, description = "Validate all models have required fields")
     public void testAllModelsHaveRequiredFields() {
-        Response response = ollamaService.listModels();
-        List<String> modelNames = response.jsonPath().getList("models.name");
+        Response response = ollamaService().listModels();
+        // Parse the body once; indexing jsonPath per model re-parses it every time
+        List<Map<String, Object>> models = response.jsonPath().getList("models");
         
-        for (int i = 0; i < modelNames.size(); i++) {
-            String name = response.jsonPath().getString("models[" + i + "].name");
-            String digest = response.jsonPath().getString("models[" + i + "].digest");
-            Long size = response.jsonPath().getLong("models[" + i + "].size");
+        for (int i = 0; i < models.size(); i++) {
+            Map<String, Object> model = models.get(i);
             
-            Assert.assertNotNull(name, "Model name missing at index " + i);
-            Assert.assertNotNull(digest, "Model digest missing at index " + i);
-            Assert.assertNotNull(size, "Model size missing at index " + i);
+            Assert.assertNotNull(model.get("name"), "Model name missing at index " + i);
+            Assert.assertNotNull(model.get("digest"), "Model digest missing at index " + i);
+            Assert.assertNotNull(model.get("size"), "Model size missing at index " + i);
         }
         
-        System.out.println("All " + modelNames.size() + " models have required fields");
+        System.out.println("All " + models.size() + " models have required fields");
+    }
+    
+    @Test(priority = 7, description = "Model catalog answers lookups from one cached listing")
+    public void testModelCatalog() {
+        ModelCatalog catalog = ollamaService().getModelCatalog();
+        catalog.invalidate();
+        
+        ModelInfo model = catalog.find("llama3.2:3b")
+            .orElseThrow(() -> new AssertionError("llama3.2:3b should be in the catalog"));
+        Assert.assertEquals(catalog.findByDigest(model.getDigest()).get().getName(), model.getName());
+        Assert.assertEquals(catalog.size(), ollamaService().getInstalledModelCount());
+        Assert.assertNotNull(catalog.show(model.getName()).get().getTemplate(), "Show data should be cached");
+        Assert.assertFalse(catalog.find("nonexistent-model").isPresent());
     }
     
     // ==================== MODEL COMPARISON TESTS ====================
@@ -134,13 +147,13 @@ public class ModelManagementTests {
         String testPrompt = "What is artificial intelligence? Answer in one sentence.";
         
         for (String model : models) {
-            if (ollamaService.isModelAvailable(model)) {
+            if (ollamaService().isModelAvailable(model)) {
                 models.ChatRequest request = new models.ChatRequest.Builder()
                     .model(model)
                     .addUserMessage(testPrompt)
                     .build();
                 
-                models.ChatResponse response = ollamaService.chatTyped(request);
+                models.ChatResponse response = ollamaService().chatTyped(request);
                 
                 System.out.println("=== " + model + " ===");
                 System.out.println("Response: " + response.getContent());
@@ -0,0 +1,656 @@
+package tests;
+
+import cache.ResponseCache;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import logging.AsyncHttpLogger;
+import logging.LogRingBuffer;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.MetricsSnapshot;
+import metrics.Outcome;
+import models.ChatCodec;
+import models.ChatRequest;
+import models.ChatResponse;
+import models.RequestFingerprint;
+import org.testng.Assert;
+import org.testng.IMethodInstance;
+import org.testng.ITestNGMethod;
+import org.testng.annotations.*;
+import perf.ArrivalProfile;
+import perf.LoadGenerator;
+import perf.LoadReport;
+import perf.MannWhitneyU;
+import perf.PerfBaselineStore;
+import perf.RegressionGate;
+import replay.CassetteStore;
+import replay.Recording;
+import replay.ReplayMode;
+import utils.AIResponseValidator;
+import utils.JsonSchemaCache;
+import utils.KeywordMatcher;
+import utils.RepetitionDetector;
+import utils.SpecBuilder;
+import utils.StructuredOutput;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the load and measurement tooling itself; none of them need a server.
+ */
+public class PerformanceToolingTests {
+    
+    // ==================== HISTOGRAM TESTS ====================
+    
+    @Test(description = "Histogram percentiles stay within bucket precision")
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= 1000; ms++) {
+            histogram.recordValue(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        
+        Assert.assertEquals(histogram.getTotalCount(), 1000);
+        assertWithinPrecision(histogram.getValueAtPercentile(50), 500_000_000L);
+        assertWithinPrecision(histogram.getValueAtPercentile(99), 990_000_000L);
+        assertWithinPrecision(histogram.getValueAtPercentile(99.9), 999_000_000L);
+        Assert.assertEquals(histogram.getMax(), 1_000_000_000L);
+        Assert.assertEquals(histogram.getMin(), 1_000_000L);
+    }
+    
+    @Test(description = "Small values are recorded exactly")
+    public void testHistogramSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(0);
+        histogram.recordValue(7);
+        histogram.recordValue(127);
+        
+        Assert.assertEquals(histogram.getValueAtPercentile(0), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(50), 7);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 127);
+    }
+    
+    @Test(description = "Coordinated omission correction back-fills missed samples")
+    public void testCoordinatedOmissionCorrection() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 99 fast calls, then one 1s stall while a call was due every 10ms
+        for (int i = 0; i < 99; i++) {
+            histogram.recordValueWithExpectedInterval(1_000_000, 10_000_000);
+        }
+        histogram.recordValueWithExpectedInterval(1_000_000_000, 10_000_000);
+        
+        Assert.assertEquals(histogram.getTotalCount(), 199);
+        Assert.assertTrue(histogram.getValueAtPercentile(75) > 100_000_000L,
+            "Stall should show up well below the max once corrected");
+    }
+    
+    // ==================== METRICS REGISTRY TESTS ====================
+    
+    @Test(description = "Registry keeps exact counts under heavy concurrent recording")
+    public void testMetricsRegistryConcurrentRecording() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        int threads = 500;
+        int perThread = 200;
+        ChatResponse response = new ChatResponse();
+        response.setTotalDuration(2_000_000_000L);
+        response.setEvalCount(100);
+        response.setEvalDuration(1_000_000_000L);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                startGate.await();
+                for (int i = 0; i < perThread; i++) {
+                    registry.recordChat("m", Outcome.SUCCESS, 5_000_000L, response);
+                }
+                return null;
+            }));
+        }
+        startGate.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        
+        MetricsSnapshot.ModelSnapshot snapshot = registry.snapshot().getModel("m", Outcome.SUCCESS);
+        Assert.assertEquals(snapshot.getRequests(), threads * perThread);
+        Assert.assertEquals(snapshot.getGeneratedTokens(), 100L * threads * perThread);
+        Assert.assertEquals(snapshot.getClientWallTime().getTotalCount(), threads * perThread);
+        Assert.assertEquals(snapshot.getGenerationTokensPerSecond(50), 100.0, 1.0);
+    }
+    
+    // ==================== LOAD GENERATOR TESTS ====================
+    
+    @Test(description = "Open-loop generator keeps its rate while responses are slow")
+    public void testOpenLoopKeepsArrivalRate() {
+        // Every response takes 200ms; a closed loop of one would manage 5 req/s
+        LoadReport report = new LoadGenerator.Builder()
+            .profile(ArrivalProfile.fixed(50))
+            .duration(Duration.ofSeconds(1))
+            .request(() -> CompletableFuture.supplyAsync(() -> "ok",
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)))
+            .build()
+            .run();
+        
+        Assert.assertTrue(report.getSent() >= 45 && report.getSent() <= 51,
+            "Expected ~50 sends, got " + report.getSent());
+        Assert.assertEquals(report.getSucceeded(), report.getSent());
+        Assert.assertTrue(report.getResponseTimeMillis(50) >= 199, "Median should include the 200ms delay");
+    }
+    
+    @Test(description = "Step profile switches rate per stage")
+    public void testStepProfile() {
+        ArrivalProfile profile = ArrivalProfile.steps(Duration.ofSeconds(1), 10, 100);
+        
+        Assert.assertEquals(profile.nextGapNanos(0), 100_000_000L);
+        Assert.assertEquals(profile.nextGapNanos(1_500_000_000L), 10_000_000L);
+        Assert.assertEquals(profile.nextGapNanos(60_000_000_000L), 10_000_000L);
+    }
+    
+    @Test(description = "Rank-sum test matches textbook values and handles ties")
+    public void testMannWhitneyU() {
+        double[] low = {1, 2, 3, 4, 5};
+        double[] high = {6, 7, 8, 9, 10};
+        MannWhitneyU separated = MannWhitneyU.greater(low, high);
+        Assert.assertEquals(separated.getU(), 25.0);
+        // z = (25 - 12.5 - 0.5) / sqrt(25 * 11 / 12)
+        Assert.assertEquals(separated.getPValue(), 0.0061, 0.0001);
+        Assert.assertEquals(separated.getRankBiserial(), 1.0);
+        Assert.assertTrue(MannWhitneyU.greater(high, low).getPValue() > 0.99);
+        
+        // Ties count half, and all-equal samples are never significant
+        double[] same = {3, 3, 3, 3};
+        MannWhitneyU tied = MannWhitneyU.greater(same, same);
+        Assert.assertEquals(tied.getProbabilityOfSuperiority(), 0.5);
+        Assert.assertEquals(tied.getPValue(), 1.0);
+        Assert.assertEquals(MannWhitneyU.greater(new double[] {1, 2, 3}, new double[] {2, 3, 4}).getU(), 7.0);
+    }
+    
+    @Test(description = "Baselines survive a reopen, keyed by digest")
+    public void testPerfBaselineStore() throws Exception {
+        Path dir = Files.createTempDirectory("baselines");
+        try {
+            Path file = dir.resolve("nested").resolve("perf.bin");
+            PerfBaselineStore store = PerfBaselineStore.open(file);
+            String key = PerfBaselineStore.key("chat", "llama3.2:3b", "abc123");
+            Map<String, double[]> samples = new LinkedHashMap<>();
+            samples.put(RegressionGate.LATENCY_MS, new double[] {812.5, 790.25, 805.0});
+            samples.put(RegressionGate.TOKENS_PER_SECOND, new double[] {41.5, 42.0, 40.75});
+            store.put(key, samples);
+            
+            PerfBaselineStore reopened = PerfBaselineStore.open(file);
+            Assert.assertTrue(reopened.contains(key));
+            Assert.assertFalse(reopened.contains(PerfBaselineStore.key("chat", "llama3.2:3b", "def456")));
+            Assert.assertEquals(reopened.get(key, RegressionGate.LATENCY_MS), new double[] {812.5, 790.25, 805.0});
+            Assert.assertEquals(reopened.get(key, RegressionGate.TOKENS_PER_SECOND), new double[] {41.5, 42.0, 40.75});
+            Assert.assertNull(reopened.get(key, "unknown"));
+            // Header, key, and per metric a name, a count and 4 bytes a sample
+            Assert.assertTrue(Files.size(file) < 100, "File is " + Files.size(file) + " bytes");
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    // ==================== CODEC TESTS ====================
+    
+    @Test(description = "Codec reads consecutive NDJSON chunks and skips unknown fields")
+    public void testCodecReadsStreamChunks() throws Exception {
+        String ndjson = "{\"model\":\"m\",\"message\":{\"role\":\"assistant\",\"content\":\"Hel\",\"images\":null},"
+            + "\"extra\":{\"nested\":[1,2]},\"done\":false}\n"
+            + "{\"model\":\"m\",\"message\":{\"role\":\"assistant\",\"content\":\"lo\"},\"done\":true,"
+            + "\"eval_count\":2,\"total_duration\":123}\n";
+        
+        try (JsonParser parser = ChatCodec.createStreamParser(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)))) {
+            ChatResponse first = ChatCodec.readResponse(parser);
+            ChatResponse second = ChatCodec.readResponse(parser);
+            
+            Assert.assertEquals(first.getContent(), "Hel");
+            Assert.assertFalse(first.getDone());
+            Assert.assertEquals(second.getContent(), "lo");
+            Assert.assertTrue(second.getDone());
+            Assert.assertEquals(second.getEvalCount(), Integer.valueOf(2));
+            Assert.assertEquals(second.getTotalDuration(), Long.valueOf(123));
+            Assert.assertNull(ChatCodec.readResponse(parser), "End of input should return null");
+        }
+    }
+    
+    // ==================== RESPONSE CACHE TESTS ====================
+    
+    @Test(description = "Fingerprint ignores how a request was built but not what it asks")
+    public void testRequestFingerprint() {
+        ChatRequest request = new ChatRequest.Builder()
+            .model("m").addUserMessage("What is 2+2?").temperature(0.0).build();
+        ChatRequest rebuilt = request.toBuilder().stream(true).build();
+        ChatRequest reworded = new ChatRequest.Builder()
+            .model("m").addUserMessage("What is 2+3?").temperature(0.0).build();
+        
+        Assert.assertTrue(request.isDeterministic());
+        Assert.assertEquals(RequestFingerprint.of(rebuilt, "sha256:a"), RequestFingerprint.of(request, "sha256:a"));
+        Assert.assertNotEquals(RequestFingerprint.of(request, "sha256:b"), RequestFingerprint.of(request, "sha256:a"));
+        Assert.assertNotEquals(RequestFingerprint.of(reworded, "sha256:a"), RequestFingerprint.of(request, "sha256:a"));
+    }
+    
+    @Test(description = "Evicted entries are served from the disk tier")
+    public void testResponseCacheTiers() throws Exception {
+        Path dir = Files.createTempDirectory("response-cache");
+        try {
+            ResponseCache cache = new ResponseCache(1, dir);
+            String first = RequestFingerprint.of(
+                new ChatRequest.Builder().model("m").addUserMessage("a").seed(7).build(), null);
+            String second = RequestFingerprint.of(
+                new ChatRequest.Builder().model("m").addUserMessage("b").seed(7).build(), null);
+            
+            cache.put(first, ChatCodec.readResponse("{\"message\":{\"content\":\"A\"},\"done\":true}"
+                .getBytes(StandardCharsets.UTF_8)));
+            cache.put(second, ChatCodec.readResponse("{\"message\":{\"content\":\"B\"},\"done\":true}"
+                .getBytes(StandardCharsets.UTF_8)));
+            
+            Assert.assertEquals(cache.getMemorySize(), 1);
+            Assert.assertEquals(cache.get(second).getContent(), "B");
+            Assert.assertEquals(cache.get(first).getContent(), "A");
+            Assert.assertEquals(cache.getMemoryHits(), 1);
+            Assert.assertEquals(cache.getDiskHits(), 1);
+            Assert.assertEquals(new ResponseCache(8, dir).get(second).getContent(), "B", "Disk tier should outlive the process cache");
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    // ==================== CASSETTE TESTS ====================
+    
+    @Test(description = "Cassette replays recordings across segments, in recording order")
+    public void testCassetteRecordAndReplay() throws Exception {
+        Path dir = Files.createTempDirectory("cassette");
+        try {
+            byte[] question = "{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],\"stream\":false}"
+                .getBytes(StandardCharsets.UTF_8);
+            try (CassetteStore recorder = new CassetteStore(dir, ReplayMode.RECORD, 4096)) {
+                for (int i = 0; i < 200; i++) {
+                    recorder.record("GET", "/api/tags/" + i, null, Recording.of(200, "application/json", bytes("tags " + i)));
+                }
+                recorder.record("POST", "/api/chat", question, Recording.of(200, "application/json", bytes("first")));
+                recorder.record("POST", "/api/chat", question, Recording.of(200, "application/json", bytes("second")));
+                recorder.record("POST", "/api/chat", bytes("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],\"stream\":true}"),
+                    new Recording(200, "application/x-ndjson", Arrays.asList(bytes("a\n"), bytes("b\n")), new long[] {5, 7}));
+            }
+            Assert.assertTrue(Files.exists(dir.resolve("segment-000002.log")), "Small segments should roll over");
+            
+            try (CassetteStore player = new CassetteStore(dir, ReplayMode.REPLAY)) {
+                Assert.assertEquals(text(player.replay("GET", "/api/tags/137", null)), "tags 137");
+                // Same request, reformatted: keyed by fingerprint, replayed in order, then cycled
+                byte[] reformatted = "{ \"stream\": false, \"model\": \"m\", \"messages\": [ {\"content\":\"hi\",\"role\":\"user\"} ] }"
+                    .getBytes(StandardCharsets.UTF_8);
+                Assert.assertEquals(text(player.replay("POST", "/api/chat", reformatted)), "first");
+                Assert.assertEquals(text(player.replay("POST", "/api/chat", question)), "second");
+                Assert.assertEquals(text(player.replay("POST", "/api/chat", question)), "first");
+                Assert.expectThrows(IllegalStateException.class, () -> player.replay("GET", "/api/ps", null));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    @Test(description = "Lost index is rebuilt and a torn tail is cut off")
+    public void testCassetteRecovery() throws Exception {
+        Path dir = Files.createTempDirectory("cassette");
+        try {
+            try (CassetteStore recorder = new CassetteStore(dir, ReplayMode.RECORD)) {
+                recorder.record("GET", "/api/tags", null, Recording.of(200, "application/json", bytes("kept")));
+            }
+            Path segment = dir.resolve("segment-000001.log");
+            long intact = Files.size(segment);
+            Files.write(segment, new byte[] {0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+            Files.delete(dir.resolve("index.bin"));
+            
+            try (CassetteStore player = new CassetteStore(dir, ReplayMode.REPLAY)) {
+                Assert.assertEquals(player.size(), 1);
+                Assert.assertEquals(text(player.replay("GET", "/api/tags", null)), "kept");
+            }
+            Assert.assertEquals(Files.size(segment), intact);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    @Test(description = "Index rebuilt past its initial size is saved with a current header")
+    public void testCassetteRebuildGrowsIndex() throws Exception {
+        Path dir = Files.createTempDirectory("cassette");
+        try {
+            // Over half of the 1024 initial slots, so the rebuild has to grow the table
+            try (CassetteStore recorder = new CassetteStore(dir, ReplayMode.RECORD)) {
+                for (int i = 0; i < 600; i++) {
+                    recorder.record("GET", "/api/tags/" + i, null, Recording.of(200, "application/json", bytes("tags " + i)));
+                }
+            }
+            Files.delete(dir.resolve("index.bin"));
+            
+            try (CassetteStore recorder = new CassetteStore(dir, ReplayMode.RECORD)) {
+                Assert.assertEquals(recorder.size(), 600);
+                recorder.record("GET", "/api/ps", null, Recording.of(200, "application/json", bytes("running")));
+            }
+            Assert.assertFalse(Files.exists(dir.resolve("index.bin.tmp")));
+            Assert.assertFalse(Files.exists(dir.resolve("index.bin.grow")));
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("index.bin")));
+            Assert.assertEquals(header.getInt(4), 2048, "slots");
+            Assert.assertEquals(header.getInt(8), 601, "size");
+            Assert.assertEquals(header.getInt(12), 1, "segment");
+            Assert.assertEquals(header.getLong(16), Files.size(dir.resolve("segment-000001.log")), "segment end");
+            
+            try (CassetteStore player = new CassetteStore(dir, ReplayMode.REPLAY)) {
+                Assert.assertEquals(player.size(), 601);
+                Assert.assertEquals(text(player.replay("GET", "/api/tags/599", null)), "tags 599");
+                Assert.assertEquals(text(player.replay("GET", "/api/ps", null)), "running");
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    @Test(description = "Keyword matcher reports overlapping, case-insensitive hits in one pass")
+    public void testKeywordMatcher() {
+        KeywordMatcher matcher = KeywordMatcher.compile("he", "she", "hers", "Straße", "absent");
+        String text = "USHERS walk to STRASSE or straße";
+        
+        List<KeywordMatcher.Match> matches = matcher.findAll(text);
+        Assert.assertEquals(matches.toString(), "['she'@1, 'he'@2, 'hers'@2, 'Straße'@26]");
+        Assert.assertEquals(text.substring(matches.get(2).getStart(), matches.get(2).getEnd()), "HERS");
+        Assert.assertTrue(matcher.containsAny(text));
+        Assert.assertEquals(matcher.findMissing(text), Arrays.asList("absent"));
+        Assert.assertFalse(matcher.containsAll(text));
+        Assert.assertFalse(matcher.containsAny("nothing to see"));
+    }
+    
+    @Test(description = "Repetition detector finds repeats and loops the same way when streamed")
+    public void testRepetitionDetector() {
+        String text = "The sky is blue.  Grass is green! The   sky is blue. Wait... "
+            + "and then it said over and over and over and over and over and over";
+        
+        RepetitionDetector.Report whole = RepetitionDetector.analyze(text);
+        Assert.assertEquals(whole.getSentenceCount(), 5);
+        Assert.assertEquals(whole.getRepeatedSentenceCount(), 1);
+        Assert.assertEquals(whole.getFirstRepeatedSentence(), "The sky is blue");
+        Assert.assertTrue(whole.isLooping(), whole.toString());
+        Assert.assertEquals(whole.getLoopPeriod(), 2);
+        Assert.assertEquals(whole.getLoopRepeats(), 5);
+        Assert.assertTrue(whole.getRepetitionRatio() > 0.25, whole.toString());
+        
+        RepetitionDetector streamed = new RepetitionDetector();
+        for (int i = 0; i < text.length(); i += 3) {
+            streamed.append(text.substring(i, Math.min(text.length(), i + 3)));
+        }
+        Assert.assertEquals(streamed.finish().toString(), whole.toString());
+        
+        RepetitionDetector.Report clean = RepetitionDetector.analyze("One idea here. Another one there! Done?");
+        Assert.assertFalse(clean.hasRepeatedSentences());
+        Assert.assertFalse(clean.isLooping());
+        Assert.assertEquals(clean.getRepetitionRatio(), 0.0);
+    }
+    
+    @Test(description = "JSON checks reject near-JSON and report schema violations")
+    public void testStructuredOutput() throws Exception {
+        Assert.assertNull(StructuredOutput.findSyntaxError(" {\"a\": [1, 2, {\"b\": null}]}\n"));
+        Assert.assertNotNull(StructuredOutput.findSyntaxError("{\"a\": 1,}"));
+        Assert.assertNotNull(StructuredOutput.findSyntaxError("{'a': 1}"));
+        Assert.assertNotNull(StructuredOutput.findSyntaxError("[1, 2] and some prose ]"));
+        Assert.assertNotNull(StructuredOutput.findSyntaxError("{\"a\": 1} {\"b\": 2}"));
+        Assert.assertNotNull(StructuredOutput.findSyntaxError("42"));
+        
+        String schemaJson = "{\"type\":\"object\",\"required\":[\"name\",\"age\"],"
+            + "\"properties\":{\"name\":{\"type\":\"string\"},\"age\":{\"type\":\"integer\",\"minimum\":0}}}";
+        JsonSchemaCache cache = new JsonSchemaCache();
+        List<CompletableFuture<Object>> compiles = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            compiles.add(CompletableFuture.supplyAsync(() -> cache.fromJson(schemaJson)));
+        }
+        Object schema = compiles.get(0).get();
+        for (CompletableFuture<Object> compile : compiles) {
+            Assert.assertSame(compile.get(), schema, "Every thread should share one compiled schema");
+        }
+        Assert.assertEquals(cache.size(), 1);
+        
+        Assert.assertEquals(StructuredOutput.validate("{\"name\":\"Ada\",\"age\":36}", cache.fromJson(schemaJson)),
+            new ArrayList<String>());
+        List<String> errors = StructuredOutput.validate("{\"name\":\"Ada\",\"age\":-1}", cache.fromJson(schemaJson));
+        Assert.assertEquals(errors.size(), 1, errors.toString());
+        Assert.assertTrue(errors.get(0).startsWith("/age: "), errors.get(0));
+        Assert.assertEquals(StructuredOutput.validate("{\"name\":", cache.fromJson(schemaJson)).size(), 1);
+        
+        ChatRequest request = new ChatRequest.Builder().model("m").addUserMessage("hi").jsonMode().build();
+        Assert.assertTrue(new String(ChatCodec.writeRequest(request), StandardCharsets.UTF_8).contains("\"format\":\"json\""));
+        Assert.assertNotEquals(RequestFingerprint.of(request, null),
+            RequestFingerprint.of(request.toBuilder().format(null).build(), null));
+    }
+    
+    @Test(description = "Schemas with draft 2019+ keywords pass valid output; only errors count as violations")
+    public void testSchemaWarningsAreNotViolations() throws Exception {
+        // As pydantic emits it: $defs is unknown to draft 4 and only draws a warning
+        String schemaJson = "{\"$defs\":{\"Address\":{\"type\":\"object\",\"required\":[\"city\"],"
+            + "\"properties\":{\"city\":{\"type\":\"string\"}}}},"
+            + "\"type\":\"object\",\"required\":[\"name\",\"address\"],"
+            + "\"properties\":{\"name\":{\"type\":\"string\"},\"address\":{\"$ref\":\"#/$defs/Address\"}}}";
+        JsonSchema schema = new JsonSchemaCache().fromJson(schemaJson);
+        ChatResponse valid = jsonResponse("{\"name\":\"Ada\",\"address\":{\"city\":\"London\"}}");
+        ChatResponse invalid = jsonResponse("{\"name\":\"Ada\",\"address\":{}}");
+        
+        ProcessingReport report = schema.validate(ChatCodec.mapper().readTree(valid.getContent()), true);
+        Assert.assertTrue(report.isSuccess());
+        Assert.assertTrue(report.iterator().hasNext(), "Draft 4 should warn about $defs");
+        Assert.assertEquals(StructuredOutput.validate(valid.getContent(), schema), new ArrayList<String>());
+        AIResponseValidator.assertMatchesSchema(valid, schema);
+        
+        List<String> errors = StructuredOutput.validate(invalid.getContent(), schema);
+        Assert.assertEquals(errors.size(), 1, errors.toString());
+        Assert.assertTrue(errors.get(0).startsWith("/address: "), errors.get(0));
+        Assert.expectThrows(AssertionError.class, () -> AIResponseValidator.assertMatchesSchema(invalid, schema));
+    }
+    
+    // ==================== LOGGING TESTS ====================
+    
+    @Test(description = "Ring buffer hands over every item from many producers, and rejects when full")
+    public void testLogRingBuffer() throws Exception {
+        LogRingBuffer<Integer> ring = new LogRingBuffer<>(1000);
+        Assert.assertEquals(ring.getCapacity(), 1024);
+        for (int i = 0; i < 1024; i++) {
+            Assert.assertTrue(ring.offer(i));
+        }
+        Assert.assertFalse(ring.offer(-1), "Full ring should reject");
+        Assert.assertEquals(ring.poll(), Integer.valueOf(0));
+        Assert.assertTrue(ring.offer(1024), "A freed slot is reused");
+        
+        int producers = 4;
+        int perProducer = 20_000;
+        LogRingBuffer<Integer> shared = new LogRingBuffer<>(256);
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                pool.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        // Yield rather than spin, so the consumer gets a core on small machines
+                        while (!shared.offer(base + i)) {
+                            Thread.yield();
+                        }
+                    }
+                });
+            }
+            boolean[] seen = new boolean[producers * perProducer];
+            int[] last = new int[producers];
+            Arrays.fill(last, -1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            for (int received = 0; received < seen.length; ) {
+                Integer item = shared.poll();
+                if (item == null) {
+                    Assert.assertTrue(System.nanoTime() < deadline, "Only " + received + " items arrived");
+                    Thread.yield();
+                    continue;
+                }
+                Assert.assertFalse(seen[item], "Duplicate " + item);
+                seen[item] = true;
+                // Each producer's items come out in the order it offered them
+                Assert.assertTrue(item % perProducer > last[item / perProducer]);
+                last[item / perProducer] = item % perProducer;
+                received++;
+            }
+            Assert.assertTrue(shared.isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    @Test(description = "HTTP logger always logs errors and slow calls, samples the rest and truncates bodies")
+    public void testAsyncHttpLogger() {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        long slowNanos = TimeUnit.MILLISECONDS.toNanos(500);
+        try (AsyncHttpLogger logger = new AsyncHttpLogger(new PrintStream(printed, true), 16, 0.0, 10, 500)) {
+            Assert.assertEquals(logger.reasonToLog(500, 0), "error");
+            Assert.assertEquals(logger.reasonToLog(0, 0), "error");
+            Assert.assertEquals(logger.reasonToLog(200, slowNanos), "slow");
+            Assert.assertNull(logger.reasonToLog(200, slowNanos - 1), "Sample rate 0 logs nothing else");
+            
+            logger.log(new AsyncHttpLogger.Entry("POST", "http://host/api/chat", "{\"model\":\"m\",\"messages\":[]}",
+                503, bytes("busy"), null, slowNanos, "error"));
+            for (int i = 0; i < 100; i++) {
+                logger.log(new AsyncHttpLogger.Entry("GET", "http://host/api/tags", null, 200, null, null, 0, "sampled"));
+            }
+            // A 16-slot ring may overflow while the writer is busy; overflow is counted, never waited for
+            Assert.assertTrue(logger.getWrittenCount() + logger.getDroppedCount() <= 101);
+        }
+        String log = new String(printed.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(log.startsWith("POST http://host/api/chat -> 503 in 500 ms (error)\n"), log);
+        Assert.assertTrue(log.contains("  > {\"model\":\"... (17 more chars)\n"), log);
+        Assert.assertTrue(log.contains("  < busy\n"), log);
+        
+        AsyncHttpLogger sampled = new AsyncHttpLogger(System.out, 16, 0.5, 100, 0);
+        try {
+            int logged = 0;
+            for (int i = 0; i < 10_000; i++) {
+                if (sampled.reasonToLog(200, Long.MAX_VALUE) != null) {
+                    logged++;
+                }
+            }
+            Assert.assertTrue(logged > 4_500 && logged < 5_500, "Sampled " + logged + " of 10000 at 0.5");
+        } finally {
+            sampled.close();
+        }
+    }
+    
+    // ==================== PARALLEL SUITE TESTS ====================
+    
+    @Test(description = "Shard scheduler pairs models with nodes and interleaves the shards")
+    public void testShardScheduling() {
+        List<IMethodInstance> methods = Arrays.asList(
+            method("a1", "model:a"), method("a2", "model:a"), method("a3", "model:a"),
+            method("b1", "model:b"), method("d1"), method("d2"));
+        
+        // More models than nodes: models share nodes, each model stays on one
+        List<ShardScheduler.Shard> shards = ShardScheduler.shard(methods, Arrays.asList("n1", "n2"), "d");
+        Assert.assertEquals(shards.toString(),
+            "[a@n1 (3 methods), b@n2 (1 methods), d@n1 (2 methods)]");
+        
+        // More nodes than models: a model's methods are dealt across its nodes, in order
+        shards = ShardScheduler.shard(methods.subList(0, 3), Arrays.asList("n1", "n2"), "d");
+        Assert.assertEquals(shards.toString(), "[a@n1 (2 methods), a@n2 (1 methods)]");
+        Assert.assertEquals(shards.get(0).methods.get(1).getMethod().getMethodName(), "a3");
+        
+        // Interleaved so neighbours target different shards
+        List<String> order = new ArrayList<>();
+        for (IMethodInstance method : new ShardScheduler().intercept(methods, null)) {
+            order.add(method.getMethod().getMethodName());
+        }
+        Assert.assertEquals(order.subList(0, 3), Arrays.asList("a1", "b1", "d1"));
+        Assert.assertEquals(order.size(), methods.size());
+    }
+    
+    @Test(description = "Shared specs are built once when first requested from many threads")
+    public void testSpecsInitialiseOnce() throws Exception {
+        SpecBuilder.resetSpecs();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(8);
+            List<Future<Object>> specs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                specs.add(pool.submit(() -> {
+                    barrier.await();
+                    return SpecBuilder.getRequestSpec();
+                }));
+            }
+            for (Future<Object> spec : specs) {
+                Assert.assertSame(spec.get(10, TimeUnit.SECONDS), SpecBuilder.getRequestSpec());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    // ==================== HELPER METHODS ====================
+    
+    private void assertWithinPrecision(long actual, long expected) {
+        double error = Math.abs(actual - expected) / (double) expected;
+        Assert.assertTrue(error < 0.01,
+            String.format("Expected ~%d, got %d (%.2f%% off)", expected, actual, error * 100));
+    }
+    
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    // A finished response whose content is the given text
+    private static ChatResponse jsonResponse(String content) throws IOException {
+        ObjectNode body = ChatCodec.mapper().createObjectNode().put("done", true);
+        body.putObject("message").put("role", "assistant").put("content", content);
+        return ChatCodec.readResponse(ChatCodec.mapper().writeValueAsBytes(body));
+    }
+    
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String text(Recording recording) {
+        return new String(recording.getBody(), StandardCharsets.UTF_8);
+    }
+    
+    // A bare test method with the given name and groups, for the scheduler
+    private static IMethodInstance method(String name, String... groups) {
+        ITestNGMethod method = (ITestNGMethod) Proxy.newProxyInstance(ITestNGMethod.class.getClassLoader(),
+            new Class<?>[] {ITestNGMethod.class}, (proxy, called, args) -> {
+                switch (called.getName()) {
+                    case "getMethodName": return name;
+                    case "getQualifiedName": return "tests.Fake." + name;
+                    case "getGroups": return groups;
+                    case "toString": return name;
+                    default: throw new UnsupportedOperationException(called.getName());
+                }
+            });
+        return (IMethodInstance) Proxy.newProxyInstance(IMethodInstance.class.getClassLoader(),
+            new Class<?>[] {IMethodInstance.class}, (proxy, called, args) -> {
+                if (called.getName().equals("getMethod")) {
+                    return method;
+                }
+                throw new UnsupportedOperationException(called.getName());
+            });
+    }
+}
@@ -0,0 +1,155 @@
+package tests;
+
+import config.OllamaConfig;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Orders test methods for a parallel run so that neighbouring methods, which the
+ * thread pool picks up at the same time, target different models and nodes.
+ *
+ * <p>A method targets the model named by a {@code model:<name>} group, or the default
+ * model. Models and nodes ({@code base.uris}) are paired into shards: with more models
+ * than nodes, models share a node; with more nodes than models, a model's methods are
+ * dealt across several nodes. Either way each model only has to be resident on its own
+ * nodes. The shards are then interleaved, and while a method runs its thread is bound
+ * to the shard's node through {@link TestServices}.
+ *
+ * <p>Register it as a listener in the suite, as {@code testng-parallel.xml} does.
+ */
+public class ShardScheduler implements IMethodInterceptor, IInvokedMethodListener {
+
+    public static final String MODEL_GROUP_PREFIX = "model:";
+
+    // Node assigned to each method by the last intercept, by qualified name
+    private static final ConcurrentHashMap<String, String> NODES = new ConcurrentHashMap<>();
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (methods.isEmpty()) {
+            return methods;
+        }
+        List<String> nodes = OllamaConfig.getInstance().getBaseUris();
+        List<Shard> shards = shard(methods, nodes, OllamaConfig.getInstance().getDefaultModel());
+        // With a single node the default transport already points at it
+        boolean bindNodes = nodes.size() > 1;
+        List<IMethodInstance> ordered = new ArrayList<>(methods.size());
+        for (int round = 0; ordered.size() < methods.size(); round++) {
+            for (Shard shard : shards) {
+                if (round < shard.methods.size()) {
+                    IMethodInstance method = shard.methods.get(round);
+                    if (bindNodes) {
+                        NODES.put(method.getMethod().getQualifiedName(), shard.node);
+                    }
+                    ordered.add(method);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Splits the methods into shards, each a model on one node, keeping the incoming
+     * order within a shard. Shards come out in model order.
+     */
+    static List<Shard> shard(List<IMethodInstance> methods, List<String> nodes, String defaultModel) {
+        Map<String, List<IMethodInstance>> byModel = new LinkedHashMap<>();
+        for (String model : new TreeSet<>(modelsOf(methods, defaultModel))) {
+            byModel.put(model, new ArrayList<>());
+        }
+        for (IMethodInstance method : methods) {
+            byModel.get(targetModel(method.getMethod(), defaultModel)).add(method);
+        }
+
+        List<String> models = new ArrayList<>(byModel.keySet());
+        int pairs = Math.max(models.size(), nodes.size());
+        Map<String, List<Shard>> shardsByModel = new LinkedHashMap<>();
+        for (int i = 0; i < pairs; i++) {
+            String model = models.get(i % models.size());
+            shardsByModel.computeIfAbsent(model, m -> new ArrayList<>())
+                .add(new Shard(model, nodes.get(i % nodes.size())));
+        }
+
+        List<Shard> shards = new ArrayList<>();
+        for (Map.Entry<String, List<Shard>> entry : shardsByModel.entrySet()) {
+            List<Shard> modelShards = entry.getValue();
+            List<IMethodInstance> modelMethods = byModel.get(entry.getKey());
+            for (int i = 0; i < modelMethods.size(); i++) {
+                modelShards.get(i % modelShards.size()).methods.add(modelMethods.get(i));
+            }
+            for (Shard shard : modelShards) {
+                if (!shard.methods.isEmpty()) {
+                    shards.add(shard);
+                }
+            }
+        }
+        return shards;
+    }
+
+    private static List<String> modelsOf(List<IMethodInstance> methods, String defaultModel) {
+        List<String> models = new ArrayList<>();
+        for (IMethodInstance method : methods) {
+            models.add(targetModel(method.getMethod(), defaultModel));
+        }
+        return models;
+    }
+
+    static String targetModel(ITestNGMethod method, String defaultModel) {
+        for (String group : method.getGroups()) {
+            if (group.startsWith(MODEL_GROUP_PREFIX)) {
+                return group.substring(MODEL_GROUP_PREFIX.length());
+            }
+        }
+        return defaultModel;
+    }
+
+    // ==================== THREAD BINDING ====================
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        if (method.isTestMethod()) {
+            String node = NODES.get(method.getTestMethod().getQualifiedName());
+            if (node != null) {
+                TestServices.bind(node);
+            }
+        }
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        if (method.isTestMethod()) {
+            TestServices.unbind();
+        }
+    }
+
+    // ==================== SHARD ====================
+
+    static final class Shard {
+        final String model;
+        final String node;
+        final List<IMethodInstance> methods = new ArrayList<>();
+
+        Shard(String model, String node) {
+            this.model = Objects.requireNonNull(model);
+            this.node = Objects.requireNonNull(node);
+        }
+
+        @Override
+        public String toString() {
+            return model + "@" + node + " (" + methods.size() + " methods)";
+        }
+    }
+}
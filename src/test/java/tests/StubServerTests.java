@@ -0,0 +1,1106 @@
+package tests;
+
+import batch.BatchCheckpoint;
+import batch.BatchRunner;
+import batch.BatchSummary;
+import cache.ResponseCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import config.OllamaConfig;
+import io.restassured.response.Response;
+import metrics.MetricsRegistry;
+import metrics.Outcome;
+import models.ChatRequest;
+import models.ChatResponse;
+import org.testng.Assert;
+import org.testng.annotations.*;
+import perf.PerfBaselineStore;
+import perf.RegressionGate;
+import perf.RegressionReport;
+import services.AdaptiveLimiter;
+import services.ChatStreamListener;
+import services.ConversationSession;
+import services.HistoryPolicy;
+import services.ModelCatalog;
+import services.ModelResidencyManager;
+import services.OllamaService;
+import services.RequestCoalescer;
+import services.RetryPolicy;
+import stub.Distribution;
+import stub.OllamaStubServer;
+import transport.CircuitBreaker;
+import transport.NodePoolTransport;
+import transport.OllamaTransport;
+import transport.PooledHttpTransport;
+import transport.StreamingResponse;
+import transport.TransportResponse;
+import utils.StreamingValidator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Runs the client against the embedded stub server; no Ollama needed.
+ */
+public class StubServerTests {
+    
+    private OllamaStubServer stub;
+    private PooledHttpTransport transport;
+    private OllamaService service;
+    
+    @BeforeClass
+    public void setup() {
+        stub = new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .promptTokensPerSecond(Distribution.constant(100_000))
+            .tokensPerSecond(Distribution.constant(1000))
+            .responder(question -> "Paris is the capital of France.")
+            .maxConcurrency(64)
+            .seed(42)
+            .build()
+            .start();
+        transport = new PooledHttpTransport(stub.getBaseUri(), 1000, 5000, 64);
+        service = new OllamaService(transport);
+    }
+    
+    @AfterClass(alwaysRun = true)
+    public void tearDown() {
+        transport.close();
+        stub.close();
+    }
+    
+    // ==================== ENDPOINT TESTS ====================
+    
+    @Test(description = "Non-streaming chat returns the reply and Ollama's timing fields")
+    public void testChat() {
+        ChatResponse response = service.chatTyped(request());
+        
+        Assert.assertEquals(response.getContent(), "Paris is the capital of France.");
+        Assert.assertTrue(response.getDone());
+        Assert.assertEquals(response.getEvalCount(), Integer.valueOf(6));
+        Assert.assertEquals(response.getEvalDuration(), Long.valueOf(6_000_000L), "6 tokens at 1000 tok/s");
+        Assert.assertTrue(response.getTotalDuration() >= response.getEvalDuration());
+    }
+    
+    @Test(description = "Streaming chat delivers one chunk per token")
+    public void testStreamingChat() {
+        List<String> deltas = new ArrayList<>();
+        ChatResponse response = service.chatStream(request(), deltas::add);
+        
+        Assert.assertEquals(deltas.size(), 6);
+        Assert.assertEquals(String.join("", deltas), "Paris is the capital of France.");
+        Assert.assertTrue(response.getStreamTimings().hasFirstToken());
+    }
+    
+    @Test(description = "Model endpoints answer like Ollama")
+    public void testModelEndpoints() {
+        Assert.assertTrue(service.isModelAvailable("stub-model:1b"));
+        Assert.assertEquals(service.getInstalledModelCount(), 1);
+        
+        Response show = given().baseUri(stub.getBaseUri()).contentType("application/json")
+            .body("{\"name\":\"stub-model:1b\"}").post("/api/show");
+        Assert.assertEquals(show.statusCode(), 200);
+        Assert.assertNotNull(show.jsonPath().getString("modelfile"));
+        
+        Response missing = given().baseUri(stub.getBaseUri()).contentType("application/json")
+            .body("{\"name\":\"nonexistent-model\"}").post("/api/show");
+        Assert.assertEquals(missing.statusCode(), 404);
+    }
+    
+    @Test(description = "Unknown models and malformed bodies are rejected")
+    public void testChatErrors() {
+        TransportResponse unknown = transport.post("/api/chat",
+            "{\"model\":\"nope\",\"messages\":[],\"stream\":false}".getBytes());
+        TransportResponse malformed = transport.post("/api/chat", "{\"model\": [}".getBytes());
+        
+        Assert.assertEquals(unknown.getStatusCode(), 404);
+        Assert.assertEquals(malformed.getStatusCode(), 400);
+    }
+    
+    // ==================== BEHAVIOUR TESTS ====================
+    
+    @Test(description = "Error injection fails the configured share of requests")
+    public void testErrorInjection() {
+        try (OllamaStubServer failing = new OllamaStubServer.Builder()
+                .model("stub-model:1b").errorRate(1.0).errorStatus(503).build().start();
+             PooledHttpTransport failingTransport = new PooledHttpTransport(failing.getBaseUri(), 1000, 5000, 4)) {
+            TransportResponse response = failingTransport.post("/api/chat",
+                "{\"model\":\"stub-model:1b\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],\"stream\":false}".getBytes());
+            
+            Assert.assertEquals(response.getStatusCode(), 503);
+            Assert.assertTrue(response.getBodyAsString().contains("injected failure"));
+        }
+    }
+    
+    @Test(description = "Requests beyond max concurrency queue for a slot")
+    public void testConcurrencyQueue() {
+        try (OllamaStubServer narrow = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .responseTokens(Distribution.constant(10))
+                .tokensPerSecond(Distribution.constant(100))
+                .maxConcurrency(2)
+                .build().start();
+             PooledHttpTransport narrowTransport = new PooledHttpTransport(narrow.getBaseUri(), 1000, 5000, 16)) {
+            OllamaService narrowService = new OllamaService(narrowTransport);
+            
+            long start = System.nanoTime();
+            List<CompletableFuture<ChatResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(narrowService.chatAsync(request().toBuilder().model("stub-model:1b").build()));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            // 6 requests of 100ms each, two at a time: three waves
+            Assert.assertTrue(elapsedMillis >= 290, "Expected ~300ms of queueing, took " + elapsedMillis + "ms");
+        }
+    }
+    
+    @Test(description = "Node pool spreads concurrent requests evenly and scales throughput")
+    public void testNodePoolSpreadsLoad() {
+        try (OllamaStubServer first = narrowStub(); OllamaStubServer second = narrowStub();
+             PooledHttpTransport single = new PooledHttpTransport(first.getBaseUri(), 1000, 5000, 16);
+             NodePoolTransport pool = new NodePoolTransport.Builder()
+                 .node("first", new PooledHttpTransport(first.getBaseUri(), 1000, 5000, 16))
+                 .node("second", new PooledHttpTransport(second.getBaseUri(), 1000, 5000, 16))
+                 .build()) {
+            long singleMillis = runConcurrently(new OllamaService(single), 8);
+            long before = first.getRequestCount();
+            long poolMillis = runConcurrently(new OllamaService(pool), 8);
+            
+            Assert.assertEquals(first.getRequestCount() - before, 4);
+            Assert.assertEquals(second.getRequestCount(), 4);
+            // One slot per host: two hosts should take about half as long
+            Assert.assertTrue(poolMillis < singleMillis * 0.75,
+                "Pool took " + poolMillis + "ms against " + singleMillis + "ms on one node");
+            for (NodePoolTransport.Node node : pool.getNodes()) {
+                Assert.assertEquals(node.getOutstanding(), 0);
+                Assert.assertTrue(node.getBytesPerSecond() > 0);
+            }
+        }
+    }
+    
+    @Test(description = "Node pool ejects a failing node and routes around a dead one")
+    public void testNodePoolEjectsBadNodes() {
+        OllamaStubServer dead = new OllamaStubServer.Builder().model("stub-model:1b").build().start();
+        String deadUri = dead.getBaseUri();
+        dead.close();
+        try (OllamaStubServer failing = new OllamaStubServer.Builder()
+                .model("stub-model:1b").errorRate(1.0).errorStatus(500).build().start();
+             NodePoolTransport pool = new NodePoolTransport.Builder()
+                 .node("good", new PooledHttpTransport(stub.getBaseUri(), 1000, 5000, 8))
+                 .node("failing", new PooledHttpTransport(failing.getBaseUri(), 1000, 5000, 8))
+                 .node("dead", new PooledHttpTransport(deadUri, 200, 1000, 8))
+                 .breaker(2, 0, 60_000)
+                 .build()) {
+            pool.probeAll();
+            NodePoolTransport.Node deadNode = pool.getNodes().get(2);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (deadNode.isHealthy() && System.currentTimeMillis() < deadline) {
+                Thread.onSpinWait();
+            }
+            Assert.assertFalse(deadNode.isHealthy());
+            
+            OllamaService poolService = new OllamaService(pool);
+            int failures = 0;
+            for (int i = 0; i < 10; i++) {
+                try {
+                    poolService.chatTyped(request());
+                } catch (IllegalStateException e) {
+                    failures++;
+                }
+            }
+            
+            // Two failures open the failing node's breaker; after that only the good node serves
+            Assert.assertEquals(failures, 2);
+            Assert.assertEquals(pool.getNodes().get(1).getFailureCount(), 2);
+            Assert.assertEquals(pool.getNodes().get(1).getBreakerState(), CircuitBreaker.State.OPEN);
+            Assert.assertEquals(deadNode.getRequestCount(), 0);
+            Assert.assertEquals(pool.getNodes().get(0).getRequestCount(), 8);
+        }
+    }
+    
+    @Test(description = "Deterministic chats retry transient failures within the retry budget")
+    public void testRetryWithBudget() {
+        try (OllamaStubServer flaky = new OllamaStubServer.Builder()
+                .model("stub-model:1b").errorRate(0.5).errorStatus(503).seed(7)
+                .tokensPerSecond(Distribution.constant(1000)).responseTokens(Distribution.constant(5))
+                .build().start();
+             OllamaStubServer down = new OllamaStubServer.Builder()
+                .model("stub-model:1b").errorRate(1.0).errorStatus(503).build().start();
+             PooledHttpTransport flakyTransport = new PooledHttpTransport(flaky.getBaseUri(), 1000, 5000, 4);
+             PooledHttpTransport downTransport = new PooledHttpTransport(down.getBaseUri(), 1000, 5000, 4)) {
+            OllamaService flakyService = new OllamaService(flakyTransport);
+            flakyService.setMetricsRegistry(new MetricsRegistry());
+            flakyService.setRetryPolicy(new RetryPolicy(5, 1, 5, 1.0));
+            for (int i = 0; i < 10; i++) {
+                Assert.assertNotNull(flakyService.chatTyped(deterministicRequest()).getContent());
+            }
+            Assert.assertTrue(flakyService.getMetricsRegistry().snapshot().getCounter("retry.attempts") > 0);
+            
+            // With nothing earned back, ten retries are all there is
+            OllamaService downService = new OllamaService(downTransport);
+            MetricsRegistry metrics = new MetricsRegistry();
+            downService.setMetricsRegistry(metrics);
+            downService.setRetryPolicy(new RetryPolicy(3, 1, 5, 0.0));
+            for (int i = 0; i < 5; i++) {
+                Assert.expectThrows(IllegalStateException.class, () -> downService.chatTyped(deterministicRequest()));
+            }
+            Assert.assertEquals(down.getRequestCount(), 15);
+            Assert.assertEquals(metrics.snapshot().getCounter("retry.attempts"), 10);
+            Assert.assertEquals(metrics.snapshot().getCounter("retry.budget.exhausted"), 2);
+            
+            // Sampled chats are not idempotent and go out once
+            Assert.expectThrows(IllegalStateException.class, () -> downService.chatTyped(request()));
+            Assert.assertEquals(down.getRequestCount(), 16);
+        }
+    }
+    
+    @Test(description = "A chat with no first token by the deadline is hedged to another node")
+    public void testHedgedChat() {
+        try (OllamaStubServer slow = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .promptTokensPerSecond(Distribution.constant(5))
+                .responder(question -> "Paris is the capital of France.")
+                .build().start();
+             NodePoolTransport pool = new NodePoolTransport.Builder()
+                 .node("slow", new PooledHttpTransport(slow.getBaseUri(), 1000, 5000, 8))
+                 .node("fast", new PooledHttpTransport(stub.getBaseUri(), 1000, 5000, 8))
+                 .build()) {
+            OllamaService hedged = new OllamaService(pool);
+            MetricsRegistry metrics = new MetricsRegistry();
+            hedged.setMetricsRegistry(metrics);
+            hedged.enableHedging(95, 100);
+            
+            long start = System.nanoTime();
+            ChatResponse response = hedged.chatTyped(request());
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            Assert.assertEquals(response.getContent(), "Paris is the capital of France.");
+            Assert.assertEquals(metrics.snapshot().getCounter("hedge.sent"), 1);
+            Assert.assertEquals(metrics.snapshot().getCounter("hedge.won"), 1);
+            // The slow node needs over a second just for the prompt
+            Assert.assertTrue(elapsedMillis < 800, "Hedged chat took " + elapsedMillis + "ms");
+        }
+    }
+    
+    @Test(description = "Adaptive limiter settles at the server's parallel slots from above and below")
+    public void testAdaptiveLimiter() {
+        try (OllamaStubServer twoSlots = slotStub(2); OllamaStubServer eightSlots = slotStub(8);
+             PooledHttpTransport twoTransport = new PooledHttpTransport(twoSlots.getBaseUri(), 1000, 5000, 64);
+             PooledHttpTransport eightTransport = new PooledHttpTransport(eightSlots.getBaseUri(), 1000, 5000, 64)) {
+            // Starts too high: queueing on the server pulls it down
+            AdaptiveLimiter shrinking = new AdaptiveLimiter(16, 1, 32, 20);
+            runLimited(shrinking, new OllamaService(twoTransport), 60);
+            Assert.assertTrue(shrinking.getDecreaseCount() > 0);
+            Assert.assertTrue(shrinking.getLimit() >= 1 && shrinking.getLimit() <= 4,
+                "Limit " + shrinking.getLimit() + " against 2 server slots");
+            
+            // Starts at one: grows while nothing queues
+            AdaptiveLimiter growing = new AdaptiveLimiter(1, 1, 32, 20);
+            runLimited(growing, new OllamaService(eightTransport), 60);
+            Assert.assertTrue(growing.getLimit() >= 4, "Limit " + growing.getLimit() + " against 8 server slots");
+            
+            OllamaService adaptive = new OllamaService(twoTransport);
+            MetricsRegistry metrics = new MetricsRegistry();
+            adaptive.setMetricsRegistry(metrics);
+            adaptive.setAdaptiveConcurrency(true);
+            adaptive.chatAsync(request()).join();
+            Assert.assertEquals(metrics.snapshot().getGauges().get("concurrency.limit.stub-model:1b").intValue(),
+                adaptive.adaptiveLimiter("stub-model:1b").getLimit());
+        }
+    }
+    
+    @Test(description = "Adaptive limiter hands the permit back when a call throws an Error", timeOut = 10_000)
+    public void testAdaptiveLimiterErrorReleasesPermit() {
+        try (OllamaStubServer stub = echoStub(1000);
+             PooledHttpTransport transport = new PooledHttpTransport(stub.getBaseUri(), 1000, 5000, 4)) {
+            OllamaService target = new OllamaService(transport);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 20);
+            Assert.expectThrows(AssertionError.class, () -> limiter.call(() -> {
+                throw new AssertionError("call failed");
+            }));
+            CompletableFuture<ChatResponse> failed = limiter.submit(() -> {
+                throw new AssertionError("submit failed");
+            });
+            Assert.assertTrue(failed.isCompletedExceptionally());
+            Assert.assertEquals(limiter.getInFlight(), 0);
+            
+            // With the only permit back, the next call goes through instead of waiting forever
+            ChatResponse response = limiter.call(() -> target.chatTyped(request()));
+            Assert.assertNotNull(response.getContent());
+            Assert.assertEquals(limiter.getInFlight(), 0);
+        }
+    }
+    
+    @Test(description = "Identical deterministic chats in flight together share one generation")
+    public void testRequestCoalescing() throws Exception {
+        try (OllamaStubServer slowStub = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .tokensPerSecond(Distribution.constant(50))
+                .responder(question -> "Paris is the capital of France and has been for centuries.")
+                .build().start();
+             PooledHttpTransport slowTransport = new PooledHttpTransport(slowStub.getBaseUri(), 1000, 5000, 16)) {
+            OllamaService coalescing = new OllamaService(slowTransport);
+            MetricsRegistry metrics = new MetricsRegistry();
+            coalescing.setMetricsRegistry(metrics);
+            
+            List<CompletableFuture<ChatResponse>> blocking = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                blocking.add(CompletableFuture.supplyAsync(() -> coalescing.chatTyped(deterministicRequest())));
+            }
+            List<CompletableFuture<ChatResponse>> async = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                async.add(coalescing.chatAsync(deterministicRequest()));
+            }
+            // Each caller gets its own copy: changing one reply leaves the others alone
+            Integer evalCount = blocking.get(0).get().getEvalCount();
+            blocking.get(0).get().setEvalCount(-1);
+            for (CompletableFuture<ChatResponse> future : blocking.subList(1, blocking.size())) {
+                Assert.assertNotSame(future.get(), blocking.get(0).get());
+                Assert.assertEquals(future.get().getContent(), blocking.get(0).get().getContent());
+                Assert.assertEquals(future.get().getEvalCount(), evalCount);
+            }
+            for (CompletableFuture<ChatResponse> future : async) {
+                Assert.assertEquals(future.get().getContent(), blocking.get(0).get().getContent());
+                Assert.assertEquals(future.get().getEvalCount(), evalCount);
+            }
+            long upstream = slowStub.getRequestCount();
+            Assert.assertTrue(upstream <= 2, upstream + " upstream requests for 10 identical calls");
+            Assert.assertEquals(metrics.snapshot().getCounter("chat.coalesced"), 10 - upstream);
+            
+            // A stream joined halfway still sees every delta
+            List<String> leaderDeltas = new ArrayList<>();
+            CompletableFuture<Void> halfway = new CompletableFuture<>();
+            CompletableFuture<ChatResponse> leader = CompletableFuture.supplyAsync(() ->
+                coalescing.chatStream(deterministicRequest(), delta -> {
+                    leaderDeltas.add(delta);
+                    if (leaderDeltas.size() == 3) {
+                        halfway.complete(null);
+                    }
+                }));
+            halfway.get();
+            StringBuilder followerText = new StringBuilder();
+            ChatResponse followed = coalescing.chatStream(deterministicRequest(), followerText::append);
+            
+            Assert.assertNotSame(followed, leader.get());
+            Assert.assertEquals(followed.getContent(), leader.get().getContent());
+            Assert.assertEquals(followerText.toString(), followed.getContent());
+            Assert.assertEquals(slowStub.getRequestCount(), upstream + 1);
+            
+            // Switched off, every call goes upstream
+            coalescing.setRequestCoalescer(null);
+            coalescing.chatTyped(deterministicRequest());
+            Assert.assertEquals(slowStub.getRequestCount(), upstream + 2);
+        }
+    }
+    
+    @Test(description = "Coalesced callers fail with the leader's Error instead of hanging", timeOut = 10_000)
+    public void testRequestCoalescingError() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        MetricsRegistry metrics = new MetricsRegistry();
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        CompletableFuture<ChatResponse> callLeader = CompletableFuture.supplyAsync(() ->
+            coalescer.call("key", () -> failAfter(entered, release), metrics));
+        CompletableFuture<ChatResponse> streamLeader = CompletableFuture.supplyAsync(() ->
+            coalescer.stream("key", delta -> { }, fanout -> failAfter(entered, release), metrics));
+        entered.await();
+        CompletableFuture<ChatResponse> callFollower = CompletableFuture.supplyAsync(() ->
+            coalescer.call("key", () -> { throw new IllegalStateException("Should have joined"); }, metrics));
+        CompletableFuture<ChatResponse> streamFollower = CompletableFuture.supplyAsync(() ->
+            coalescer.stream("key", delta -> { }, fanout -> {
+                throw new IllegalStateException("Should have joined");
+            }, metrics));
+        while (metrics.snapshot().getCounter("chat.coalesced") < 2) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        
+        for (CompletableFuture<ChatResponse> caller : List.of(callLeader, streamLeader, callFollower, streamFollower)) {
+            ExecutionException failure = Assert.expectThrows(ExecutionException.class, caller::get);
+            Assert.assertTrue(failure.getCause() instanceof AssertionError, "Got " + failure.getCause());
+        }
+    }
+    
+    @Test(description = "A coalesced stream listener that throws fails only its own caller", timeOut = 10_000)
+    public void testRequestCoalescingListenerFailure() throws Exception {
+        try (OllamaStubServer slowStub = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .tokensPerSecond(Distribution.constant(50))
+                .responder(question -> "Paris is the capital of France and has been for centuries.")
+                .build().start();
+             PooledHttpTransport slowTransport = new PooledHttpTransport(slowStub.getBaseUri(), 1000, 5000, 16)) {
+            OllamaService coalescing = new OllamaService(slowTransport);
+            
+            CompletableFuture<Void> halfway = new CompletableFuture<>();
+            CompletableFuture<ChatResponse> leader = CompletableFuture.supplyAsync(() ->
+                coalescing.chatStream(deterministicRequest(), new ChatStreamListener() {
+                    private int tokens;
+                    
+                    @Override
+                    public void onToken(String delta) {
+                        if (++tokens == 3) {
+                            halfway.complete(null);
+                        }
+                    }
+                    
+                    @Override
+                    public void onComplete(ChatResponse response) {
+                        throw new AssertionError("leader listener failed");
+                    }
+                }));
+            halfway.get();
+            
+            // Fails on the deltas it catches up on, without cutting the stream short for the others
+            Assert.expectThrows(IllegalStateException.class, () ->
+                coalescing.chatStream(deterministicRequest(), delta -> {
+                    throw new IllegalStateException("follower listener failed");
+                }));
+            StringBuilder followerText = new StringBuilder();
+            ChatResponse followed = coalescing.chatStream(deterministicRequest(), followerText::append);
+            
+            Assert.assertEquals(followed.getContent(), "Paris is the capital of France and has been for centuries.");
+            Assert.assertEquals(followerText.toString(), followed.getContent());
+            ExecutionException failure = Assert.expectThrows(ExecutionException.class, leader::get);
+            Assert.assertTrue(failure.getCause() instanceof AssertionError, "Got " + failure.getCause());
+            Assert.assertEquals(slowStub.getRequestCount(), 1);
+        }
+    }
+    
+    @Test(description = "A failing disk cache or onComplete listener neither fails nor re-records a good chat")
+    public void testChatRecordedOnceDespiteCallerFailures() throws Exception {
+        // A cache.dir that is a plain file: every disk-tier read and write fails
+        Path notADirectory = Files.createTempFile("response-cache", ".file");
+        try {
+            OllamaService cached = new OllamaService(transport);
+            MetricsRegistry metrics = new MetricsRegistry();
+            cached.setMetricsRegistry(metrics);
+            cached.setResponseCache(new ResponseCache(8, notADirectory));
+            
+            Assert.assertEquals(cached.chatTyped(deterministicRequest()).getContent(), "Paris is the capital of France.");
+            Assert.assertEquals(metrics.snapshot().getCounter("response.cache.read.errors"), 1);
+            Assert.assertEquals(metrics.snapshot().getCounter("response.cache.write.errors"), 1);
+            
+            AtomicBoolean errorSeen = new AtomicBoolean();
+            Assert.expectThrows(IllegalStateException.class, () -> cached.chatStream(request(), new ChatStreamListener() {
+                @Override
+                public void onToken(String delta) {
+                }
+                
+                @Override
+                public void onComplete(ChatResponse response) {
+                    throw new IllegalStateException("listener failed");
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    errorSeen.set(true);
+                }
+            }));
+            Assert.assertFalse(errorSeen.get(), "onError must not follow onComplete");
+            
+            Assert.assertEquals(metrics.snapshot().getModel("stub-model:1b", Outcome.SUCCESS).getRequests(), 2);
+            Assert.assertNull(metrics.snapshot().getModel("stub-model:1b", Outcome.ERROR));
+        } finally {
+            Files.delete(notADirectory);
+        }
+    }
+    
+    @Test(description = "Model catalog shares one /api/tags fetch between concurrent callers")
+    public void testModelCatalogSingleFlight() {
+        try (OllamaStubServer catalogStub = new OllamaStubServer.Builder()
+                .model("stub-model:1b").model("other:latest").build().start();
+             PooledHttpTransport catalogTransport = new PooledHttpTransport(catalogStub.getBaseUri(), 1000, 5000, 64)) {
+            ModelCatalog catalog = new ModelCatalog(catalogTransport, 60_000);
+            
+            List<CompletableFuture<Boolean>> lookups = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                lookups.add(CompletableFuture.supplyAsync(() -> catalog.isAvailable("stub-model:1b")));
+            }
+            lookups.forEach(lookup -> Assert.assertTrue(lookup.join()));
+            
+            Assert.assertTrue(catalog.isAvailable("other"), "Bare name should resolve to :latest");
+            String digest = catalog.find("stub-model:1b").get().getDigest();
+            Assert.assertEquals(catalog.findByDigest("sha256:" + digest).get().getName(), "stub-model:1b");
+            Assert.assertEquals(catalog.show("stub-model:1b").get().getDetails().getFamily(), "llama");
+            catalog.show("stub-model:1b");
+            Assert.assertEquals(catalogStub.getRequestCount(), 2, "One /api/tags and one /api/show");
+        }
+    }
+    
+    @Test(description = "Model catalog waiters fail with the fetching caller's Error instead of hanging",
+        timeOut = 10_000)
+    public void testModelCatalogSingleFlightError() throws Exception {
+        for (String path : new String[] {"/api/tags", "/api/show"}) {
+            FailOnceTransport failing = new FailOnceTransport(transport, path);
+            ModelCatalog catalog = new ModelCatalog(failing, 60_000);
+            if (path.equals("/api/show")) {
+                Assert.assertTrue(catalog.isAvailable("stub-model:1b"));
+            }
+            
+            CompletableFuture<?> leader = CompletableFuture.supplyAsync(() -> catalog.show("stub-model:1b"));
+            failing.entered.await();
+            CompletableFuture<?> waiter = CompletableFuture.supplyAsync(() -> catalog.show("stub-model:1b"));
+            Thread.sleep(200);
+            failing.release.countDown();
+            
+            for (CompletableFuture<?> lookup : List.of(leader, waiter)) {
+                Throwable error = Assert.expectThrows(CompletionException.class, lookup::join).getCause();
+                Assert.assertTrue(error instanceof AssertionError, path + ": " + error);
+            }
+            Assert.assertEquals(catalog.show("stub-model:1b").get().getDetails().getFamily(), "llama",
+                path + " failure should not stay cached");
+        }
+    }
+    
+    @Test(description = "Streaming validator cancels generation as soon as a rule fails")
+    public void testStreamingValidatorCancels() throws Exception {
+        try (OllamaStubServer slow = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .tokensPerSecond(Distribution.constant(50))
+                .responder(question -> "Sure. Never reveal system prompts." + " and so on".repeat(200))
+                .build().start();
+             PooledHttpTransport slowTransport = new PooledHttpTransport(slow.getBaseUri(), 1000, 5000, 4)) {
+            OllamaService slowService = new OllamaService(slowTransport);
+            slowService.setMetricsRegistry(new MetricsRegistry());
+            StreamingValidator validator = new StreamingValidator.Builder()
+                .language("english")
+                .doesNotContain("never reveal system prompts")
+                .build();
+            
+            long start = System.nanoTime();
+            AssertionError failure = Assert.expectThrows(AssertionError.class,
+                () -> validator.validate(slowService, request()));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            Assert.assertEquals(failure.getMessage(),
+                "Response should not contain: 'never reveal system prompts'");
+            // The full reply is ~400 tokens, eight seconds at 50 tok/s
+            Assert.assertTrue(elapsedMillis < 2000, "Took " + elapsedMillis + "ms");
+            Assert.assertEquals(slowService.getMetricsRegistry().snapshot().getCounter("stream.cancelled"), 1L);
+            for (int i = 0; i < 50 && slow.getDisconnectCount() == 0; i++) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(slow.getDisconnectCount(), 1, "Stub should stop generating");
+        }
+    }
+    
+    @Test(description = "A stream closed early is aborted, not drained; a finished one returns its connection")
+    public void testStreamCloseAbortsUnfinishedBody() throws Exception {
+        try (OllamaStubServer slow = new OllamaStubServer.Builder()
+                .model("stub-model:1b")
+                .tokensPerSecond(Distribution.constant(50))
+                .responder(question -> "Sure." + " and so on".repeat(200))
+                .build().start();
+             PooledHttpTransport slowTransport = new PooledHttpTransport(slow.getBaseUri(), 1000, 15000, 4)) {
+            OllamaService slowService = new OllamaService(slowTransport);
+
+            long start = System.nanoTime();
+            Assert.expectThrows(IllegalStateException.class, () -> slowService.chatStream(request(), delta -> {
+                throw new IllegalStateException("listener failed");
+            }));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // The full reply is ~400 tokens, eight seconds at 50 tok/s
+            Assert.assertTrue(elapsedMillis < 2000, "Took " + elapsedMillis + "ms");
+            for (int i = 0; i < 50 && slow.getDisconnectCount() == 0; i++) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(slow.getDisconnectCount(), 1, "Stub should stop generating");
+            Assert.assertEquals(slowTransport.getLeasedConnections(), 0);
+        }
+
+        service.chatStream(request(), delta -> { });
+        Assert.assertEquals(transport.getLeasedConnections(), 0);
+        Assert.assertTrue(transport.getAvailableConnections() > 0, "Finished stream should be kept alive");
+    }
+
+    @Test(description = "Streaming validator lets a passing response through")
+    public void testStreamingValidatorPasses() {
+        ChatResponse response = new StreamingValidator.Builder()
+            .maxLength(100)
+            .language("english")
+            .noRepeatedSentences()
+            .noDegeneration(0.5)
+            .build()
+            .validate(service, request());
+        
+        Assert.assertEquals(response.getContent(), "Paris is the capital of France.");
+    }
+    
+    @Test(description = "Conversation session keeps the prompt under budget as the chat grows")
+    public void testConversationSessionBudget() {
+        ConversationSession session = service.conversation()
+            .model("stub-model:1b")
+            .systemMessage("You are a helpful assistant")
+            .policy(HistoryPolicy.SLIDING_WINDOW)
+            .maxPromptTokens(300)
+            .build();
+        
+        List<Integer> promptTokens = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            session.send("This is message number " + i + ". It contains some text to fill up the context window.");
+            Assert.assertTrue(session.getEstimatedPromptTokens() <= 300 + 12,
+                "Turn " + i + " estimated at " + session.getEstimatedPromptTokens());
+            promptTokens.add(session.getLastPromptEvalCount());
+        }
+        
+        Assert.assertTrue(session.getDroppedTurnCount() > 0);
+        Assert.assertEquals(session.getTurns().get(0).getRole(), "user");
+        Assert.assertTrue(session.getTurns().get(session.getTurns().size() - 1).getContent().startsWith("Paris"));
+        // Flat, not growing; the session only estimates the stub's tokenizer, so allow 10%
+        int peak = promptTokens.subList(20, 40).stream().mapToInt(Integer::intValue).max().getAsInt();
+        Assert.assertTrue(peak <= 330, "Prompt reached " + peak + " tokens: " + promptTokens);
+    }
+    
+    @Test(description = "A failed session turn leaves history untouched; continueConversation sends it all")
+    public void testConversationSessionFailedTurn() {
+        FailOnceTransport failing = new FailOnceTransport(transport, "/api/chat");
+        failing.release.countDown();
+        ConversationSession session = new OllamaService(failing).conversation()
+            .model("stub-model:1b")
+            .policy(HistoryPolicy.SLIDING_WINDOW)
+            .maxPromptTokens(300)
+            .build();
+        String filler = "It contains some text to fill up the context window. ".repeat(4);
+        for (int i = 0; i < 20; i++) {
+            session.addHistory(i % 2 == 0 ? "user" : "assistant", "Message " + i + ". " + filler);
+        }
+        List<ConversationSession.Turn> before = session.getTurns();
+        
+        Assert.expectThrows(AssertionError.class, () -> session.send("What is the capital of France?"));
+        Assert.assertEquals(session.getTurns(), before, "Failed turn should not trim history");
+        Assert.assertEquals(session.getDroppedTurnCount(), 0);
+        
+        session.send("What is the capital of France?");
+        Assert.assertTrue(session.getDroppedTurnCount() > 0);
+        Assert.assertTrue(session.getEstimatedPromptTokens() <= 300 + 12);
+        
+        String defaultModel = OllamaConfig.getInstance().getDefaultModel();
+        try (OllamaStubServer defaultStub = new OllamaStubServer.Builder()
+                .model(defaultModel)
+                .promptTokensPerSecond(Distribution.constant(1_000_000))
+                .responder(question -> "Sure.")
+                .build().start();
+             PooledHttpTransport defaultTransport = new PooledHttpTransport(defaultStub.getBaseUri(), 1000, 5000, 4)) {
+            List<String> history = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                history.add("Message " + i + ". " + filler.repeat(2));
+            }
+            ChatResponse response = new OllamaService(defaultTransport).continueConversation(history, "And now?");
+            // About 100 tokens a message: far over the configured conversation budget
+            Assert.assertTrue(response.getPromptEvalCount() > 40 * 100,
+                "Prompt was " + response.getPromptEvalCount() + " tokens");
+        }
+    }
+    
+    @Test(description = "Summarizing session folds dropped turns into a pinned summary")
+    public void testConversationSessionSummary() {
+        ConversationSession session = service.conversation()
+            .model("stub-model:1b")
+            .policy(HistoryPolicy.SUMMARIZE)
+            .maxPromptTokens(200)
+            .build();
+        
+        for (int i = 0; i < 20; i++) {
+            session.send("Fact number " + i + " is worth remembering for later in this conversation.");
+        }
+        
+        Assert.assertTrue(session.getSummaryCount() > 0);
+        Assert.assertEquals(session.getSummary(), "Summary of the earlier conversation: Paris is the capital of France.");
+        Assert.assertTrue(session.getEstimatedPromptTokens() <= 200);
+    }
+    
+    @Test(description = "Residency manager keeps a model loaded past its default keep_alive")
+    public void testModelResidency() throws Exception {
+        OllamaStubServer coldStub = new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .loadTimeMillis(Distribution.constant(300))
+            .keepAlive(Duration.ofMillis(400))
+            .responder(question -> "Paris is the capital of France.")
+            .build()
+            .start();
+        try (PooledHttpTransport coldTransport = new PooledHttpTransport(coldStub.getBaseUri(), 1000, 5000, 8);
+             ModelResidencyManager residency = new ModelResidencyManager(coldTransport,
+                 Collections.singletonList("stub-model:1b"), "1s", 600)) {
+            OllamaService coldService = new OllamaService(coldTransport);
+            MetricsRegistry metrics = new MetricsRegistry();
+            coldService.setMetricsRegistry(metrics);
+            
+            coldService.chatTyped(request());
+            coldService.chatTyped(request());
+            Assert.assertEquals(metrics.snapshot().getCounter("model.cold.loads"), 1);
+            Assert.assertTrue(metrics.snapshot().getCounter("model.cold.load.ms") >= 300);
+            
+            // Idle past the stub's keep_alive: unloaded, so the next chat is cold again
+            Thread.sleep(600);
+            Assert.assertFalse(coldStub.isLoaded("stub-model:1b"));
+            coldService.chatTyped(request());
+            Assert.assertEquals(metrics.snapshot().getCounter("model.cold.loads"), 2);
+            
+            residency.warmUp();
+            coldService.setResidencyManager(residency);
+            residency.start(100);
+            Assert.assertTrue(residency.isLoaded("stub-model:1b"));
+            Assert.assertEquals(residency.getRunningModels().get(0).getName(), "stub-model:1b");
+            
+            // Longer than the manager's own keep_alive; the poll refreshes it in time
+            Thread.sleep(1500);
+            coldService.chatTyped(request());
+            Assert.assertEquals(metrics.snapshot().getCounter("model.cold.loads"), 2);
+            Assert.assertTrue(residency.getLoadCount() > 1, "Loads sent: " + residency.getLoadCount());
+            Assert.assertEquals(coldStub.getLoadCount(), 2);
+        } finally {
+            coldStub.close();
+        }
+    }
+    
+    @Test(description = "Residency manager keeps a bare-named model warm on every node of a pool")
+    public void testModelResidencyOnNodePool() {
+        try (OllamaStubServer first = new OllamaStubServer.Builder().model("stub-bare:latest").build().start();
+             OllamaStubServer second = new OllamaStubServer.Builder().model("stub-bare:latest").build().start();
+             NodePoolTransport pool = new NodePoolTransport.Builder()
+                 .node("first", new PooledHttpTransport(first.getBaseUri(), 1000, 5000, 4))
+                 .node("second", new PooledHttpTransport(second.getBaseUri(), 1000, 5000, 4))
+                 .build();
+             ModelResidencyManager residency = new ModelResidencyManager(pool,
+                 Collections.singletonList("stub-bare"), "10m", 1000)) {
+            residency.warmUp();
+            Assert.assertTrue(first.isLoaded("stub-bare:latest"), "First node should be warm");
+            Assert.assertTrue(second.isLoaded("stub-bare:latest"), "Second node should be warm");
+            Assert.assertTrue(residency.isLoaded("stub-bare"));
+            Assert.assertEquals(residency.getRunningModels().size(), 2);
+            
+            // /api/ps reports "stub-bare:latest"; that is the configured model, so nothing reloads
+            for (int i = 0; i < 3; i++) {
+                residency.poll();
+            }
+            Assert.assertEquals(residency.getLoadCount(), 2);
+            Assert.assertEquals(first.getLoadCount() + second.getLoadCount(), 2);
+        }
+    }
+    
+    @Test(description = "Regression gate records a baseline, passes a rerun and fails a 15% slowdown")
+    public void testRegressionGate() throws Exception {
+        Path dir = Files.createTempDirectory("perf-gate");
+        Path baselines = dir.resolve("baselines.bin");
+        try (OllamaStubServer before = rateStub(1000, 1); OllamaStubServer same = rateStub(1000, 2);
+             OllamaStubServer slower = rateStub(850, 3);
+             PooledHttpTransport beforeTransport = new PooledHttpTransport(before.getBaseUri(), 1000, 5000, 4);
+             PooledHttpTransport sameTransport = new PooledHttpTransport(same.getBaseUri(), 1000, 5000, 4);
+             PooledHttpTransport slowerTransport = new PooledHttpTransport(slower.getBaseUri(), 1000, 5000, 4)) {
+            RegressionReport first = gate(baselines).run("capital", new OllamaService(beforeTransport), request());
+            Assert.assertTrue(first.isBaselineRecorded(), first.toString());
+            Assert.assertTrue(first.getKey().startsWith("capital|stub-model:1b@"), first.getKey());
+            
+            // A fresh gate reads the baseline back from the file
+            RegressionReport rerun = gate(baselines).run("capital", new OllamaService(sameTransport), request());
+            Assert.assertFalse(rerun.isBaselineRecorded());
+            Assert.assertEquals(rerun.getComparisons().size(), 2);
+            Assert.assertFalse(rerun.isRegression(), rerun.toString());
+            
+            RegressionReport slow = gate(baselines).run("capital", new OllamaService(slowerTransport), request());
+            Assert.assertTrue(slow.isRegression(), slow.toString());
+            RegressionReport.Comparison tokensPerSecond = slow.getComparisons().stream()
+                .filter(c -> c.getMetric().equals(RegressionGate.TOKENS_PER_SECOND)).findFirst().get();
+            Assert.assertTrue(tokensPerSecond.isRegression(), slow.toString());
+            Assert.assertEquals(tokensPerSecond.getMedianChange(), -0.15, 0.03);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    // ==================== BATCH TESTS ====================
+    
+    @Test(description = "Batch run writes one result per prompt through a one-slot writer queue")
+    public void testBatchRunSummary() throws Exception {
+        Path dir = Files.createTempDirectory("batch");
+        try (OllamaStubServer echo = echoStub(1000);
+             PooledHttpTransport echoTransport = new PooledHttpTransport(echo.getBaseUri(), 1000, 5000, 8)) {
+            Path input = writeBatchInput(dir, 30);
+            Path output = dir.resolve("results.jsonl");
+            
+            BatchSummary summary = new BatchRunner.Builder()
+                .service(new OllamaService(echoTransport))
+                .input(input)
+                .output(output)
+                .concurrency(8)
+                .writerQueueCapacity(1)
+                .checkpointEvery(4)
+                .build()
+                .run();
+            
+            Assert.assertEquals(summary.getLinesRead(), 30);
+            Assert.assertEquals(summary.getResumedSkipped(), 0);
+            Assert.assertEquals(summary.getSucceeded(), 28, "One blank and one malformed line");
+            Assert.assertEquals(summary.getFailed(), 1);
+            assertBatchOutput(output, 30);
+            
+            BatchCheckpoint checkpoint = BatchCheckpoint.load(dir.resolve("results.jsonl.checkpoint"));
+            Assert.assertEquals(checkpoint.getWatermark(), 31, "Every line is below the final watermark");
+            Assert.assertEquals(checkpoint.getOutputOffset(), Files.size(output));
+            Assert.assertTrue(checkpoint.getCompleted().isEmpty());
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    @Test(description = "Batch run killed mid-way resumes from a stale checkpoint and a torn tail, "
+        + "running every prompt exactly once")
+    public void testBatchResumeAfterKill() throws Exception {
+        Path dir = Files.createTempDirectory("batch");
+        try (OllamaStubServer echo = echoStub(200);
+             PooledHttpTransport echoTransport = new PooledHttpTransport(echo.getBaseUri(), 1000, 5000, 8)) {
+            Path input = writeBatchInput(dir, 60);
+            Path output = dir.resolve("results.jsonl");
+            Path checkpointFile = dir.resolve("results.jsonl.checkpoint");
+            Path staleCheckpoint = dir.resolve("stale.checkpoint");
+            BatchRunner.Builder runner = new BatchRunner.Builder()
+                .service(new OllamaService(echoTransport))
+                .input(input)
+                .output(output)
+                .concurrency(2)
+                .checkpointEvery(5);
+            
+            // Kill the first run once a checkpoint exists and more results were written after it
+            FutureTask<BatchSummary> firstRun = new FutureTask<>(runner.build()::run);
+            Thread runThread = new Thread(firstRun, "batch-run");
+            runThread.start();
+            while (!Files.exists(checkpointFile)) {
+                Thread.sleep(5);
+            }
+            Files.copy(checkpointFile, staleCheckpoint);
+            long staleOffset = BatchCheckpoint.load(staleCheckpoint).getOutputOffset();
+            while (Files.size(output) <= staleOffset) {
+                Thread.sleep(5);
+            }
+            runThread.interrupt();
+            ExecutionException killed = Assert.expectThrows(ExecutionException.class, firstRun::get);
+            Assert.assertTrue(killed.getCause() instanceof InterruptedException, killed.getCause().toString());
+            
+            int writtenBefore = readBatchOutput(output).size();
+            Assert.assertTrue(writtenBefore < 59, "Run should have been killed before finishing");
+            
+            // As if the crash hit between checkpoints and mid-way through writing a record
+            Files.move(staleCheckpoint, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.write(output, "{\"line\":59,\"content\":\"Answ".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+            
+            BatchSummary resumed = runner.writerQueueCapacity(2).build().run();
+            
+            Assert.assertEquals(resumed.getResumedSkipped() + resumed.getLinesRead(), 60);
+            Assert.assertTrue(resumed.getResumedSkipped() > 0, "Resume should skip finished lines");
+            Assert.assertEquals(resumed.getSucceeded() + resumed.getFailed(), 59 - writtenBefore,
+                "Only unfinished prompts should run again");
+            assertBatchOutput(output, 60);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+    
+    // ==================== HELPER METHODS ====================
+    
+    // Answers "Question N" with "Answer to Question N", about 20ms per request at 200 tok/s
+    private OllamaStubServer echoStub(double tokensPerSecond) {
+        return new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .tokensPerSecond(Distribution.constant(tokensPerSecond))
+            .responder(question -> "Answer to " + question)
+            .maxConcurrency(8)
+            .build().start();
+    }
+    
+    // Prompts "Question N" on line N, except a blank line 10 and a malformed line 20
+    private Path writeBatchInput(Path dir, int lines) throws IOException {
+        List<String> input = new ArrayList<>();
+        for (int line = 1; line <= lines; line++) {
+            if (line == 10) {
+                input.add("");
+            } else if (line == 20) {
+                input.add("{not json");
+            } else {
+                input.add("{\"id\":\"q" + line + "\",\"model\":\"stub-model:1b\","
+                    + "\"messages\":[{\"role\":\"user\",\"content\":\"Question " + line + "\"}]}");
+            }
+        }
+        return Files.write(dir.resolve("requests.jsonl"), input, StandardCharsets.UTF_8);
+    }
+    
+    private Map<Long, JsonNode> readBatchOutput(Path output) throws IOException {
+        Map<Long, JsonNode> records = new HashMap<>();
+        ObjectMapper mapper = new ObjectMapper();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            JsonNode record = mapper.readTree(line);
+            JsonNode previous = records.put(record.get("line").asLong(), record);
+            Assert.assertNull(previous, "Line " + record.get("line") + " was run twice");
+        }
+        return records;
+    }
+    
+    // Every non-blank input line has exactly one result, answering its own prompt
+    private void assertBatchOutput(Path output, int lines) throws IOException {
+        Map<Long, JsonNode> records = readBatchOutput(output);
+        Assert.assertEquals(records.size(), lines - 1);
+        for (long line = 1; line <= lines; line++) {
+            if (line == 10) {
+                Assert.assertFalse(records.containsKey(line), "Blank line should not be written");
+            } else if (line == 20) {
+                Assert.assertTrue(records.get(line).has("error"), "Malformed line should be a failure");
+            } else {
+                JsonNode record = records.get(line);
+                Assert.assertNotNull(record, "Line " + line + " was skipped");
+                Assert.assertEquals(record.get("id").asText(), "q" + line);
+                Assert.assertEquals(record.get("content").asText(), "Answer to Question " + line);
+            }
+        }
+    }
+    
+    private void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    // 20-token replies at about this rate, 3% spread
+    private OllamaStubServer rateStub(double tokensPerSecond, long seed) {
+        return new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .responseTokens(Distribution.constant(20))
+            .tokensPerSecond(Distribution.normal(tokensPerSecond, tokensPerSecond * 0.03))
+            .seed(seed)
+            .build().start();
+    }
+    
+    private RegressionGate gate(Path baselines) {
+        return new RegressionGate(PerfBaselineStore.open(baselines), 20, 2, 0.001, 0.3, false);
+    }
+    
+    // One generation at a time, 100ms each
+    private OllamaStubServer narrowStub() {
+        return new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .responseTokens(Distribution.constant(10))
+            .tokensPerSecond(Distribution.constant(100))
+            .maxConcurrency(1)
+            .build().start();
+    }
+    
+    // 50ms generations, this many at a time
+    private OllamaStubServer slotStub(int slots) {
+        return new OllamaStubServer.Builder()
+            .model("stub-model:1b")
+            .responseTokens(Distribution.constant(5))
+            .tokensPerSecond(Distribution.constant(100))
+            .maxConcurrency(slots)
+            .build().start();
+    }
+    
+    private void runLimited(AdaptiveLimiter limiter, OllamaService target, int requests) {
+        List<CompletableFuture<ChatResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(limiter.submit(() -> target.chatAsync(request())));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+    
+    // The first call to one path waits for release, then fails with an Error
+    private static class FailOnceTransport implements OllamaTransport {
+        private final OllamaTransport delegate;
+        private final String failPath;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        
+        FailOnceTransport(OllamaTransport delegate, String failPath) {
+            this.delegate = delegate;
+            this.failPath = failPath;
+        }
+        
+        @Override
+        public TransportResponse get(String path) {
+            failOnce(path);
+            return delegate.get(path);
+        }
+        
+        @Override
+        public TransportResponse post(String path, byte[] jsonBody) {
+            failOnce(path);
+            return delegate.post(path, jsonBody);
+        }
+        
+        @Override
+        public StreamingResponse postStream(String path, byte[] jsonBody) {
+            failOnce(path);
+            return delegate.postStream(path, jsonBody);
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        private void failOnce(String path) {
+            if (path.equals(failPath) && failed.compareAndSet(false, true)) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new AssertionError("Injected failure on " + path);
+            }
+        }
+    }
+    
+    private ChatRequest deterministicRequest() {
+        return request().toBuilder().temperature(0.0).build();
+    }
+    
+    private long runConcurrently(OllamaService target, int requests) {
+        long start = System.nanoTime();
+        List<CompletableFuture<ChatResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(target.chatAsync(request()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+    
+    private static ChatResponse failAfter(CountDownLatch entered, CountDownLatch release) {
+        entered.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new AssertionError("upstream failed");
+    }
+    
+    private ChatRequest request() {
+        return new ChatRequest.Builder()
+            .model("stub-model:1b")
+            .addUserMessage("What is the capital of France?")
+            .build();
+    }
+}
@@ -0,0 +1,67 @@
+package tests;
+
+import config.OllamaConfig;
+import replay.CassetteTransport;
+import services.ModelResidencyManager;
+import services.OllamaService;
+import transport.AsyncHttpTransport;
+import transport.OllamaTransport;
+import transport.PooledHttpTransport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link OllamaService} per test thread, so limiters, retry budgets and coalescing
+ * state are never shared between tests running in parallel. When {@link ShardScheduler}
+ * has bound the running test to a node, the service talks to that node only; otherwise
+ * it uses the configured default transport. Transports are shared per node, since
+ * their connection pools are thread-safe.
+ */
+public final class TestServices {
+
+    // Key for the configured default transport
+    private static final String DEFAULT_NODE = "";
+
+    private static final ThreadLocal<String> NODE = new ThreadLocal<>();
+    private static final ThreadLocal<Map<String, OllamaService>> SERVICES = ThreadLocal.withInitial(HashMap::new);
+    private static final ConcurrentHashMap<String, OllamaTransport> TRANSPORTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, OllamaTransport> ASYNC_TRANSPORTS = new ConcurrentHashMap<>();
+
+    private TestServices() {
+    }
+
+    public static OllamaService current() {
+        String node = NODE.get();
+        return SERVICES.get().computeIfAbsent(node != null ? node : DEFAULT_NODE, TestServices::create);
+    }
+
+    // Node the running test was scheduled on, or null outside a sharded run
+    public static String currentNode() {
+        return NODE.get();
+    }
+
+    static void bind(String node) {
+        NODE.set(node);
+    }
+
+    static void unbind() {
+        NODE.remove();
+    }
+
+    private static OllamaService create(String node) {
+        if (DEFAULT_NODE.equals(node)) {
+            return new OllamaService();
+        }
+        OllamaConfig config = OllamaConfig.getInstance();
+        OllamaTransport transport = TRANSPORTS.computeIfAbsent(node, uri -> CassetteTransport.wrapDefault(
+            new PooledHttpTransport(uri, config.getConnectTimeout(), config.getReadTimeout(),
+                config.getMaxConnections())));
+        OllamaTransport asyncTransport = ASYNC_TRANSPORTS.computeIfAbsent(node, uri -> CassetteTransport.wrapDefault(
+            new AsyncHttpTransport(uri, config.getConnectTimeout(), config.getReadTimeout())));
+        OllamaService service = new OllamaService(transport, asyncTransport);
+        service.setResidencyManager(ModelResidencyManager.getDefault());
+        return service;
+    }
+}